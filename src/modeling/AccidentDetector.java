@@ -1,5 +1,6 @@
 package modeling;
 
+import java.awt.Shape;
 import java.awt.geom.Area;
 import java.awt.geom.Line2D;
 import java.awt.geom.PathIterator;
@@ -29,12 +30,19 @@ import sim.util.Double2D;
 public class AccidentDetector implements Constants,Steppable {
 
 	private static final long serialVersionUID = 1L;
+	private static final Double2D NO_LINE_CROSSING = new Double2D(-1,0); // Returned by detectLineCrossing (Double2D is immutable, so can be shared)
+	
+	public static final int MAX_STEPS = 5000; // The run is terminated with a timeout failure after this many steps
 
 	private File accidentLog; // HH 28.8.14 - Init this in the constructor so we can use diff names on batch run
 	private File accidentSummary; // HH 28.8.14 - Summary file for one line per experiment for data analysis 
 	private COModel sim;
 	private PrintStream ps;
 	private PrintStream psSummary; // HH 28.8.14 New stream for the summary log file
+	private String profileFilePath = null; // File for the StepProfiler results, only created if profiling is used
+	private PrintStream psProfile = null;
+	private String sensorFilePath = null; // File for the SensorCounters totals, one line per run
+	private PrintStream psSensor = null;
 	private Bag trackedCars=new Bag();
 	
 	private int noAccidents=0;
@@ -93,6 +101,26 @@ public class AccidentDetector implements Constants,Steppable {
 	 * @param mapNo (long - used to generate a more unique filename)
 	 */	
 	public AccidentDetector(double percentageFaults, long mapNo){ 
+		this(percentageFaults, mapNo, true);
+	}
+	
+	/**
+	 * Constructor - as above, but if wantOutputFiles is false, the log and summary files are not created,
+	 * and everything which would have been written to them is discarded.
+	 * @param percentageFaults (double - used to generate a more unique filename)
+	 * @param mapNo (long - used to generate a more unique filename)
+	 * @param wantOutputFiles (boolean - true to write the log and summary files, false to discard them)
+	 */	
+	public AccidentDetector(double percentageFaults, long mapNo, boolean wantOutputFiles){ 
+		
+		if (wantOutputFiles == false)
+		{
+			ps = Utility.getNullPrintStream();
+			psSummary = Utility.getNullPrintStream();
+			psProfile = Utility.getNullPrintStream();
+			summaryString = "";
+			return;
+		}
 		
 		// HH 28.8.14 : NOTE - differences in percentages of faults must be > 1% or files will be overwritten
 		String accidentLogFilePath = Constants.outFilePath + "AccidentLog" + Math.round(percentageFaults * 100) + "_" + mapNo + ".txt";
@@ -107,6 +135,9 @@ public class AccidentDetector implements Constants,Steppable {
 			throw new RuntimeException("Accident log file " + accidentLogFilePath + " not found!");
 		}
 		
+		profileFilePath = Constants.outFilePath + "StepProfile" + Math.round(percentageFaults * 100) + "_" + mapNo + ".txt";
+		sensorFilePath = Constants.outFilePath + "SensorCounters" + Math.round(percentageFaults * 100) + "_" + mapNo + ".txt";
+		
 		// HH 28.8.14 - Create new summary log file for logging pertinent data about the run as a whole for easy analysis
 		accidentSummary = new File(Constants.outFilePath + "AccidentSummary" + Math.round(percentageFaults * 100) + "_" + mapNo + ".txt");
 		
@@ -144,6 +175,17 @@ public class AccidentDetector implements Constants,Steppable {
 	public void step(SimState state) {
 		
 		sim = (COModel)state;
+		
+		sim.getProfiler().enter(StepProfiler.Phase.ACCIDENT_DETECTOR);
+		detectAccidents();
+		sim.getProfiler().exit(StepProfiler.Phase.ACCIDENT_DETECTOR);
+	}
+	
+	/**
+	 * Carry out the checks for step() (see above).
+	 */
+	private void detectAccidents() {
+		
 		ParkedCar obstacle;
 		Car car1;
 		Car car2;
@@ -155,13 +197,14 @@ public class AccidentDetector implements Constants,Steppable {
 		for (int i=0; i<trackedCars.size(); i++)
 		{
 			car1= (Car)trackedCars.get(i);
+			Shape car1Shape = car1.getShape(); // The car doesn't move while we check it against the obstacles
 			
 			// Check for a collision against all obstacles present in the simulation
 			for(int j=0; j<sim.obstacles.size(); j++)
 			{
 				obstacle=(ParkedCar)sim.obstacles.get(j);
 				
-				if(detectCollisionWithObstacle(car1, obstacle))
+				if(detectCollisionWithObstacle(car1Shape, obstacle))
 				{
 					addLog(AccidentType.CLASHWITHOBSTACLE, car1.getID(), sim.schedule.getSteps(), car1.getLocation(), "with obstacle id = "+ obstacle.getID() ); // HH 30/4/14 - Corrected typo
 					noAccidents++;
@@ -211,10 +254,12 @@ public class AccidentDetector implements Constants,Steppable {
 				sim.recordCrossLine(intersectSW);
 			}
 			
-			// Check for a collision against all other cars present in the simulation
-			for (int j=0; j<sim.cars.size(); j++)
+			// Check for a collision against all other cars present in the simulation (only those which are
+			// close enough for their Shapes to overlap can possibly collide, so use the index to find them)
+			Bag nearbyCars = sim.getCarIndex().getVehiclesWithinDistance(car1.getLocation(), 2 * VehicleIndex.MAX_VEHICLE_RADIUS);
+			for (int j=0; j<nearbyCars.size(); j++)
 			{
-				car2= (Car)sim.cars.get(j);
+				car2= (Car)nearbyCars.get(j);
 				if(car2 == car1)
 				{
 					continue;
@@ -233,12 +278,13 @@ public class AccidentDetector implements Constants,Steppable {
 		
 		// Check limit on the number of steps that have been executed (this is also an failure condition)
 		// Update log file and appropriate accident counts in the event of a 'timeout' failure.  Kill the simulation.
-		if (sim.schedule.getSteps() > 5000)
+		if (sim.schedule.getSteps() > MAX_STEPS)
 		{
 			Double2D targetLoc = sim.getTargetLoc();
 			String locString = "(" + targetLoc.x + "," + targetLoc.y + ")";
 			
 			ps.println(AccidentType.TIMEOUT.toString() +"; time: "+ sim.schedule.getSteps() + " steps.  Run Terminated without reaching Target location: " + locString + ".");
+			addAccidentEvent(AccidentType.TIMEOUT, 0, sim.schedule.getSteps(), targetLoc, "Run Terminated without reaching Target location");
 			noAccidents++;
 			AccTimeout++;
 			
@@ -259,7 +305,42 @@ public class AccidentDetector implements Constants,Steppable {
 	 */
 	public void addLog(AccidentType t, int carID, long step, Double2D coor, String str)
 	{
-		ps.println(t.toString() +":- car: "+ carID + "; time: "+ step + " steps; location: (" + coor.x + ", " + coor.y + "); " + str); // HH 30/4/14 Tidied up the formatting here
+		String line = t.toString() +":- car: "+ carID + "; time: "+ step + " steps; location: (" + coor.x + ", " + coor.y + "); " + str; // HH 30/4/14 Tidied up the formatting here
+		
+		if (sim != null) {
+			sim.getProfiler().enter(StepProfiler.Phase.LOGGING);
+		}
+		
+		ps.println(line);
+		
+		if (sim != null) {
+			sim.getProfiler().exit(StepProfiler.Phase.LOGGING);
+		}
+		
+		addAccidentEvent(t, carID, step, coor, str);
+	}
+	
+	/**
+	 * Record an Accident event with the supplied parameters, if the events are being recorded (see SimulationEvents).
+	 * @param t (AccidentType - Type of accident)
+	 * @param carID (int - Unique id of tracked vehicle involved in failure, 0 if there isn't one)
+	 * @param step (long - Simulation time step)
+	 * @param coor (Double2D - Location of the failure)
+	 * @param str (String - Any additional information about the failure, may be null)
+	 */
+	private void addAccidentEvent(AccidentType t, int carID, long step, Double2D coor, String str)
+	{
+		SimulationEvents.Accident event = new SimulationEvents.Accident();
+		if (event.isEnabled() == true)
+		{
+			event.type = t.toString();
+			event.carID = carID;
+			event.step = step;
+			event.x = coor.x;
+			event.y = coor.y;
+			event.details = str;
+			event.commit();
+		}
 	}
 	
 	/** 
@@ -354,7 +435,7 @@ public class AccidentDetector implements Constants,Steppable {
 		// Add the remaining summary log information and write to the file
 		// FORMAT:
 		// "RandomSeed, #Junctions, #Roads, #Obstacles, #Cars, MinJunctionSep, DistanceUGVtoTarget, DistanceTargetToObs, " +
-		// "#Faults, #Steps, #Accidents, #LeaveRoad, #CrossCentre, #CrossSE, #CrossNW, #CrashObs, #CrashCar");
+		// "#Faults, #Steps, #Accidents, #LeaveRoad, #CrossCentre, #CrossSE, #CrossNW, #CrashObs, #CrashCar, #Timeout");
 		
 		summaryString += sim.HgetIRJunctionSep() + ", "; // HH 6.11.14 Output the different categories of junctionSeparation
 		summaryString += noFaults + ", ";
@@ -370,6 +451,14 @@ public class AccidentDetector implements Constants,Steppable {
 				
 		psSummary.println(summaryString);
 		
+		// The sensor work is written to its own file, so that the layout of the summary file is unchanged
+		addSensorCounts();
+		
+		// If the run has been profiled, write the results for each phase alongside the summary
+		if (sim.getProfiler().isEnabled() == true) {
+			addProfile();
+		}
+		
 		// Reset noAccidents and associated measures
 		this.setNoAccidents(0);
 		AccLeaveRoad = 0;
@@ -381,6 +470,57 @@ public class AccidentDetector implements Constants,Steppable {
 		AccTimeout = 0;
 	}
 	
+	/**
+	 * Write the results of the StepProfiler for the run to the profile file (which is created when it is first
+	 * needed), headed by the seeds which identify the run, so they can be matched up with the summary record.
+	 */
+	private void addProfile()
+	{
+		if (psProfile == null)
+		{
+			try{
+				psProfile = new PrintStream(new FileOutputStream(new File(profileFilePath)));
+			}
+			catch(FileNotFoundException e)
+			{
+				throw new RuntimeException("Step profile file " + profileFilePath + " not found!");
+			}
+		}
+		
+		psProfile.println("*** Step profile, Seed = " + sim.seed() + ", External Seed = " + sim.getExternalSeed() + 
+				"; NoSteps = " + sim.schedule.getSteps() + "; NoJunctions = " + sim.getNoJunctions() + "; NoCars = " + sim.noCars + ".");
+		psProfile.println(sim.getProfiler().getSummary());
+		psProfile.println("");
+	}
+	
+	/**
+	 * Write the totals of the SensorCounters for the run to the sensor counter file (which is created, with its 
+	 * header, when it is first needed).  Each line starts with the seeds which identify the run, so that it can be 
+	 * matched up with the summary record.
+	 */
+	private void addSensorCounts()
+	{
+		if (psSensor == null)
+		{
+			try{
+				psSensor = new PrintStream(new FileOutputStream(new File(sensorFilePath)));
+			}
+			catch(FileNotFoundException e)
+			{
+				throw new RuntimeException("Sensor counter file " + sensorFilePath + " not found!");
+			}
+			
+			psSensor.println("RandomSeed, ExternalRandomSeed, #Steps, #SensorRays, #SensorSamples, #SensorShapeTests, #SensorRoadTests");
+		}
+		
+		SensorCounters counters = sim.getSensorCounters();
+		psSensor.println(sim.seed() + ", " + sim.getExternalSeed() + ", " + sim.schedule.getSteps() + ", " + 
+				counters.getTotal(SensorCounters.Counter.RAYS) + ", " + 
+				counters.getTotal(SensorCounters.Counter.SAMPLES) + ", " + 
+				counters.getTotal(SensorCounters.Counter.SHAPE_TESTS) + ", " + 
+				counters.getTotal(SensorCounters.Counter.ROAD_TESTS));
+	}
+	
 	/** 
 	 * Add a passed string to the log file, alongside the current #steps; used by
 	 * COModel.start and COModel.finish to report which faults are active and how
@@ -403,13 +543,13 @@ public class AccidentDetector implements Constants,Steppable {
 	 * on an Area created from the obstacle Shape, to check for intersection 
 	 * with an Area created from the car Shape.  If this intersection is null,
 	 * there is no collision.
-	 * @param car (Car - in use this would be the tracked car, UGV)
+	 * @param carShape (Shape - footprint of the car, in use this would be the tracked car, UGV)
 	 * @param obstacle (ParkedCar - object we are checking for collision against)
 	 * @return boolean (true if a collision is detected)
 	 **/	
-	private boolean detectCollisionWithObstacle(Car car, ParkedCar obstacle)
+	private boolean detectCollisionWithObstacle(Shape carShape, ParkedCar obstacle)
 	{
-		return obstacle.inShape(car.getShape());
+		return obstacle.inShape(carShape);
 	}
 	
 	/** 
@@ -438,8 +578,17 @@ public class AccidentDetector implements Constants,Steppable {
 			return false;
 		}
 				
-		Area shape1 = new Area(trackedCar.getShape());
-		Area shape2 = new Area(car2.getShape());
+		Shape carShape1 = trackedCar.getShape();
+		Shape carShape2 = car2.getShape();
+		
+		// Cars whose bounds don't overlap can't have collided, so there is no need to build the Areas
+		if (carShape1.getBounds2D().intersects(carShape2.getBounds2D()) == false)
+		{
+			return false;
+		}
+		
+		Area shape1 = new Area(carShape1);
+		Area shape2 = new Area(carShape2);
 		Area intersection = new Area(shape1);
 		intersection.intersect(shape2); // replace shape1 with the intersection of shape1 and shape2
 		
@@ -480,7 +629,7 @@ public class AccidentDetector implements Constants,Steppable {
 			// check which side of the road the centre of each car is on) then we can assume that the collision is
 			// the fault of the DumbCar.  Alternatively, as long as the UGV is on the side of the road corresponding to
 			// its direction of travel, if it is hit by a vehicle travelling in the other direction, assume the DC is at fault.
-			if ((sim.junctionAtArea(new Area(trackedCar.getShape()), sim.junctions) == 0) && 
+			if ((sim.junctionAtArea(trackedCar.getShape(), sim.junctions) == 0) && 
 				((sim.getLaneDirAtPoint(trackedCar.getLocation(), sim.roads) != sim.getLaneDirAtPoint(car2.getLocation(), sim.roads)) ||
 				 ((UGVLaneDirSimple != DCLaneDirSimple) && UGVLaneDirSimple == sim.getLaneDirAtPoint(trackedCar.getLocation(), sim.roads))))
 			{
@@ -591,7 +740,7 @@ public class AccidentDetector implements Constants,Steppable {
 	 **/
 	private Double2D detectLineCrossing(Car car, Bag roads, LineType inLineType, Bag junctions)
 	{
-		Double2D retVal = new Double2D(-1,0);
+		Double2D retVal = NO_LINE_CROSSING;
 		
 		// Because at the beginning, this does not have a value
 		if (car.getPrevLoc() == null) {
@@ -613,12 +762,19 @@ public class AccidentDetector implements Constants,Steppable {
 		
 		Line2D.Double trajectory = new Line2D.Double(car.getPrevLoc().x, car.getPrevLoc().y, car.getLocation().x, car.getLocation().y);
 		
+		// Only the roads which overlap the road the car is on can be crossed, if the car has stayed inside that road 
+		// (see LocationTracker.getRoadsOnPath); otherwise, all of the roads are checked
+		int[] roadsOnPath = (roads == sim.roads) ? car.getLocationTracker().getRoadsOnPath(sim, car.getPrevLoc(), car.getLocation()) : null;
+		int noRoadsToCheck = (roadsOnPath == null) ? roads.size() : roadsOnPath.length;
+		
 		// For each road, access the centre line and check for intersection with the
 		// line that is made by connecting the previous and current locations of the
 		// car
-		for (int r=0; r < roads.size(); r++)
+		for (int c=0; c < noRoadsToCheck; c++)
 		{
-			if (((Road) roads.get(r)).getLine(inLineType).intersectsLine(trajectory) == true)
+			int r = (roadsOnPath == null) ? c : roadsOnPath[c];
+			
+			if (((Road) roads.get(r)).getSharedLine(inLineType).intersectsLine(trajectory) == true)
 			{
 				// Check whether the road is N/S or E/W as this will impact upon the calculations below.
 				if (((Road) roads.get(r)).x1 == ((Road) roads.get(r)).x2) {
@@ -626,12 +782,12 @@ public class AccidentDetector implements Constants,Steppable {
 					
 					// See below for comment on simplicity of this calculation.
 					double angle = Math.atan((trajectory.y1 - trajectory.y2)/(trajectory.x1 - trajectory.x2));
-					double adjacent = trajectory.x2 - ((Road) roads.get(r)).getLine(inLineType).getCenterX();
+					double adjacent = trajectory.x2 - ((Road) roads.get(r)).getSharedLine(inLineType).getCenterX();
 					double opposite = adjacent * Math.tan(angle);
 					
 					// Need to make sure that all calculated values are valid numbers
 					if (!Double.isNaN(angle) && !Double.isNaN(adjacent) && !Double.isNaN(opposite)) {
-						retVal = new Double2D(((Road) roads.get(r)).getLine(inLineType).getCenterX(), trajectory.y2 - opposite);
+						retVal = new Double2D(((Road) roads.get(r)).getSharedLine(inLineType).getCenterX(), trajectory.y2 - opposite);
 					}
 										
 				} else {
@@ -642,19 +798,19 @@ public class AccidentDetector implements Constants,Steppable {
 					// centre line has already been crossed, pen & paper calcs suggest that the geometry falls out
 					// correctly due to signs cancelling etc.
 					double angle = Math.atan((trajectory.x1 - trajectory.x2)/(trajectory.y1 - trajectory.y2));
-					double adjacent = trajectory.y2 - ((Road) roads.get(r)).getLine(inLineType).getCenterY();
+					double adjacent = trajectory.y2 - ((Road) roads.get(r)).getSharedLine(inLineType).getCenterY();
 					double opposite = adjacent * Math.tan(angle);
 
 					// Need to make sure that all calculated values are valid numbers
 					if (!Double.isNaN(angle) && !Double.isNaN(adjacent) && !Double.isNaN(opposite)) {
-						retVal = new Double2D(trajectory.x2 - opposite, ((Road) roads.get(r)).getLine(inLineType).getCenterY());
+						retVal = new Double2D(trajectory.x2 - opposite, ((Road) roads.get(r)).getSharedLine(inLineType).getCenterY());
 					}
 				}
 			}
 		}
 				
 		if (sim.junctionAtPoint(retVal, junctions) != 0 || retVal.x == -1) {
-			return new Double2D(-1,0); // return value of x = -1 indicates no failure
+			return NO_LINE_CROSSING; // return value of x = -1 indicates no failure
 		} else {
 			return retVal;
 		}
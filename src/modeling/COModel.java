@@ -18,6 +18,8 @@ public class COModel extends SimState
 {
 	private static final long serialVersionUID = 1L;
 	
+	private static final Double2D NO_INTERSECT = new Double2D(0,0); // Used by snapToLane for 'no intersection found'
+	
 	// Main collections of objects in the model
 	public Bag toSchedule = new Bag(); // Incl. Entities with a step routine: Cars, UGVs
 	public Bag allEntities = new Bag(); // Incl. Cars, UGVs, Obstacles and Target
@@ -26,6 +28,8 @@ public class COModel extends SimState
 	public Bag roads = new Bag(); // Roads
 	public Bag junctions = new Bag(); // Junctions
 	public Bag ugvs = new Bag(); // UGVs
+	private Bag carPool = new Bag(); // DumbCars which have left the road, for reuse by addNewDumbCar
+	private int noActiveUGVs = 0; // Number of UGVs on the schedule which are still active (see dealWithTermination)
 	
 	// Store some of the environmental metrics
 	public int noObstacles=0;
@@ -50,6 +54,7 @@ public class COModel extends SimState
 	// Every time a new fault is added to the code, Constants.MAX_FAULTS should be incremented.
 	private boolean faultArray[] = new boolean[Constants.MAX_FAULTS];  // Flag whether the fault is active or not
 	private long faultCalled[] = new long[Constants.MAX_FAULTS]; // Keep a count of how many times each fault has been called during the simulation
+	private long faultEventStep[] = new long[Constants.MAX_FAULTS]; // Step (+1, so 0 means none) of the last FaultActivation event for each fault
 	private double percentageFaults = 0;
 	private boolean wantRandomFaults = false;
 	
@@ -63,20 +68,38 @@ public class COModel extends SimState
 	
     public Continuous2D environment; // Allows us to add/query items on the map in continuous space 
 	
-    // Integer Grid Based Maps to store different layers? of the environment/map
-	public IntGrid2D obstacleMap; // Map (layer?) to store the obstacle locations
+    // Integer Grid Based Maps to store different layers? of the environment/map.  These are only used by the
+	// portrayals in the UI, so they are built on demand by the get methods below (and discarded when a new
+	// map is started).  In a headless simulation they are never built at all.
+	private IntGrid2D obstacleMap; // Map (layer?) to store the obstacle locations
 	private int obstacleMapResolution = 3; //multiplier used to change resolution of obstacles image
 	private int terrainMapResolution = 3;
-	public IntGrid2D wallMap; // Map (layer?) to store the wall
+	private IntGrid2D wallMap; // Map (layer?) to store the wall
 	private int wallMapResolution = 3;
-	public IntGrid2D roadMap; // Map (layer?) to store the roads
+	private IntGrid2D roadMap; // Map (layer?) to store the roads
 	private int roadMapResolution = 5; // Increased from 3 to try and improve the lane markings
-	public IntGrid2D junctionMap; // Map (layer?) to store the junctions
+	private IntGrid2D junctionMap; // Map (layer?) to store the junctions
 	private int junctionMapResolution = 5; // Increased from 3 to try and improve the lane markings
-	public IntGrid2D jctApproachMap; // Map (layer?) to store the junction approaches
+	private IntGrid2D jctApproachMap; // Map (layer?) to store the junction approaches
 	private int jctApproachMapResolution = 5; // Increased from 3 to try and improve the lane markings	
-	public IntGrid2D roadMarkingMap; // Map (layer?) to store the road markings
+	private PackedIntGrid2D roadMarkingMap; // Map (layer?) to store the road markings (packed, as only 3 values are stored)
 	private int roadMarkingMapResolution = 10; // Higher resolution due to narrow lines
+	private boolean headless = false; // True if the map layers should never be built (no UI will ask for them)
+	
+	private RoadIndex roadIndex; // Spatial index of the roads, built on demand (see getRoadIndex)
+	private RoadNetwork roadNetwork = new RoadNetwork(); // Graph of the junctions and roads, built by COModelBuilder
+	private JunctionIndex junctionIndex; // Spatial index of the junctions, built on demand (see getJunctionIndex)
+	private VehicleIndex carIndex; // Spatial index of the DumbCars, built on demand (see getCarIndex)
+	private boolean twoPhaseCarUpdate = false; // True if the DumbCars are stepped together by a DumbCarStepper
+	private int carUpdateThreads = 1; // Number of threads used by the DumbCarStepper to sense
+	private boolean compatibleMode = false; // True if runs should use the same random numbers as earlier versions (see setCompatibleMode)
+	private StepProfiler profiler = new StepProfiler(); // Disabled unless profiling is selected
+	private SensorCounters sensorCounters = new SensorCounters(); // Work done by the vehicle sensors during the run
+	private EntityRegistry environmentEntities = new EntityRegistry(); // The entities in the environment, by ID (see addToEnvironment)
+	private EntityRegistry modelEntities; // The entities in allEntities, by ID, built on demand (see getModelEntities)
+	private int modelEntitiesSize; // Size of allEntities when modelEntities was built
+	private MarkerStore markers; // Waypoints and Failures/Crashes for display, kept out of the environment (see MarkerStore)
+	private Rectangle2D.Double[] roadSurfacesOnMap; // Road surfaces constrained to the map, built on demand (see getRoadSurfacesOnMap)
 	
 	/**
 	 * An array for storing the Junction-Junction links that have been traversed during the simulation
@@ -186,7 +209,7 @@ public class COModel extends SimState
 	
 	public AccidentDetector aDetector; // Construct this later so can pass arguments from COModel constructor
 	
-	public InfoLogFile infoLog = new InfoLogFile(); // Logging file for information (non-accident) messages
+	public InfoLogFile infoLog; // Logging file for information (non-accident) messages
 		
 	/**
 	 * Constructor used for setting up a simulation from the COModelBuilder object.  Some of the supplied arguments
@@ -205,22 +228,39 @@ public class COModel extends SimState
 	 * 									  false to use supplied fault index)
 	 */
     public COModel(long seed, double x, double y, boolean UI, double inPercentageFaults, long mapNo, boolean inWantRandomFaults)
+    {
+    	this(seed, x, y, UI, inPercentageFaults, mapNo, inWantRandomFaults, true);
+    }
+    
+	/**
+	 * Constructor - as above, but with the option to run without creating any output files: if wantOutputFiles
+	 * is false, the info log, accident log and accident summary are discarded rather than written (e.g. when
+	 * benchmarking map generation, see simcontroller.MapGenerationBenchmark).
+	 * @param seed (long - for random number generator)
+	 * @param x (double - the width of the simulation environment)
+	 * @param y (double - the height of the simulation environment)
+	 * @param UI (boolean - true if the simulation is being run with a UI, false if it is not)
+	 * @param inPercentageFaults (double - value of 0..1 (incl) to set % of faults to be injected 
+	 *                                   into the model OR index of single fault to be injected)
+	 * @param mapNo (long - unique identifier for results files, may include search effort, run index, R/SB differentiation)
+	 * @param inWantRandomFaults (boolean - true if faults should be inserted at random at selected level, 
+	 * 									  false to use supplied fault index)
+	 * @param wantOutputFiles (boolean - true to write the log files, false to discard everything logged)
+	 */
+    public COModel(long seed, double x, double y, boolean UI, double inPercentageFaults, long mapNo, boolean inWantRandomFaults, boolean wantOutputFiles)
     {
     	super(seed);
+    	infoLog = new InfoLogFile(wantOutputFiles);
+    	infoLog.setProfiler(profiler);
     	environment = new Continuous2D(1.0, x, y);
+    	markers = new MarkerStore(x, y, Constants.MAX_FAILURE_MARKERS);
 		xDouble = x;
 		yDouble = y;
 		
-		aDetector = new AccidentDetector(inPercentageFaults, mapNo); // Construct accident detector, pass %faults to use in file name for batch runs
+		aDetector = new AccidentDetector(inPercentageFaults, mapNo, wantOutputFiles); // Construct accident detector, pass %faults to use in file name for batch runs
 		
-		// Construct the discrete maps at the appropriate size and resolution
-		// NOTE: This may not be the most efficient way to represent the map environment, it is inherited from an 
-		// earlier model.
-		wallMap = new IntGrid2D((int) (xDouble * wallMapResolution), (int) (yDouble * wallMapResolution), 0);
-    	roadMap = new IntGrid2D((int) (xDouble * roadMapResolution), (int) (yDouble * roadMapResolution), 0);
-    	junctionMap = new IntGrid2D((int) (xDouble * junctionMapResolution), (int) (yDouble * junctionMapResolution), 0);
-    	jctApproachMap = new IntGrid2D((int) (xDouble * jctApproachMapResolution), (int) (yDouble * jctApproachMapResolution), 0);
-		roadMarkingMap = new IntGrid2D((int) (xDouble * roadMarkingMapResolution), (int) (yDouble * roadMarkingMapResolution), 0);
+		// NOTE: The discrete maps are no longer constructed here, they are allocated and built at the appropriate 
+		// size and resolution the first time they are requested (see getRoadMap etc.)
     	
 		runningWithUI = UI;
 		carStats = new CarPerformance(carMaxSpeed, carMaxAcceleration, carMaxDecceleration, carMaxTurning);
@@ -248,7 +288,30 @@ public class COModel extends SimState
     
     // Getter/setter to access the faultArray
     public boolean getFault(int idx) { return faultArray[idx]; }
-    public void setFault(int idx) {	faultCalled[idx] ++; } // Increment the entry in the fault called array found at the specified index
+    public void setFault(int idx) {	setFault(idx, 1); } // Increment the entry in the fault called array found at the specified index
+    public long getFaultCalled(int idx) { return faultCalled[idx]; } // Number of times the fault at the specified index has been called
+    
+	/**
+	 * Record a number of calls (activations) of the fault at the specified index in the fault called array.  If
+	 * the events are being recorded (see SimulationEvents), a FaultActivation event is recorded for the first 
+	 * activation of each fault in each step (some faults are activated for every ray of a sensor sweep).
+	 * @param idx (int - index of the fault)
+	 * @param noCalls (long - number of calls)
+	 */
+    public void setFault(int idx, long noCalls)
+    {
+    	faultCalled[idx] += noCalls;
+    	
+    	SimulationEvents.FaultActivation event = new SimulationEvents.FaultActivation();
+    	if (event.isEnabled() == true && faultEventStep[idx] != schedule.getSteps() + 1)
+    	{
+    		faultEventStep[idx] = schedule.getSteps() + 1;
+    		event.fault = idx;
+    		event.totalCalls = faultCalled[idx];
+    		event.step = schedule.getSteps();
+    		event.commit();
+    	}
+    }
     
     // Get/set methods for various parameters
 	public int getNoJunctions() { return noJunctions; }
@@ -275,35 +338,61 @@ public class COModel extends SimState
 	public long getExternalSeed() { return this.externalSeed; }
 	public void setExternalSeed(long reqSeed) { this.externalSeed = reqSeed; }
 	
+	public boolean getHeadless() { return this.headless; }
+	public void setHeadless(boolean inHeadless) { this.headless = inHeadless; clearMapLayers(); markers.setEnabled(inHeadless == false); }
+	
+	public MarkerStore getMarkers() { return this.markers; }
+	
+	// The two-phase update takes effect when the simulation is next started
+	public boolean getTwoPhaseCarUpdate() { return this.twoPhaseCarUpdate; }
+	public void setTwoPhaseCarUpdate(boolean inTwoPhase) { this.twoPhaseCarUpdate = inTwoPhase; }
+	
+	public int getCarUpdateThreads() { return this.carUpdateThreads; }
+	public void setCarUpdateThreads(int inThreads) { this.carUpdateThreads = Math.max(1, inThreads); }
+	
+	// Compatible mode chooses the junction exits with the original retry loops (see Junction), and leaves departed
+	// DumbCars on the schedule (see retireDumbCar), so that seeds reproduce the runs of earlier versions
+	public boolean getCompatibleMode() { return this.compatibleMode; }
+	public void setCompatibleMode(boolean inCompatible) { this.compatibleMode = inCompatible; }
+	
+	// Profiling can be switched on and off at any time, the results are written at the end of each run
+	public boolean getProfiling() { return this.profiler.isEnabled(); }
+	public void setProfiling(boolean inProfiling) { this.profiler.setEnabled(inProfiling); }
+	
+	public StepProfiler getProfiler() { return this.profiler; }
+	
+	public SensorCounters getSensorCounters() { return this.sensorCounters; }
+	
 	/**
 	 * This method is used if we actually want to run the simulation for the map that has
 	 * been created.  SimState.start is called, the environment is cleared and entities are
-	 * loaded and scheduled.  Map representations are built for all the static features on
-	 * the map/environment.  Faults, and fault tracking are instantiated (either at random
+	 * loaded and scheduled.  Any map representations of the static features from a previous 
+	 * map are discarded (they are rebuilt on demand for the UI).  Faults, and fault tracking are instantiated (either at random
 	 * or for a specific fault) and the accidentDetector log files are populated with header 
 	 * information.
 	 */
 	public void start()
 	{
+		SimulationEvents.RunStart event = new SimulationEvents.RunStart();
+		event.begin();
+		
 		super.start();	
 		environment.clear();
+		environmentEntities.clear();
+		markers.clear();
+		profiler.reset();
+		sensorCounters.reset();
 		
 		loadEntities();
 		scheduleEntities();
 
-		{
-			buildObstacleMap(); 
-			buildRoadMap();
-			buildJunctionMap();
-			buildJctApproachMap();
-			buildRoadMarkingsMap();
-			buildWallMap();
-		}
+		clearMapLayers();
 		
 		// Set up the faults/fault tracking (do this before adding the header to aDetector so the faultArray can
 		// be logged to file.
 		faultArray = new boolean[Constants.MAX_FAULTS]; // Clear out the array
 		faultCalled = new long[Constants.MAX_FAULTS]; // Clear out the array or results will accumulate!
+		faultEventStep = new long[Constants.MAX_FAULTS];
 		
 		// Choose random faults, or to allow only one specified fault to be activated
 		if (wantRandomFaults == false)
@@ -315,6 +404,19 @@ public class COModel extends SimState
 		
 		aDetector.addHeader(this); // Add header to accident log file
 		aDetector.addString(this, HgetFaultArrayAsString()); // Add the fault array to the accident log file
+		
+		if (event.isEnabled() == true)
+		{
+			event.seed = seed();
+			event.externalSeed = getExternalSeed();
+			for (int i = 0; i < Constants.MAX_FAULTS; i++)
+			{
+				if (faultArray[i] == true) {
+					event.noFaults++;
+				}
+			}
+			event.commit();
+		}
 	}
 	
 	/**
@@ -324,10 +426,23 @@ public class COModel extends SimState
 	 **/
 	public void finish()
 	{
+		SimulationEvents.RunFinish event = new SimulationEvents.RunFinish();
+		event.begin();
+		
+		// The accident count is reset by addFooter
+		if (event.isEnabled() == true)
+		{
+			event.seed = seed();
+			event.externalSeed = getExternalSeed();
+			event.steps = schedule.getSteps();
+			event.noAccidents = aDetector.getNoAccidents();
+		}
+		
 		super.finish();
 		
-		// Log the faultCalled array to file before writing out the footer information to the file.
+		// Log the faultCalled array and the work done by the sensors to file before writing out the footer information to the file.
 		aDetector.addString(this, HgetFaultCalledAsString());
+		aDetector.addString(this, "Sensor work: " + sensorCounters.getSummary());
 		aDetector.addFooter(this); // Add Footer information to the Accident Log file
 		
 		// Reset the External Seed to zero if we are running with a UI
@@ -335,6 +450,8 @@ public class COModel extends SimState
 		{
 			setExternalSeed(0);
 		}
+		
+		event.commit();
 	}
 	
 	/**
@@ -359,19 +476,136 @@ public class COModel extends SimState
 		return t;
 	}
 	
+	/**
+	 * Add the supplied entity to the environment at the supplied location, and register it by ID so that it
+	 * can be found with getEnvironmentEntity.  Entities which are already in the environment should just be
+	 * moved with environment.setObjectLocation.
+	 * @param e (Entity - the entity to add)
+	 * @param location (Double2D - the location of the entity)
+	 */
+	public void addToEnvironment(Entity e, Double2D location)
+	{
+		boolean isNew = (environment.getObjectLocation(e) == null);
+		environment.setObjectLocation(e, location);
+		
+		if (isNew == true) {
+			environmentEntities.register(e);
+		}
+	}
+	
+	/**
+	 * Add the supplied Waypoint to the simulation at the supplied location.  Waypoints are registered by ID
+	 * (so that they can be found with getEnvironmentEntity) and stored for display, but are not added to the
+	 * environment itself; the vehicle which created the Waypoint keeps track of it (see Car.getWaypoints).
+	 * @param wp (Waypoint - the Waypoint to add)
+	 * @param location (Double2D - the location of the Waypoint)
+	 */
+	public void addWaypoint(Waypoint wp, Double2D location)
+	{
+		environmentEntities.register(wp);
+		markers.addWaypoint(wp, location);
+	}
+	
+	/**
+	 * Add the supplied Failure or Crash marker to the simulation at the supplied location.  As for Waypoints,
+	 * the marker is registered by ID and stored for display, but is not added to the environment itself.
+	 * @param marker (Entity - the Failure or Crash to add)
+	 * @param location (Double2D - the location of the marker)
+	 */
+	private void addFailureMarker(Entity marker, Double2D location)
+	{
+		environmentEntities.register(marker);
+		markers.addFailure(marker, location);
+	}
+	
+	/**
+	 * Remove the supplied entity from the environment (or from the Waypoints and markers, see addWaypoint),
+	 * and from the registry of entities in the environment.
+	 * @param e (Entity - the entity to remove)
+	 */
+	public void removeFromEnvironment(Entity e)
+	{
+		if (environment.remove(e) != null) {
+			environmentEntities.unregister(e);
+		} else if (environmentEntities.unregister(e) == true) {
+			// A Waypoint or failure marker, which are registered but not in the environment
+			markers.remove(e);
+			if (e instanceof Waypoint && ((Waypoint) e).getOwner() != null) {
+				((Waypoint) e).getOwner().removeWaypoint((Waypoint) e);
+			}
+		}
+	}
+	
+	/**
+	 * Return the entity in the environment with the supplied ID e.g. the Target or Waypoint that a vehicle is
+	 * heading for.  This finds the same entity as looping through all of the objects in the environment,
+	 * Waypoints and markers (in the order they would have had in a single Continuous2D) and checking the IDs
+	 * (keeping the last match), but doesn't slow down as Waypoints and Failures are added during a run.
+	 * @param id (int - the ID of the entity required)
+	 * @return Entity (the entity with this ID, or null if there isn't one in the environment)
+	 */
+	public Entity getEnvironmentEntity(int id)
+	{
+		int count = environmentEntities.getCount(id);
+		
+		if (count == 0) {
+			return null;
+		} else if (count == 1 && environmentEntities.get(id) != null) {
+			return environmentEntities.get(id);
+		}
+		
+		// Several entities share this ID (fault #0 can cause this), so search all of the registered entities
+		// in the same way as before the registry was introduced
+		Entity retVal = null;
+		Bag everything = environmentEntities.getAll();
+		for (int i = 0; i < everything.size(); i++)
+		{
+			if (((Entity) everything.get(i)).getID() == id) {
+				retVal = (Entity) everything.get(i);
+			}
+		}
+		
+		return retVal;
+	}
+	
+	/**
+	 * Return the target, if it is in the environment.
+	 * @return Entity (the TTARGET entity in the environment, or null if there isn't one)
+	 */
+	public Entity getEnvironmentTarget()
+	{
+		return environmentEntities.getTarget();
+	}
+	
+	/**
+	 * Return the registry of the entities in allEntities, (re)building it if entities have been added since
+	 * it was last built.  Entities are otherwise only added to allEntities, or cleared by reset() (retireDumbCar
+	 * discards the registry when it removes a car), so its size is enough to tell whether the registry is up to date.
+	 * @return EntityRegistry (the entities in allEntities, by ID)
+	 */
+	private EntityRegistry getModelEntities()
+	{
+		if (modelEntities == null || modelEntitiesSize != allEntities.size())
+		{
+			modelEntities = new EntityRegistry(allEntities);
+			modelEntitiesSize = allEntities.size();
+		}
+		
+		return modelEntities;
+	}
+	
 	/**
 	 * Method to provide the location of the target, originally required for logging information
-	 * in the event that the TIMEOUT - event occurs.  Loops through the allEntities array and
-	 * returns the location of the first TTARGET-type object it finds.  Assumes there will only 
+	 * in the event that the TIMEOUT - event occurs.  Returns the location of the first TTARGET-type 
+	 * object in the allEntities array (see EntityRegistry.getTarget).  Assumes there will only 
 	 * be one target in the simulation.
 	 * @return Double2D (coordinates of location of target)
 	 */
 	public Double2D getTargetLoc()
 	{
-		for (int i=0; i< allEntities.size(); i++) {
-			if (((Entity) allEntities.get(i)).type == Constants.TTARGET) {
-				return ((Entity) allEntities.get(i)).getLocation();
-			}			
+		Entity target = getModelEntities().getTarget();
+		if (target != null) {
+			return target.getLocation();
 		}
 		
 		return new Double2D(-1,-1);
@@ -384,7 +618,7 @@ public class COModel extends SimState
 	{
 		for(int i = 0; i < allEntities.size(); i++)
 		{
-			environment.setObjectLocation((Entity) allEntities.get(i), ((Entity) allEntities.get(i)).getLocation());
+			addToEnvironment((Entity) allEntities.get(i), ((Entity) allEntities.get(i)).getLocation());
 		}	
 	}
 		
@@ -392,14 +626,29 @@ public class COModel extends SimState
 	 * A method which adds all the entities marked as requiring scheduling to the
 	 * schedule for the simulation.  These should be scheduled repeatedly, as 
 	 * should the accidentDetector.  Also, sets the Bag of trackedCars in the
-	 * accidentDetector so that it contains the set (containing 1) of UGVs.
+	 * accidentDetector so that it contains the set (containing 1) of UGVs.  If the two-phase
+	 * car update is selected, the DumbCars are not scheduled individually, instead a single
+	 * DumbCarStepper is scheduled to step all of them.
 	 */
 	public void scheduleEntities()
 	{
-		// Loop across all items in toSchedule and add them all to the schedule
+		// Loop across all items in toSchedule and add them all to the schedule, keeping the handle so that
+		// they can be taken off the schedule again, and count the active UGVs
+		noActiveUGVs = 0;
 		for(int i = 0; i < toSchedule.size(); i++)
 		{
-			schedule.scheduleRepeating((Entity) toSchedule.get(i));
+			Car car = (Car) toSchedule.get(i);
+			if (twoPhaseCarUpdate == false || car.getType() != Constants.DUMBCAR) {
+				car.setStopper(schedule.scheduleRepeating(car));
+			}
+			
+			if (car.isActive == true && car.getType() == Constants.TUGV) {
+				noActiveUGVs++;
+			}
+		}
+		
+		if (twoPhaseCarUpdate == true) {
+			schedule.scheduleRepeating(new DumbCarStepper(carUpdateThreads));
 		}
 		
 		try 
@@ -430,11 +679,20 @@ public class COModel extends SimState
 		toSchedule.clear();
 		allEntities.clear();
 		environment.clear();
-		roadMap.setTo(Constants.NOTROAD);
+		environmentEntities.clear();
+		markers.clear();
+		modelEntities = null;
 		roads.clear();
 		junctions.clear();
 		ugvs.clear();
-		roadMarkingMap.setTo(Constants.NOPAINT);
+		carPool.clear();
+		noActiveUGVs = 0;
+		roadIndex = null;
+		junctionIndex = null;
+		roadNetwork.clear();
+		carIndex = null;
+		roadSurfacesOnMap = null;
+		clearMapLayers();
 		resetJctArray();
 	}
 	
@@ -540,6 +798,128 @@ public class COModel extends SimState
 		}
 	}
 	
+	/**
+	 * Discard all of the discrete map layers so that they will be rebuilt (for the current map)
+	 * the next time that they are requested.
+	 */
+	private void clearMapLayers()
+	{
+		obstacleMap = null;
+		wallMap = null;
+		roadMap = null;
+		junctionMap = null;
+		jctApproachMap = null;
+		roadMarkingMap = null;
+	}
+	
+	/**
+	 * Check that the discrete map layers are allowed to be built i.e. this is not a headless simulation.
+	 */
+	private void checkMapLayersAllowed()
+	{
+		if (headless == true)
+		{
+			throw new RuntimeException("Map layers are not available in a headless simulation");
+		}
+	}
+	
+	/**
+	 * Return the discrete map of the obstacles, building it first if this has not already
+	 * been done for the current map.
+	 * @return IntGrid2D (obstacle map layer)
+	 */
+	public IntGrid2D getObstacleMap()
+	{
+		if (obstacleMap == null)
+		{
+			checkMapLayersAllowed();
+			buildObstacleMap();
+		}
+		
+		return obstacleMap;
+	}
+	
+	/**
+	 * Return the discrete map of the boundary walls, building it first if this has not already
+	 * been done.
+	 * @return IntGrid2D (wall map layer)
+	 */
+	public IntGrid2D getWallMap()
+	{
+		if (wallMap == null)
+		{
+			checkMapLayersAllowed();
+			buildWallMap();
+		}
+		
+		return wallMap;
+	}
+	
+	/**
+	 * Return the discrete map of the roads, building it first if this has not already
+	 * been done for the current map.
+	 * @return IntGrid2D (road map layer)
+	 */
+	public IntGrid2D getRoadMap()
+	{
+		if (roadMap == null)
+		{
+			checkMapLayersAllowed();
+			buildRoadMap();
+		}
+		
+		return roadMap;
+	}
+	
+	/**
+	 * Return the discrete map of the junctions, building it first if this has not already
+	 * been done for the current map.
+	 * @return IntGrid2D (junction map layer)
+	 */
+	public IntGrid2D getJunctionMap()
+	{
+		if (junctionMap == null)
+		{
+			checkMapLayersAllowed();
+			buildJunctionMap();
+		}
+		
+		return junctionMap;
+	}
+	
+	/**
+	 * Return the discrete map of the junction approaches, building it first if this has not 
+	 * already been done for the current map.
+	 * @return IntGrid2D (junction approach map layer)
+	 */
+	public IntGrid2D getJctApproachMap()
+	{
+		if (jctApproachMap == null)
+		{
+			checkMapLayersAllowed();
+			buildJctApproachMap();
+		}
+		
+		return jctApproachMap;
+	}
+	
+	/**
+	 * Return the discrete map of the road markings, building it first if this has not already
+	 * been done for the current map.  Use PackedIntGrid2D.toIntGrid2D if an IntGrid2D is required
+	 * e.g. for a portrayal.
+	 * @return PackedIntGrid2D (road marking map layer)
+	 */
+	public PackedIntGrid2D getRoadMarkingMap()
+	{
+		if (roadMarkingMap == null)
+		{
+			checkMapLayersAllowed();
+			buildRoadMarkingsMap();
+		}
+		
+		return roadMarkingMap;
+	}
+	
 	/**
 	 * A method which creates a discrete map of where obstacles are in the environment
 	 * which can be used for outputting a visual representation of the obstacles
@@ -547,44 +927,29 @@ public class COModel extends SimState
 	 */
 	private void buildObstacleMap()
 	{
-		Bag all = environment.allObjects;
-		Bag obstacles = new Bag();
-		Double2D coordinate;
 		int xInt = (int) (xDouble * obstacleMapResolution);
 		int yInt = (int) (yDouble * obstacleMapResolution);
 		obstacleMap = new IntGrid2D(xInt, yInt, 0);
+		MapRasteriser rasteriser = new MapRasteriser(obstacles.size());
 		
-		for (int i = 0; i < all.size(); i++)
+		for (int i = 0; i < obstacles.size(); i++)
 		{
-			if (((Entity) (all.get(i))).getType() == Constants.TPARKEDCAR)
-			{
-				obstacles.add(all.get(i));
-			}
+			rasteriser.addShape(((ParkedCar) obstacles.get(i)).getShape(), 1);
 		}
 		
-		// Loop through all 'squares' in the obstacleMap grid and check to see whether they overlap with an obstacle
-		// (ParkedCar) - if they do, set the map field to 1.
-		for (int i = 0; i < xInt; i++) {
-			for (int j = 0; j < yInt; j++)
-			{
-				// Adjust i/j values back to appropriate coordinate scale for occupancy check
-				coordinate = new Double2D(((double) i) / obstacleMapResolution, ((double) j) / obstacleMapResolution);
-				
-				if (obstacleAtPoint(coordinate, obstacles))
-				{
-					obstacleMap.field[i][j] = 1;
-				}				
-			}
-		}
+		// Scan-convert each obstacle (ParkedCar) into the 'squares' of the obstacleMap grid that it
+		// overlaps - these are set to 1, all others to 0.
+		rasteriser.rasterise(obstacleMap.field, obstacleMapResolution, 0);
 	}
 	
 	/**
 	 * A method which 'draws' the boundary of the map into the wallMap grid.
 	 */
-	public void buildWallMap()
+	private void buildWallMap()
 	{
 		int xInt = (int) (xDouble * terrainMapResolution);
 		int yInt = (int) (yDouble * terrainMapResolution);
+		wallMap = new IntGrid2D((int) (xDouble * wallMapResolution), (int) (yDouble * wallMapResolution), 0);
 		
 		for (int i = 0; i < yInt; i++) 
 		{
@@ -602,102 +967,81 @@ public class COModel extends SimState
 	/**
 	 * Initialise the RoadMap representation.
 	 */
-	public void buildRoadMap()
+	private void buildRoadMap()
 	{
-		int xInt = (int) (xDouble * roadMapResolution);
-		int yInt = (int) (yDouble * roadMapResolution);
-		Double2D coordinate;
-		
-		// Loop through all 'squares' in the obstacleMap grid and check to see whether they overlap with a road
-		// - if they do, set the map field to either SINGLEONEWAY or NOTROAD.
-		for (int i = 0; i < xInt; i++) {
-			for (int j = 0; j < yInt; j++)
-			{
-				// Adjust i/j values back to appropriate coordinate scale for occupancy check
-				coordinate = new Double2D(((double) i) / roadMapResolution, ((double) j) / roadMapResolution);
-				
-				if (roadAtPoint(coordinate, roads))
-				{
-					roadMap.field[i][j] = Constants.SINGLEONEWAY;
-				} else {
-					roadMap.field[i][j] = Constants.NOTROAD;
-				}	
-			}
+		roadMap = new IntGrid2D((int) (xDouble * roadMapResolution), (int) (yDouble * roadMapResolution), 0);
+		MapRasteriser rasteriser = new MapRasteriser(roads.size());
+		
+		// Scan-convert each road surface into the 'squares' of the roadMap grid that it overlaps
+		// - these are set to SINGLEONEWAY, all others to NOTROAD.
+		for (int i = 0; i < roads.size(); i++)
+		{
+			rasteriser.addRectangle(((Road) roads.get(i)).getSurface(), Constants.SINGLEONEWAY);
 		}
+		
+		rasteriser.rasterise(roadMap.field, roadMapResolution, Constants.NOTROAD);
 	}
 	
 	/**
 	 * Initialise the JunctionMap representation.
 	 */
-	public void buildJunctionMap()
+	private void buildJunctionMap()
 	{
-		int xInt = (int) (xDouble * junctionMapResolution);
-		int yInt = (int) (yDouble * junctionMapResolution);
-		Double2D coordinate;
-		
-		// Loop through all 'squares' in the obstacleMap grid and check to see whether they overlap with a road
-		// - if they do, set the map field to the junction type.
-		for (int i = 0; i < xInt; i++) {
-			for (int j = 0; j < yInt; j++)
-			{
-				// Adjust i/j values back to appropriate coordinate scale for occupancy check
-				coordinate = new Double2D(((double) i) / junctionMapResolution, ((double) j) / junctionMapResolution);
-				
-				junctionMap.field[i][j] = junctionTypeAtPoint(coordinate, junctions);
-			}
+		junctionMap = new IntGrid2D((int) (xDouble * junctionMapResolution), (int) (yDouble * junctionMapResolution), 0);
+		MapRasteriser rasteriser = new MapRasteriser(junctions.size());
+		
+		// Scan-convert each junction into the 'squares' of the junctionMap grid that it overlaps
+		// - these are set to the junction type, all others to NOJUNCTION.  Junctions are added in
+		// the same order as junctionTypeAtPoint checks them, so the first junction found still wins.
+		for (int i = 0; i < junctions.size(); i++)
+		{
+			Junction jct = (Junction) junctions.get(i);
+			rasteriser.addRectangle(jct.getJunctionArea(), jct.getType());
 		}
+		
+		rasteriser.rasterise(junctionMap.field, junctionMapResolution, Constants.NOJUNCTION);
 	}
 
 	/**
 	 * Initialise the JunctionApproachMap representation.
 	 */
-	public void buildJctApproachMap()
+	private void buildJctApproachMap()
 	{
-		int xInt = (int) (xDouble * jctApproachMapResolution);
-		int yInt = (int) (yDouble * jctApproachMapResolution);
-		Double2D coordinate;
-		
-		// Loop through all 'squares' in the obstacleMap grid and check to see whether they overlap with a road
-		// - if they do, set to 1, else 0.
-		for (int i = 0; i < xInt; i++) {
-			for (int j = 0; j < yInt; j++)
-			{
-				// Adjust i/j values back to appropriate coordinate scale for occupancy check
-				coordinate = new Double2D(((double) i) / jctApproachMapResolution, ((double) j) / jctApproachMapResolution);
-				
-				if (junctionAppAtPoint(coordinate, junctions)) {
-					jctApproachMap.field[i][j] = 1;
-				} else {
-					jctApproachMap.field[i][j] = 0;
-				}
-			}
+		jctApproachMap = new IntGrid2D((int) (xDouble * jctApproachMapResolution), (int) (yDouble * jctApproachMapResolution), 0);
+		MapRasteriser rasteriser = new MapRasteriser(junctions.size());
+		
+		// Scan-convert each junction approach into the 'squares' of the jctApproachMap grid that it 
+		// overlaps - these are set to 1, all others to 0.
+		for (int i = 0; i < junctions.size(); i++)
+		{
+			rasteriser.addShape(((Junction) junctions.get(i)).getJunctionApproach(), 1);
 		}
+		
+		rasteriser.rasterise(jctApproachMap.field, jctApproachMapResolution, 0);
 	}
 	
 	/**
 	 * Initialise the RoadMarkingsMap representation - note that this has a much higher resolution than
-	 * other Int2DGrid and therefore takes up a substantial amount of memory - there are probably more 
-	 * efficient ways to implement this.
+	 * other Int2DGrid, so it is stored as a PackedIntGrid2D (2 bits per cell) to keep the memory use down.
 	 */
-	public void buildRoadMarkingsMap()
+	private void buildRoadMarkingsMap()
 	{
-		int xInt = (int) (xDouble * roadMarkingMapResolution);
-		int yInt = (int) (yDouble * roadMarkingMapResolution);
-		Double2D coordinate;
-		
-		// Loop through all 'squares' in the obstacleMap grid and check to see whether they overlap with a road
-		// - if they do, set to WHITEPAINT, WHITERPAINT or NOPAINT.
-		for (int i = 0; i < xInt; i++) {
-			for (int j = 0; j < yInt; j++)
-			{
-				// Adjust i/j values back to appropriate coordinate scale for occupancy check
-				coordinate = new Double2D(((double) i) / roadMarkingMapResolution, ((double) j) / roadMarkingMapResolution);
-				// Loop over all coordinates and check if there are any road markings there
-				roadMarkingMap.field[i][j] = roadMarkingAtPoint(coordinate, roads);
-
-				// TODO - in the future, we may want to suspend line drawing through junctions 
-			}
+		roadMarkingMap = new PackedIntGrid2D((int) (xDouble * roadMarkingMapResolution), (int) (yDouble * roadMarkingMapResolution), Constants.NOPAINT);
+		MapRasteriser rasteriser = new MapRasteriser(roads.size() * 3);
+		
+		// Scan-convert each of the line markings on each road into the 'squares' of the roadMarkingMap grid
+		// that they overlap - these are set to WHITEPAINT or WHITERPAINT, all others to NOPAINT.  Lines are added
+		// in the same order as roadMarkingAtPoint checks them, so the first line found still wins.
+		for (int i = 0; i < roads.size(); i++)
+		{
+			rasteriser.addShape(((Road) roads.get(i)).getLine(LineType.NESIDE), Constants.WHITEPAINT);
+			rasteriser.addShape(((Road) roads.get(i)).getLine(LineType.CENTRE), Constants.WHITERPAINT);
+			rasteriser.addShape(((Road) roads.get(i)).getLine(LineType.SWSIDE), Constants.WHITEPAINT);
 		}
+		
+		rasteriser.rasterise(roadMarkingMap, roadMarkingMapResolution, Constants.NOPAINT);
+
+		// TODO - in the future, we may want to suspend line drawing through junctions 
 	}
 	
 	/**
@@ -789,11 +1133,24 @@ public class COModel extends SimState
 	 * @return boolean (true if the supplied location lies on a road, false otherwise)
 	 */
 	public boolean roadAtPoint(Double2D coord, Bag roads)
+	{
+		return roadAtPoint(coord.x, coord.y, roads);
+	}
+	
+	/**
+	 * Method to check whether the supplied location overlaps with a road, without needing a Double2D to be 
+	 * allocated for the location (used by the sensor sweeps, which test many points on every step).
+	 * @param x (double - x coordinate of location to check for overlap with road)
+	 * @param y (double - y coordinate of location to check for overlap with road)
+	 * @param roads (Bag - of roads to check for overlap with supplied coordinate)
+	 * @return boolean (true if the supplied location lies on a road, false otherwise)
+	 */
+	public boolean roadAtPoint(double x, double y, Bag roads)
 	{
 		// Loop through all supplied roads checking for overlap
 		for (int i = 0; i < roads.size(); i++)
 		{
-			if (((Road) (roads.get(i))).inShape(coord))
+			if (((Road) (roads.get(i))).inShape(x, y))
 			{
 				return true;
 			}
@@ -803,6 +1160,140 @@ public class COModel extends SimState
 		return false;
 	}
 
+	/**
+	 * Return the graph of the road network, which is built by COModelBuilder as the junctions and roads are
+	 * added to the map, and cleared by reset().
+	 * @return RoadNetwork (graph of the junctions and roads on the map)
+	 */
+	public RoadNetwork getRoadNetwork()
+	{
+		return roadNetwork;
+	}
+	
+	/**
+	 * Check that the road network contains all of the junctions and roads on the map, i.e. that they have all
+	 * been added by COModelBuilder, before it is used to measure the map.
+	 */
+	private void checkRoadNetwork()
+	{
+		if (roadNetwork.getNoJunctions() != junctions.size() || roadNetwork.getNoRoads() != roads.size()) {
+			throw new RuntimeException("COModel: the road network has " + roadNetwork.getNoJunctions() + " junctions and " + 
+					roadNetwork.getNoRoads() + " roads, but the map has " + junctions.size() + " and " + roads.size() + ".");
+		}
+	}
+
+	/**
+	 * Return the spatial index of the roads on the map, (re)building it if the roads have changed
+	 * since it was last built.  Roads are only ever added to the map, or cleared by reset(), so the
+	 * number of roads is enough to tell whether the index is up to date.
+	 * @return RoadIndex (index of the roads on the map)
+	 */
+	public RoadIndex getRoadIndex()
+	{
+		if (roadIndex == null || roadIndex.getNoRoads() != roads.size())
+		{
+			roadIndex = new RoadIndex(roads, xDouble, yDouble);
+		}
+		
+		return roadIndex;
+	}
+	
+	/**
+	 * Return the spatial index of the junctions on the map, adding any junctions which have been added to the
+	 * map since it was last used.  Junctions are only ever added to the end of the junctions Bag, or cleared by
+	 * reset(), so the number of junctions is enough to tell whether the index is up to date (COModelBuilder
+	 * queries the junctions while it is adding them).
+	 * @return JunctionIndex (index of the junctions on the map)
+	 */
+	public JunctionIndex getJunctionIndex()
+	{
+		if (junctionIndex == null || junctionIndex.getNoJunctions() > junctions.size())
+		{
+			junctionIndex = new JunctionIndex(xDouble, yDouble);
+		}
+		
+		while (junctionIndex.getNoJunctions() < junctions.size())
+		{
+			junctionIndex.add((Junction) junctions.get(junctionIndex.getNoJunctions()));
+		}
+		
+		return junctionIndex;
+	}
+	
+	/**
+	 * Return the spatial index of the DumbCars, (re)building it if cars have been added since it was
+	 * last built.  Cars are otherwise only added to the Bag, or cleared by reset() (retireDumbCar discards
+	 * the index when it removes a car), so the number of cars is enough to tell whether the index is up to
+	 * date; the index tracks the cars as they move.
+	 * @return VehicleIndex (index of the DumbCars)
+	 */
+	public VehicleIndex getCarIndex()
+	{
+		if (carIndex == null || carIndex.getNoVehicles() != cars.size())
+		{
+			carIndex = new VehicleIndex(cars, xDouble, yDouble);
+		}
+		
+		return carIndex;
+	}
+	
+	/**
+	 * Build any of the structures used by the DumbCars to sense the simulation which are otherwise built on
+	 * demand, so that the DumbCarStepper can then sense with several threads without them being built
+	 * by more than one thread at once (see DumbCar.sense).
+	 */
+	public void prepareForParallelSensing()
+	{
+		getRoadSurfacesOnMap();
+		getRoadIndex(); // Used by the LocationTracker of each DumbCar
+		getCarIndex();
+	}
+	
+	/**
+	 * Return the surface of each road, constrained to the area of the map, (re)building them if roads have been
+	 * added since they were last built.  The road network (the union of the road surfaces within the map) is the
+	 * union of these rectangles, so a Shape overlaps the road network if it overlaps any of them, and this can be
+	 * tested without building an Area for the whole network (see Car.onRoad).  The rectangles are shared, so
+	 * callers must not modify them.
+	 * @return Rectangle2D.Double[] (the road surfaces within the map, in the order of the roads Bag)
+	 */
+	public Rectangle2D.Double[] getRoadSurfacesOnMap()
+	{
+		if (roadSurfacesOnMap == null || roadSurfacesOnMap.length != roads.size())
+		{
+			Rectangle2D.Double mapRect = new Rectangle2D.Double(0, 0, Constants.WorldXVal, Constants.WorldYVal);
+			Rectangle2D.Double[] surfaces = new Rectangle2D.Double[roads.size()];
+			
+			// A road which lies outside of the map is left as an empty rectangle, which overlaps nothing
+			for (int i = 0; i < roads.size(); i++)
+			{
+				Rectangle2D.Double surface = ((Road) roads.get(i)).getSurface();
+				surfaces[i] = new Rectangle2D.Double();
+				
+				if (surface.intersects(mapRect) == true) {
+					Rectangle2D.intersect(surface, mapRect, surfaces[i]);
+				}
+			}
+			
+			roadSurfacesOnMap = surfaces;
+		}
+		
+		return roadSurfacesOnMap;
+	}
+	
+	/**
+	 * Method to return the lane frame (road id, distance along the road, offset from the centre line
+	 * and lane) of a coordinate.
+	 * NOTE: it would be a cheat for the UGV to use this method, it is intended for map construction,
+	 * collision detection and logging.
+	 * @param coord (Double2D - coordinates of location where we want the lane frame)
+	 * @return LaneFrame (lane frame at the location, or null if the location is not on a road)
+	 */
+	public LaneFrame getLaneFrameAtPoint(Double2D coord)
+	{
+		return getRoadIndex().getLaneFrame(coord);
+	}
+	
 	/**
 	 * Method to return the id number of the road a coordinate is located on 
 	 * NOTE: it would be a cheat for the UGV to use this method, however it is only used
@@ -814,6 +1305,13 @@ public class COModel extends SimState
 	 */
 	public int getRoadIdAtPoint(Double2D coord, Bag roads)
 	{
+		// Use the index if we are searching all of the roads on the map
+		if (roads == this.roads)
+		{
+			Road road = getRoadIndex().getRoadAtPoint(coord);
+			return (road == null ? -1 : road.getID());
+		}
+		
 		// Loop through all the supplied roads checking for overlap
 		for (int i = 0; i < roads.size(); i++)
 		{
@@ -837,6 +1335,13 @@ public class COModel extends SimState
 	 */
 	public int getLaneDirAtPoint(Double2D coord, Bag roads)
 	{
+		// Use the index if we are searching all of the roads on the map
+		if (roads == this.roads)
+		{
+			Road road = getRoadIndex().getRoadAtPoint(coord);
+			return (road == null ? -1 : road.getLane(coord));
+		}
+		
 		for (int i = 0; i < roads.size(); i++)
 		{
 			// Loop through all the supplied roads checking for overlap
@@ -948,8 +1453,8 @@ public class COModel extends SimState
 		// road markings and use this to choose a vehicle location that is roadWidth/4 away from the intersection
 		Line2D.Double xLine = new Line2D.Double(x-Road.roadWidth, y, x+Road.roadWidth, y);
 		Line2D.Double yLine = new Line2D.Double(x, y-Road.roadWidth, x, y+Road.roadWidth);
-		Line2D.Double lineNE = new Line2D.Double();
-		Line2D.Double lineSW = new Line2D.Double();
+		Line2D.Double lineNE;
+		Line2D.Double lineSW;
 		
 		Double2D nearsideIntersect;
 		Double2D offsideIntersect;
@@ -957,7 +1462,7 @@ public class COModel extends SimState
 		double offsideBearing = 400;
 		boolean found = false;
 		
-		Double2D nearestIntersect = new Double2D(0,0);
+		Double2D nearestIntersect = NO_INTERSECT;
 		double nearestStartBearing = 400; // NOTE - This is an invalid measure, so we can test for it later
 		
 		// Allow for a small offset on either side of the 'thin lines' to allow for the assumed
@@ -979,12 +1484,12 @@ public class COModel extends SimState
 		for (int i = 0; i < roads.size(); i++)
 		{
 			// reset nearestIntersect params
-			nearsideIntersect = new Double2D(0,0);
+			nearsideIntersect = NO_INTERSECT;
 			nearsideBearing = 400;
 			found = false;
 			
 			//check the NESIDE lane on this road against the xLine, and the yLine		
-			lineNE = ((Road) (roads.get(i))).getThinLine(LineType.NESIDE);
+			lineNE = ((Road) (roads.get(i))).getSharedThinLine(LineType.NESIDE);
 			if (lineNE.intersectsLine(xLine)) {
 				// As we know they intersect, and we know xLine is the horizontal line, that gives 
 				// us the y, and therefore the other line provides the x.  			
@@ -998,11 +1503,11 @@ public class COModel extends SimState
 			}
 						
 			// reset offsideIntersect params
-			offsideIntersect = new Double2D(0,0);
+			offsideIntersect = NO_INTERSECT;
 			offsideBearing = 400;
 			
 			// check the SWSIDE lane on this road against the xLine, and the yLine
-			lineSW = ((Road) (roads.get(i))).getThinLine(LineType.SWSIDE);
+			lineSW = ((Road) (roads.get(i))).getSharedThinLine(LineType.SWSIDE);
 			if (lineSW.intersectsLine(xLine)) {
 				// As we know they intersect, and we know xLine is the horizontal line, that gives 
 				// us the y, and therefore the other line provides the x.  			
@@ -1042,12 +1547,12 @@ public class COModel extends SimState
 				if (found == true)
 				{
 					if ((nearsideIntersect.distance(x,y) < nearestIntersect.distance(x,y) && !(nearsideIntersect.x == 0 && nearsideIntersect.y == 0)) || (nearestIntersect.x == 0 && nearestIntersect.y == 0)) {
-						nearestIntersect = new Double2D(nearsideIntersect.x, nearsideIntersect.y);
+						nearestIntersect = nearsideIntersect; // Double2D is immutable, so can be shared
 						nearestStartBearing = nearsideBearing; // overwrite with matching value
 					}
 
 					if ((offsideIntersect.distance(x,y) < nearestIntersect.distance(x,y) && !(offsideIntersect.x == 0 && offsideIntersect.y == 0)) || (nearestIntersect.x == 0 && nearestIntersect.y == 0)) {
-						nearestIntersect = new Double2D(offsideIntersect.x, offsideIntersect.y);
+						nearestIntersect = offsideIntersect;
 						nearestStartBearing = offsideBearing; // overwrite with matching value
 					}
 					
@@ -1181,6 +1686,12 @@ public class COModel extends SimState
 	 */
 	public int junctionAtPoint(Double2D coord, Bag junctions)
 	{
+		// The junctions on the map are found with the spatial index (here, and in the methods below), but any
+		// other Bag of junctions is searched in full
+		if (junctions == this.junctions) {
+			return getJunctionIndex().getJunctionAtPoint(coord);
+		}
+		
 		int jctID = 0;
 		
 		for (int i = 0; i < junctions.size(); i++)
@@ -1207,14 +1718,19 @@ public class COModel extends SimState
 	 * Method to check for junctions which overlap with a supplied Area.
 	 * If no junction is found, return 0, if one junction is found, return the jctId of the junction 
 	 * where the overlap is found, or return -1 if the Area overlaps with multiple junctions. 
-	 * @param inJunct (Area - the junction (or Area) which we want to check for intersection with junctions)
+	 * @param inJunct (Shape - the junction (or vehicle shape) which we want to check for intersection with junctions)
 	 * @param junctions (Bag - the collection of junctions to test against)
 	 * @return int (0 = no junction; -1 = multiple junctions; n = ID of junction)
 	 */
-	public int junctionAtArea(Area inJunct, Bag junctions)
+	public int junctionAtArea(Shape inJunct, Bag junctions)
 	{
+		if (junctions == this.junctions) {
+			return getJunctionIndex().getJunctionAtArea(inJunct);
+		}
+		
 		Shape tempJctShape;
 		Double2D tempJctLoc;
+		Area inArea = new Area(inJunct);
 		int retVal = 0; // Default no overlap
 		
 		for (int i = 0; i < junctions.size(); i++)
@@ -1223,7 +1739,7 @@ public class COModel extends SimState
 			tempJctLoc = ((Junction) (junctions.get(i))).location;
 			tempJctShape = new Rectangle2D.Double((tempJctLoc.x-(Road.roadWidth/2)), (tempJctLoc.y-(Road.roadWidth/2)), Road.roadWidth, Road.roadWidth);
 			Area jctArea = new Area (tempJctShape);
-			jctArea.intersect(inJunct);
+			jctArea.intersect(inArea);
 			if (!jctArea.isEmpty()) {
 				if (retVal == 0) {				
 					retVal = ((Junction) (junctions.get(i))).getID();
@@ -1246,6 +1762,8 @@ public class COModel extends SimState
 	{
 		Junction tempJunction;
 		
+		profiler.enter(StepProfiler.Phase.JUNCTION);
+		
 		for (int i = 0; i < junctions.size(); i++)
 		{
 			// Search for the supplied junction in the bag, and un-occupy it
@@ -1256,6 +1774,8 @@ public class COModel extends SimState
 				break; // We don't need to keep searching
 			}
 		}
+		
+		profiler.exit(StepProfiler.Phase.JUNCTION);
 	}	
 	
 	/**
@@ -1266,6 +1786,10 @@ public class COModel extends SimState
 	 */
 	public int junctionTypeAtPoint(Double2D coord, Bag junctions)
 	{
+		if (junctions == this.junctions) {
+			return getJunctionIndex().getJunctionTypeAtPoint(coord);
+		}
+		
 		for (int i = 0; i < junctions.size(); i++)
 		{
 			// for all of the junctions check if the provided point is in it
@@ -1286,6 +1810,10 @@ public class COModel extends SimState
 	 */
 	public boolean junctionAppAtPoint(Double2D coord, Bag junctions)
 	{
+		if (junctions == this.junctions) {
+			return getJunctionIndex().inApproach(coord);
+		}
+		
 		for (int i = 0; i < junctions.size(); i++)
 		{
 			// for all of the junctions check if the provided point is in their approach
@@ -1307,6 +1835,10 @@ public class COModel extends SimState
 	 */
 	public boolean junctionExitAtPoint(Double2D coord, Bag junctions)
 	{
+		if (junctions == this.junctions) {
+			return getJunctionIndex().inExit(coord);
+		}
+		
 		for (int i = 0; i < junctions.size(); i++)
 		{
 			// for all of the junctions check if the provided point is in their exit
@@ -1320,25 +1852,29 @@ public class COModel extends SimState
 		return false;
 	}
 	
+	/**
+	 * This method is called by Car.deactivate so that the number of active UGVs on the schedule can be kept
+	 * up to date without looping through all of the scheduled vehicles.
+	 * @param car (Car - the vehicle which has just become inactive)
+	 */
+	public void vehicleDeactivated(Car car)
+	{
+		if (car.getType() == Constants.TUGV && toSchedule.contains(car) == true) {
+			noActiveUGVs--;
+		}
+	}
+	
 	/**
 	 * This method kills the simulation if there are no longer any active UGVs on the 
 	 * schedule.  This is currently called at the end of the DumbCar step method and the 
 	 * end of the UGV step method (and also once in the middle of the DC step).  It is 
 	 * probably only necessary to call it once in UGV.step though, as this is the only
-	 * routine that can alter whether the UGV is active.  
+	 * routine that can alter whether the UGV is active.  The number of active UGVs is
+	 * maintained by scheduleEntities and vehicleDeactivated.
 	 */
     public void dealWithTermination()
 	{
-    	int noActiveAgents =0;
-    	for(Object o: this.toSchedule)
-    	{
-    		if(((Car)o).isActive  && ((Car)o).getType() == Constants.TUGV)
-    		{
-    			noActiveAgents++;
-    		}
-    	}
-    	
-		if(noActiveAgents < 1)
+		if(noActiveUGVs < 1)
 		{
 			this.schedule.clear();
 			this.kill();
@@ -1348,7 +1884,7 @@ public class COModel extends SimState
     /** 
      * This method is called by AccidentDetector to record the location at which a vehicle
      * has left the road (in case we want to visualise it).  It does this by adding a new
-     * failure object to the environment at the supplied location.
+     * failure object to the markers at the supplied location (see MarkerStore).
      * @param location (Double2D - location at which the off-road event occurred)
      */
     public void recordOffRoad(Double2D location)
@@ -1356,13 +1892,13 @@ public class COModel extends SimState
     	int fID = this.getNewID();
     	Failure fp = new Failure(fID, Constants.TFAILURE);
 		fp.setLocation(location);
-		environment.setObjectLocation(fp, location);	
+		addFailureMarker(fp, location);	
     }
 
     /** 
      * This method is called by AccidentDetector to record the location where a vehicle has crossed
      * a line e.g. centre or lane edge markings.  It does this by adding a new failure
-     * object to the environment at the supplied location.
+     * object to the markers at the supplied location (see MarkerStore).
      * @param location (Double2D - the location at which the line was crossed)
      */
     public void recordCrossLine(Double2D location)
@@ -1370,13 +1906,13 @@ public class COModel extends SimState
     	int fID = this.getNewID();
     	Failure fp = new Failure(fID, Constants.TFAILURE);
 		fp.setLocation(location);
-		environment.setObjectLocation(fp, location);	
+		addFailureMarker(fp, location);	
     }
     
     /** 
      * This method is called by AccidentDetector to record the location where a vehicle has crashed 
-     * with another vehicle.  It does this by adding a new crash object to the environment at
-     * the supplied location.  
+     * with another vehicle.  It does this by adding a new crash object to the markers at
+     * the supplied location (see MarkerStore).  
      * @param location (Double2D - the location where the crash occurred)
      */
     public void recordCrash(Double2D location)
@@ -1384,7 +1920,7 @@ public class COModel extends SimState
     	int fID = this.getNewID();
     	Crash fp = new Crash(fID, Constants.TFAILURE);
 		fp.setLocation(location);
-		environment.setObjectLocation(fp, location);	
+		addFailureMarker(fp, location);	
     }
     
     /** 
@@ -1433,14 +1969,11 @@ public class COModel extends SimState
     		int targetId = ((UGV)ugvs.get(0)).getTargetID();
     		Double2D targetLoc = new Double2D(-1,-1);
 
-    		// Find the target from the bag of all entities and store location
-    		for(int i = 0; i < allEntities.size(); i++)
+    		// Find the target from the registry of all entities and store location
+    		e = getModelEntities().get(targetId);
+    		if (e != null)
     		{
-    			e = (Entity) allEntities.get(i);			
-    			if (e.getID() == targetId)
-    			{
-    				targetLoc = e.getLocation();
-    			}
+    			targetLoc = e.getLocation();
     		}
 
     		if (targetLoc.x != -1) {
@@ -1468,14 +2001,11 @@ public class COModel extends SimState
     		int targetId = ((UGV)ugvs.get(0)).getTargetID();
     		Double2D targetLoc = new Double2D(-1,-1);
 
-    		// Find the target from the bag of all entities and store location
-    		for(int i = 0; i < allEntities.size(); i++)
+    		// Find the target from the registry of all entities and store location
+    		e = getModelEntities().get(targetId);
+    		if (e != null)
     		{
-    			e = (Entity) allEntities.get(i);			
-    			if (e.getID() == targetId)
-    			{
-    				targetLoc = e.getLocation();
-    			}
+    			targetLoc = e.getLocation();
     		}
 
     		double tempDist = 0;
@@ -1509,14 +2039,11 @@ public class COModel extends SimState
     		int targetId = ((UGV)ugvs.get(0)).getTargetID();
     		Double2D targetLoc = new Double2D(-1,-1);
 
-    		// Find the target from the bag of all entities and store location
-    		for(int i = 0; i < allEntities.size(); i++)
+    		// Find the target from the registry of all entities and store location
+    		e = getModelEntities().get(targetId);
+    		if (e != null)
     		{
-    			e = (Entity) allEntities.get(i);			
-    			if (e.getID() == targetId)
-    			{
-    				targetLoc = e.getLocation();
-    			}
+    			targetLoc = e.getLocation();
     		}
 
     		if (targetLoc.x != -1) {
@@ -1564,14 +2091,11 @@ public class COModel extends SimState
     		int targetId = ((UGV)ugvs.get(0)).getTargetID();
     		Double2D targetLoc = new Double2D(-1,-1);
 
-    		// Find the target from the bag of all entities and store location
-    		for(int i = 0; i < allEntities.size(); i++)
+    		// Find the target from the registry of all entities and store location
+    		e = getModelEntities().get(targetId);
+    		if (e != null)
     		{
-    			e = (Entity) allEntities.get(i);			
-    			if (e.getID() == targetId)
-    			{
-    				targetLoc = e.getLocation();
-    			}
+    			targetLoc = e.getLocation();
     		}
 
     		if (targetLoc.x != -1) {
@@ -1648,14 +2172,11 @@ public class COModel extends SimState
 			double noRoadHits = 0;
 			double noNonRoadHits = 0;
 
-			// Find the target from the bag of all entities and store location
-			for(int i = 0; i < allEntities.size(); i++)
+			// Find the target from the registry of all entities and store location
+			e = getModelEntities().get(targetId);
+			if (e != null)
 			{
-				e = (Entity) allEntities.get(i);			
-				if (e.getID() == targetId)
-				{
-					targetLoc = e.getLocation();
-				}
+				targetLoc = e.getLocation();
 			}
 
 			if (targetLoc.x != -1) {
@@ -1669,10 +2190,10 @@ public class COModel extends SimState
 				sumForces.addIn(UGVLoc);
 
 				while (sumForces.distance(targetLoc) > 1) {
-					sumForces.addIn(new Double2D(moveH, moveV));
+					sumForces.addIn(moveH, moveV);
 
 					// Test the tempLoc against the Road network
-					if (roadAtPoint(new Double2D(sumForces), roads) == true) {
+					if (roadAtPoint(sumForces.x, sumForces.y, roads) == true) {
 						noRoadHits++;// Add to count of road hits
 					} else {
 						noNonRoadHits++;// Add to count of non-road hits
@@ -1693,35 +2214,80 @@ public class COModel extends SimState
 		return -1;
     }
         
+   /**
+    * This method is called when an existing DumbCar in the network is terminated due to leaving the
+    * road surface.  The car is taken off the schedule and removed from the simulation (the order of the
+    * remaining cars is preserved), and is then kept in a pool so that it can be reused by addNewDumbCar.
+    * In compatible mode (see setCompatibleMode), the car is only removed from the environment, as in earlier
+    * versions: it stays on the schedule and in the Bags, where it is stepped without doing anything (as it is
+    * inactive), and is still seen where it left the road by DumbCar.findImminentCrash.  The schedule then
+    * shuffles the same number of steppables, and so uses the same random numbers, as in earlier versions.
+    * @param theCar (DumbCar - the car which has left the road)
+    */
+    public void retireDumbCar(DumbCar theCar)
+    {
+    	removeFromEnvironment(theCar);
+    	
+    	if (compatibleMode == true) {
+    		return;
+    	}
+    	
+    	theCar.stop();
+    	cars.removeNonDestructively(theCar);
+    	toSchedule.removeNonDestructively(theCar);
+    	allEntities.removeNonDestructively(theCar);
+    	
+    	// The sizes of these Bags may not change before the next car is added, so make sure the structures
+    	// built from them are rebuilt
+    	carIndex = null;
+    	modelEntities = null;
+    	
+    	carPool.add(theCar);
+    }
+    
    /**
     * This method is to be called when an existing dumbCar in the network is terminated
     * due to leaving the road surface.  The new car should be added at a randomly chosen entrance to the 
-    * network i.e. a dead-end.
+    * network i.e. a dead-end.  A car from the pool of retired cars is reused if one is available (see
+    * retireDumbCar).
     */
     public void addNewDumbCar()
     {
-    	// Choose a junction at random and retrieve the entry location opposite an exit from the junction 
+    	// Choose a junction at random, and loop until we get a junction at the end of the network (will only 
+    	// have one exit).  The dead ends and their entry locations are stored in the road network.  NOTE: the
+    	// junctions are still drawn from all of the junctions, rather than from roadNetwork.getDeadEnd, so that
+    	// the same random numbers are used, and the same runs are produced for the same seed.
     	int j = (int) (random.nextDouble() * junctions.size());
-    	Double2D entryLoc = ((Junction) junctions.get(j)).getDeadEndEntry();
     	
-    	// Loop until we get a junction at the end of the network (will only have one exit)
-    	while (((Junction) junctions.get(j)).isDeadEnd() == false || entryLoc.x == -1)
+    	while (roadNetwork.isDeadEnd(j) == false)
     	{
     		j = (int) (random.nextDouble() * junctions.size());
-    		entryLoc = ((Junction) junctions.get(j)).getDeadEndEntry();
     	}
     	
+    	// Retrieve the entry location opposite the exit from the junction 
+    	Double2D entryLoc = roadNetwork.getDeadEndEntry(j);
+    	
     	// Now add a car at that location
     	initialInfo startInfo = snapToLane(entryLoc.x, entryLoc.y);
 
-		DumbCar theCar = new DumbCar(getNewID(), carStats, startInfo.startBearing);
+		DumbCar theCar;
+		if (carPool.size() > 0) {
+			theCar = (DumbCar) carPool.remove(carPool.size() - 1);
+			theCar.reinitialise(getNewID(), carStats, startInfo.startBearing);
+		} else {
+			theCar = new DumbCar(getNewID(), carStats, startInfo.startBearing);
+		}
 		cars.add(theCar);
 		theCar.setLocation(startInfo.startLoc); 
 		theCar.isSchedulable = true;
-		environment.setObjectLocation(theCar, startInfo.startLoc);
+		addToEnvironment(theCar, startInfo.startLoc);
 		allEntities.add(theCar);
 		toSchedule.add(theCar); 
-		schedule.scheduleRepeating((Entity) theCar); // Put the car on the schedule so it gets stepped!
+		
+		// Put the car on the schedule so it gets stepped! (the DumbCarStepper will find it in cars otherwise)
+		if (twoPhaseCarUpdate == false) {
+			theCar.setStopper(schedule.scheduleRepeating(theCar));
+		}
     }
 
    /**
@@ -1766,96 +2332,32 @@ public class COModel extends SimState
 	public String getJunctionSep() {
 		
 		int[] sepCount = new int[8];
-		Double2D startJunctionLoc;
-		Double2D endJunctionLoc;
-		Double2D tempJctLoc;
-		Road tempRoad;
-		boolean middleJct;
 		double sepDist;
 		
-		// Loop through all the junctions
-		for (int j = 0; j < junctions.size(); j++)
+		checkRoadNetwork();
+		
+		// Each edge of the road network joins a pair of adjacent junctions on the same road, so
+		// just store the length of each edge in the appropriate 'bin'
+		for (int e = 0; e < roadNetwork.getNoEdges(); e++)
 		{
-			startJunctionLoc = ((Junction) junctions.get(j)).getLocation();
+			sepDist = roadNetwork.getEdge(e).length;
 			
-			// Test each junction against all the other junctions that are
-			// of a higher index (because we don't want to count any twice)
-			for(int k = j+1; k < junctions.size(); k++)
-			{
-				endJunctionLoc = ((Junction) junctions.get(k)).getLocation();
-				
-				// Loop through all the roads and see if there is a road on which 
-				// both the junctions appear
-				for (int r = 0; r < roads.size(); r++)
-				{
-					tempRoad = (Road) roads.get(r);
-					
-					if (tempRoad.inShape(startJunctionLoc) && tempRoad.inShape(endJunctionLoc))
-					{
-						// The two junctions are on the same road, now we need to know whether there
-						// are any intermediate junctions
-						middleJct = false;
-						
-						for (int x = 0; x < junctions.size(); x++)
-						{
-							if (x != j && x != k)
-							{
-								tempJctLoc = ((Junction) junctions.get(x)).getLocation();
-								
-								if (tempRoad.inShape(tempJctLoc))
-								{
-									// Check to see if the junction is actually between the 
-									// two other junctions
-									// TODO - If we want to move to non-grid roads then this method
-									// will have to be updated
-									if (startJunctionLoc.x == endJunctionLoc.x)
-									{
-										// N/S so check the y values
-										if ((startJunctionLoc.y > tempJctLoc.y && endJunctionLoc.y < tempJctLoc.y) || 
-										     (startJunctionLoc.y < tempJctLoc.y && endJunctionLoc.y > tempJctLoc.y))
-										{
-											// tempJctLoc is in the middle
-											middleJct = true;
-										}
-									} else {
-										// E/W so check the x values
-										if ((startJunctionLoc.x > tempJctLoc.x && endJunctionLoc.x < tempJctLoc.x) || 
-											     (startJunctionLoc.x < tempJctLoc.x && endJunctionLoc.x > tempJctLoc.x))
-										{
-											// tempJctLoc is in the middle
-											middleJct = true;
-										}
-									}
-								}
-							}
-						}
-						
-						if (middleJct == false)
-						{
-							// We didn't find a junction in the middle, so calculate the distance between the
-							// two points and store it in the appropriate 'bin'
-							sepDist = startJunctionLoc.distance(endJunctionLoc);
-							
-							if (sepDist < 3) {
-								sepCount[0]++;
-							} else if (sepDist < 6) {
-								sepCount[1]++;
-							} else if (sepDist < 12) {
-								sepCount[2]++;
-							} else if (sepDist < 23) {
-								sepCount[3]++;
-							} else if (sepDist < 46) {
-								sepCount[4]++;
-							} else if (sepDist < 100) {
-								sepCount[5]++;
-							} else if (sepDist < 150) {
-								sepCount[6]++;
-							} else {
-								sepCount[7]++;
-							}
-						}
-					}
-				}
+			if (sepDist < 3) {
+				sepCount[0]++;
+			} else if (sepDist < 6) {
+				sepCount[1]++;
+			} else if (sepDist < 12) {
+				sepCount[2]++;
+			} else if (sepDist < 23) {
+				sepCount[3]++;
+			} else if (sepDist < 46) {
+				sepCount[4]++;
+			} else if (sepDist < 100) {
+				sepCount[5]++;
+			} else if (sepDist < 150) {
+				sepCount[6]++;
+			} else {
+				sepCount[7]++;
 			}
 		}
 		
@@ -1993,7 +2495,9 @@ public class COModel extends SimState
 		targetInfo retVal = new targetInfo();
 		Double2D tempJunctionLoc;
 		Road currentRoad = null;
-		boolean roadFound = false;
+		int roadIdx = -1;
+		
+		checkRoadNetwork();
 		
 		// Find out which road the target is on - it can only be on one road as it can't be added in a 
 		// junction.
@@ -2003,13 +2507,13 @@ public class COModel extends SimState
 			
 			if (currentRoad.inShape(targetLoc) == true)
 			{
-				roadFound = true;
+				roadIdx = r;
 				break; // so that currentRoad will still contain the right road
 			}
 		}
 		
 		// Just check that we actually found the road
-		if (roadFound == false)
+		if (roadIdx == -1)
 		{
 			return retVal; // both values are still set to zero (not possible), so can ignore such return values
 		}
@@ -2018,44 +2522,42 @@ public class COModel extends SimState
 		double minusDistance = Constants.WorldXVal; // the distance to the junction that is in the negative direction
 		double tempDistance;
 		
-		// Loop through all the junctions and work out which junctions are on the same road as the target
-		for (int j = 0; j < junctions.size(); j++)
+		// Loop through the junctions which the road network has on the same road as the target
+		int[] roadJunctions = roadNetwork.getJunctionsOnRoad(roadIdx);
+		for (int j = 0; j < roadJunctions.length; j++)
 		{
-			tempJunctionLoc = ((Junction) junctions.get(j)).getLocation();
+			tempJunctionLoc = roadNetwork.getJunction(roadJunctions[j]).getLocation();
 			tempDistance = Math.abs(tempJunctionLoc.distance(targetLoc));
 			
-			if (currentRoad.inShape(tempJunctionLoc) == true)
+			// Depending on the orientation of the road, work out which
+			// side of the Target the junction is on (increasing/decreasing x/y)
+			if (currentRoad.getIsNS() == true)
 			{
-				// Depending on the orientation of the road, work out which
-				// side of the Target the junction is on (increasing/decreasing x/y)
-				if (currentRoad.getIsNS() == true)
+				// is it in the positive direction
+				if (tempJunctionLoc.y - targetLoc.y > 0)
 				{
-					// is it in the positive direction
-					if (tempJunctionLoc.y - targetLoc.y > 0)
+					if (tempDistance < plusDistance)
 					{
-						if (tempDistance < plusDistance)
-						{
-							plusDistance = tempDistance;
-						}
-					} else {// it is in the negative direction
-						if (tempDistance < minusDistance)
-						{
-							minusDistance = tempDistance;
-						}
+						plusDistance = tempDistance;
 					}
-				} else {
-					// is it in the positive direction
-					if (tempJunctionLoc.x - targetLoc.x > 0)
+				} else {// it is in the negative direction
+					if (tempDistance < minusDistance)
+					{
+						minusDistance = tempDistance;
+					}
+				}
+			} else {
+				// is it in the positive direction
+				if (tempJunctionLoc.x - targetLoc.x > 0)
+				{
+					if (tempDistance < plusDistance)
+					{
+						plusDistance = tempDistance;
+					}
+				} else {// it is in the negative direction
+					if (tempDistance < minusDistance)
 					{
-						if (tempDistance < plusDistance)
-						{
-							plusDistance = tempDistance;
-						}
-					} else {// it is in the negative direction
-						if (tempDistance < minusDistance)
-						{
-							minusDistance = tempDistance;
-						}
+						minusDistance = tempDistance;
 					}
 				}
 			}
@@ -20,6 +20,14 @@ public class COModelBuilder
 {	
 	public  COModel sim;
 	
+	// Number of candidate locations tried by each of the rejection loops during the last call to generateSimulation
+	// (see simcontroller.MapGenerationBenchmark)
+	private long noJunctionTries = 0;
+	private long noObstacleTries = 0;
+	private long noTargetTries = 0;
+	private long noUGVTries = 0;
+	private long noCarTries = 0;
+	
 	/**
 	 * Constructor - initialise the sim object to be the supplied COModel parameter
 	 * @param s (COModel - the COModel object to use for the simulation)
@@ -57,6 +65,15 @@ public class COModelBuilder
 		// Now create the new random generator, it can be local as we only use it here to generate the map
 		MersenneTwisterFast mapGenRandom = new MersenneTwisterFast(sim.getExternalSeed());
 		
+		SimulationEvents.MapGeneration event = new SimulationEvents.MapGeneration();
+		event.begin();
+		
+		noJunctionTries = 0;
+		noObstacleTries = 0;
+		noTargetTries = 0;
+		noUGVTries = 0;
+		noCarTries = 0;
+		
 		sim.infoLog.addHeader(sim); // Add header to info log file
 
 		// ****  Add the FIRST ROAD  ****
@@ -133,6 +150,7 @@ public class COModelBuilder
 		}
 		
 		sim.roads.add(road); // Add this (first) road to the collection
+		sim.getRoadNetwork().addRoad(road);
 				
 		// ****  Add the remaining JUNCTIONS/ROADS  ****
 		
@@ -182,6 +200,7 @@ public class COModelBuilder
 					cy = Math.min(cRoad.y1,  cRoad.y2);
 					
 					noSmallIterations += 1; // increment counter so we don't get stuck in an infinite loop
+					noJunctionTries++;
 					
 					// Check for overlapping junctions by creating a rectangle area to represent the proposed
 					// junction, and in the do-while loop force another iteration if the junction overlaps
@@ -304,6 +323,12 @@ public class COModelBuilder
 				if (!sim.roadAtPoint(nRoad.getSurface(), sim.roads, r) && noSmallIterations < 20) {
 					sim.junctions.add(nJct);
 					sim.roads.add(nRoad);
+					
+					// The new junction is on the chosen road, and at the start of the new road
+					RoadNetwork network = sim.getRoadNetwork();
+					int jIdx = network.addJunction(nJct);
+					network.addJunctionToRoad(jIdx, r);
+					network.addJunctionToRoad(jIdx, network.addRoad(nRoad));
 				} else if (noSmallIterations >= 20){
 					sim.infoLog.addLog("Failure when adding junction: " + i + "; unable to locate intersection on road.");
 				} else {
@@ -355,6 +380,7 @@ public class COModelBuilder
 				y = mapGenRandom.nextDouble() * Constants.WorldYVal;
 				testPt = new Double2D(x,y);
 				noIterations++; 
+				noObstacleTries++;
 			} while ((!sim.roadAtPoint(testPt, sim.roads) || sim.junctionAtPoint(testPt, sim.junctions) != 0 
 					|| sim.junctionAppAtPoint(testPt, sim.junctions) || sim.junctionExitAtPoint(testPt, sim.junctions)
 					|| sim.obstacleNearPoint(testPt, obstacles, sim.roads, sim)) && noIterations < Constants.MAX_ITERATIONS);
@@ -397,6 +423,7 @@ public class COModelBuilder
 		do {
 			x = mapGenRandom.nextDouble() * Constants.WorldXVal;
 			y = mapGenRandom.nextDouble() * Constants.WorldYVal;
+			noTargetTries++;
 		} while (!sim.roadAtPoint(new Double2D(x,y), sim.roads) || sim.junctionAtPoint(new Double2D(x,y), sim.junctions) != 0 || 
 				sim.obstacleAtPoint(new Double2D(x,y), obstacles));
 		t.setLocation(new Double2D(x,y));
@@ -413,6 +440,7 @@ public class COModelBuilder
 		do {
 			x = mapGenRandom.nextDouble() * Constants.WorldXVal;
 			y = mapGenRandom.nextDouble() * Constants.WorldYVal;
+			noUGVTries++;
 		} while (!sim.roadAtPoint(new Double2D(x,y), sim.roads) || sim.junctionAtPoint(new Double2D(x,y),  sim.junctions) != 0 || 
 				sim.obstacleAtPoint(new Double2D(x,y), obstacles));
 		
@@ -444,6 +472,7 @@ public class COModelBuilder
 				x = mapGenRandom.nextDouble() * Constants.WorldXVal;
 				y = mapGenRandom.nextDouble() * Constants.WorldYVal;
 				noIterations++;
+				noCarTries++;
 			} while ((!sim.roadAtPoint(new Double2D(x,y), sim.roads) || sim.junctionAtPoint(new Double2D(x,y),  sim.junctions) != 0 || 
 					sim.obstacleAtPoint(new Double2D(x,y), obstacles) || theUGV.getLocation().distance(new Double2D(x,y)) < 5) && 
 					noIterations < Constants.MAX_ITERATIONS) ; 
@@ -467,6 +496,17 @@ public class COModelBuilder
 		// differ from the number that we attempted to add - from the random number generator)
 		sim.infoLog.addLog("Car obstacles added: " + sim.cars.size() + "/" + noCars + ".");
 		sim.setNoCars(sim.cars.size());
+		
+		if (event.isEnabled() == true)
+		{
+			event.externalSeed = sim.getExternalSeed();
+			event.noJunctions = sim.junctions.size();
+			event.noRoads = sim.roads.size();
+			event.noObstacles = sim.obstacles.size();
+			event.noCars = sim.cars.size();
+			event.noCandidates = noJunctionTries + noObstacleTries + noTargetTries + noUGVTries + noCarTries;
+			event.commit();
+		}
 	}
 			
 	/**
@@ -475,10 +515,20 @@ public class COModelBuilder
 	 */
 	public COModel getSim() {return sim;}
 	
+	// Number of candidate locations tried by the rejection loops during the last call to generateSimulation: for the
+	// junctions on the existing roads, the ParkedCar obstacles, the target, the UGV, and the DumbCars
+	public long getNoJunctionTries() {return noJunctionTries;}
+	public long getNoObstacleTries() {return noObstacleTries;}
+	public long getNoTargetTries() {return noTargetTries;}
+	public long getNoUGVTries() {return noUGVTries;}
+	public long getNoCarTries() {return noCarTries;}
+	
 	/**
 	 * Method to add 'junctions' at the end of each road (where a junction does not already exist
 	 * at that location).  Junctions will be added roadWidth/2 away from the ends of the road so that they 
-	 * will remain within the existing footprint of the road (and therefore the map).
+	 * will remain within the existing footprint of the road (and therefore the map).  The new junctions are 
+	 * added to the road network; the only junction which can already be at the end of a road is the one at 
+	 * the start of a new road, which is already on that road in the network.
 	 */
 	private void addJunctionsAtDeadEnds()
 	{
@@ -498,13 +548,15 @@ public class COModelBuilder
 				{
 					nJct = new Junction(sim.getNewID(), tempRoad.x1, Math.min(tempRoad.y1, tempRoad.y2)+Road.roadWidth/2, 0, 0, tempRoad.getLength(), 0);
 					sim.junctions.add(nJct);
+					sim.getRoadNetwork().addJunctionToRoad(sim.getRoadNetwork().addJunction(nJct), r);
 				}
 				
 				// See whether there is a junction at the bottom end of the road, if not, add one
 				if (sim.junctionAtPoint(new Double2D(tempRoad.x1, Math.max(tempRoad.y1, tempRoad.y2)), sim.junctions) == 0)
 				{
 					nJct = new Junction(sim.getNewID(), tempRoad.x1, Math.max(tempRoad.y1, tempRoad.y2)-Road.roadWidth/2, tempRoad.getLength(), 0, 0, 0);
-					sim.junctions.add(nJct);					
+					sim.junctions.add(nJct);
+					sim.getRoadNetwork().addJunctionToRoad(sim.getRoadNetwork().addJunction(nJct), r);					
 				}				
 				
 			// Otherwise must be E/W
@@ -515,13 +567,15 @@ public class COModelBuilder
 				{
 					nJct = new Junction(sim.getNewID(), Math.min(tempRoad.x1, tempRoad.x2)+Road.roadWidth/2, tempRoad.y1, 0, tempRoad.getLength(), 0, 0);
 					sim.junctions.add(nJct);
+					sim.getRoadNetwork().addJunctionToRoad(sim.getRoadNetwork().addJunction(nJct), r);
 				}
 				
 				// See whether there is a junction at the eastern end of the road, if not, add one
 				if (sim.junctionAtPoint(new Double2D(Math.max(tempRoad.x1, tempRoad.x2), tempRoad.y1), sim.junctions) == 0)
 				{
 					nJct = new Junction(sim.getNewID(), Math.max(tempRoad.x1, tempRoad.x2)-Road.roadWidth/2, tempRoad.y1, 0, 0, 0, tempRoad.getLength());
-					sim.junctions.add(nJct);					
+					sim.junctions.add(nJct);
+					sim.getRoadNetwork().addJunctionToRoad(sim.getRoadNetwork().addJunction(nJct), r);					
 				}				
 			}
 		}
@@ -33,6 +33,7 @@ public class COModelWithUI extends GUIState
 	public Display2D display;
 	public JFrame displayFrame;
 	ContinuousPortrayal2D environmentPortrayal = new ContinuousPortrayal2D();
+	ContinuousPortrayal2D markersPortrayal = new ContinuousPortrayal2D(); // Waypoints and Failures/Crashes, see MarkerStore
 	FastValueGridPortrayal2D obstaclesPortrayal = new FastValueGridPortrayal2D("Obstacle", true);  // immutable
 	FastValueGridPortrayal2D terrainPortrayal = new FastValueGridPortrayal2D("Terrain", true);  // immutable
 	FastValueGridPortrayal2D wallPortrayal = new FastValueGridPortrayal2D("Wall", true);  // immutable
@@ -116,7 +117,7 @@ public class COModelWithUI extends GUIState
 		// over e.g. the Junction Approaches - otherwise vehicles will change colour due to the transparency of the approaches
 		
 		// Roads portrayal
-		roadsPortrayal.setField(simulation.roadMap);
+		roadsPortrayal.setField(simulation.getRoadMap());
 		roadsPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				Constants.DUALTWOWAY,
@@ -125,7 +126,7 @@ public class COModelWithUI extends GUIState
 				));
 
 		// Draw the junction approaches (ordering here not important though)
-		jctApproachPortrayal.setField(simulation.jctApproachMap);
+		jctApproachPortrayal.setField(simulation.getJctApproachMap());
 		jctApproachPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				1,
@@ -134,7 +135,7 @@ public class COModelWithUI extends GUIState
 				));
 		
 		// Draw the junctions
-		junctionsPortrayal.setField(simulation.junctionMap);
+		junctionsPortrayal.setField(simulation.getJunctionMap());
 		junctionsPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				1,
@@ -144,7 +145,7 @@ public class COModelWithUI extends GUIState
 		
 		// Add the road markings (these are on a higher resolution grid) and are
 		// not always visible unless you zoom in.
-		roadMarkingPortrayal.setField(simulation.roadMarkingMap);
+		roadMarkingPortrayal.setField(simulation.getRoadMarkingMap().toIntGrid2D());
 		roadMarkingPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				Constants.WHITERPAINT,
@@ -153,7 +154,7 @@ public class COModelWithUI extends GUIState
 				));
 		
 		// Add the Parked Car obstacles
-		obstaclesPortrayal.setField(simulation.obstacleMap);
+		obstaclesPortrayal.setField(simulation.getObstacleMap());
 		obstaclesPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				1,
@@ -162,7 +163,7 @@ public class COModelWithUI extends GUIState
 				));
         
 		// Add the walls - appears as a boundary around the map
-		wallPortrayal.setField(simulation.wallMap);
+		wallPortrayal.setField(simulation.getWallMap());
 		wallPortrayal.setMap(new sim.util.gui.SimpleColorMap(
 				0,
 				1,
@@ -251,8 +252,8 @@ public class COModelWithUI extends GUIState
 
 		// Portrayal for Waypoints (in order to make them less intrusive in the display)
 		// tell the portrayals what to portray and how to portray them
-		environmentPortrayal.setField( simulation.environment );	
-		environmentPortrayal.setPortrayalForClass(Waypoint.class, (new RectanglePortrayal2D(0.3)
+		markersPortrayal.setField( simulation.getMarkers().getField() );	
+		markersPortrayal.setPortrayalForClass(Waypoint.class, (new RectanglePortrayal2D(0.3)
 		{
 			/**
 			 * Yellow points - very small rectangles
@@ -270,8 +271,8 @@ public class COModelWithUI extends GUIState
 		
 		// Portrayal for Failures
 		// tell the portrayals what to portray and how to portray them
-		environmentPortrayal.setField( simulation.environment );	
-		environmentPortrayal.setPortrayalForClass(Failure.class, new RectanglePortrayal2D(0.75)
+		markersPortrayal.setField( simulation.getMarkers().getField() );	
+		markersPortrayal.setPortrayalForClass(Failure.class, new RectanglePortrayal2D(0.75)
 		{
 			/**
 			 * Black points - small rectangles
@@ -288,8 +289,8 @@ public class COModelWithUI extends GUIState
 
 		// Portrayal for Crashes
 		// tell the portrayals what to portray and how to portray them
-		environmentPortrayal.setField( simulation.environment );	
-		environmentPortrayal.setPortrayalForClass(Crash.class, new RectanglePortrayal2D(1)
+		markersPortrayal.setField( simulation.getMarkers().getField() );	
+		markersPortrayal.setPortrayalForClass(Crash.class, new RectanglePortrayal2D(1)
 		{
 			/**
 			 * Red points - small rectangles
@@ -348,6 +349,7 @@ public class COModelWithUI extends GUIState
 		display.attach(terrainPortrayal,"Terrain");
 		display.attach(obstaclesPortrayal,"Obstacles");	
         display.attach(environmentPortrayal, "Environment" );
+        display.attach(markersPortrayal, "Waypoints and Failures" );
         display.attach(wallPortrayal,"Wall");
         
         // Add road portrayals (in right order)
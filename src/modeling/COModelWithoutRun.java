@@ -26,7 +26,21 @@ public class COModelWithoutRun
 	 */
     public COModelWithoutRun(double percentageFaults, int mapNo, long newInternalSeed) 
     { 
-    	sBuilder = new COModelBuilder(new COModel(newInternalSeed, Constants.WorldXVal, Constants.WorldYVal, false, percentageFaults, mapNo, true));
+    	this(percentageFaults, mapNo, newInternalSeed, true);
+    }
+    
+	/**
+	 * As above, but with the option to run without creating any output files (see COModel constructor).
+	 * @param percentageFaults (double - value of 0..1 (incl) to set % of faults to be injected 
+	 *                                   into the model OR index of single fault to be injected)
+	 * @param mapNo (int - unique identifier for results files, may include search effort, run index, R/SB differentiation)
+	 * @param newInternalSeed (long - for random number generator)
+	 * @param wantOutputFiles (boolean - true to write the log files, false to discard everything logged)
+	 */
+    public COModelWithoutRun(double percentageFaults, int mapNo, long newInternalSeed, boolean wantOutputFiles) 
+    { 
+    	sBuilder = new COModelBuilder(new COModel(newInternalSeed, Constants.WorldXVal, Constants.WorldYVal, false, percentageFaults, mapNo, true, wantOutputFiles));
+    	sBuilder.sim.setHeadless(true); // Nothing will display the map layers, so never build them
     	//System.out.println("COModelWithoutUI is being called!"+ "it's state(model)is: "+ sBuilder.getSim().toString());
     }
     
@@ -25,6 +25,7 @@ public class COModelWithoutUI
     public COModelWithoutUI(double percentageFaults, long mapNo, boolean inWantRandomFaults) 
     { 
     	sBuilder = new COModelBuilder(new COModel( System.nanoTime(), Constants.WorldXVal, Constants.WorldYVal, false, percentageFaults, mapNo, inWantRandomFaults));
+    	sBuilder.sim.setHeadless(true); // Nothing will display the map layers, so never build them
     	//System.out.println("COModelWithoutUI is being called!"+ "it's state(model)is: "+ sBuilder.getSim().toString());
     }
  
@@ -62,9 +63,21 @@ public class COModelWithoutUI
      * @param newExternalSeed (long - external random seed to generate the map)
      */
 	public void start(long newExternalSeed)
+	{
+		start(newExternalSeed, new SecureRandom().nextInt());
+	}
+	
+	/**
+	 * As start(newExternalSeed) above, but using the supplied internal seed rather than a random one, so that
+	 * the run can be repeated exactly (e.g. by simcontroller.ThroughputBenchmark).
+	 * @param newExternalSeed (long - external random seed to generate the map)
+	 * @param newInternalSeed (long - internal random seed for the run-time behaviour)
+	 * @return long (number of steps which were executed)
+	 */
+	public long start(long newExternalSeed, long newInternalSeed)
 	{
 		//System.out.println("COModelWithoutUI.start is called  "+ sBuilder.sim);
-		sBuilder.updateSeed(new SecureRandom().nextInt()); 
+		sBuilder.updateSeed(newInternalSeed); 
 		sBuilder.sim.reset();
 		
 		sBuilder.sim.setExternalSeed(newExternalSeed);
@@ -82,6 +95,8 @@ public class COModelWithoutUI
 		
 		// Report to the console that we have completed, and call finish() on the sim
 		System.out.println("COModelWithoutUI finished.");
+		long noSteps = sBuilder.sim.schedule.getSteps();
 		sBuilder.sim.finish();
+		return noSteps;
 	}
 }
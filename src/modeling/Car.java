@@ -5,6 +5,7 @@ import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 
 import sim.engine.SimState;
+import sim.engine.Stoppable;
 import sim.portrayal.Oriented2D;
 import sim.util.*;
 
@@ -50,6 +51,31 @@ public abstract class Car extends Entity implements Oriented2D
 	private int voteSlowStop = 0; // Added due to vehicles being allowed to accelerate with above methods
 	private double stoppingDistance = Constants.WorldXVal*2; // Added so we can try to stop vehicles colliding. ('max' result indicates no veh ahead)
 	
+	// Readings from the sensor sweeps performed during the current step, so that repeated requests for the
+	// same sweep (e.g. to find the lane boundaries for each obstacle that is checked) only sweep once per step
+	private PerceptionSnapshot perception = null;
+	protected static final Double2D NOT_DETECTED = new Double2D(-1, -1); // Returned by the sweeps which don't find anything
+	private final double[] movingObstaclesKey = new double[5]; // Reused to look up the readings, see PerceptionSnapshot.addReading
+	private final double[] roadMarkingsKey = new double[6];
+	
+	// Number of rays cast by the sensor sweeps of this vehicle, and number of sweeps, for the sampled
+	// SensorSweep events (see startSweepEvent)
+	private long noSweepRays = 0;
+	private long noSweeps = 0;
+	
+	// The vehicle index (if any) which needs to be told when this vehicle moves, see VehicleIndex
+	private VehicleIndex vehicleIndex = null;
+	private int vehicleIndexIdx = -1;
+	
+	// The Waypoints created by this vehicle which haven't been removed yet (they are not added to the environment)
+	private Bag waypoints = new Bag();
+	
+	// The handle returned when this vehicle was put on the schedule, so that it can be taken off again
+	private Stoppable stopper = null;
+	
+	// The road, lane and junction at the location of this vehicle, which are tracked as it moves
+	private final LocationTracker locationTracker = new LocationTracker();
+	
 	/**
 	 * Constructor for Car class
 	 * @param idNo (int - unique identifier)
@@ -80,6 +106,52 @@ public abstract class Car extends Entity implements Oriented2D
 		this.direction = initialBearing; // [TODO] include some checking on the input range
 	}
 	
+	/**
+	 * Return the Car to the state it would have if it had just been constructed with the supplied arguments,
+	 * so that a Car which has been removed from the simulation can be reused (see COModel.addNewDumbCar).
+	 * @param idNo (int - new unique identifier)
+	 * @param idTarget (int - unique identifier for Target)
+	 * @param inPerformance (CarPerformance - characteristics for car e.g. max speed)
+	 * @param initialBearing (double - initial direction for vehicle)
+	 */
+	protected void reinitialise(int idNo, int idTarget, CarPerformance inPerformance, double initialBearing)
+	{
+		setID(idNo);
+		location = null;
+		isSchedulable = false;
+		
+		direction = initialBearing;
+		speed = 0;
+		performance = inPerformance;
+		isActive = true;
+		targetID = idTarget;
+		viewingRange = 10;
+		viewingAngle = 90;
+		sim = null;
+		prevLoc = null;
+		jctID = 0;
+		isWaiting = false;
+		resetSpeedParams();
+		stoppingDistance = Constants.WorldXVal*2;
+		perception = null;
+		noSweepRays = 0;
+		noSweeps = 0;
+		vehicleIndex = null;
+		vehicleIndexIdx = -1;
+		waypoints.clear();
+		stopper = null;
+		locationTracker.clear();
+	}
+	
+	/**
+	 * Return the tracker of the road, lane and junction at the location of this vehicle.
+	 * @return LocationTracker (the tracker for this vehicle)
+	 */
+	public LocationTracker getLocationTracker()
+	{
+		return locationTracker;
+	}
+	
 	/**
 	 * Abstract placeholder method for step() to force subclasses to provide their own implementation;
 	 * unlikely that child classes would share the detailed movement control that is defined in step().
@@ -165,6 +237,79 @@ public abstract class Car extends Entity implements Oriented2D
 	{
 		return stoppingDistance;
 	}	
+	
+	/**
+	 * Set the location of the Car, and update the vehicle index (if any) so that it knows where the
+	 * Car has moved to.
+	 * @param location (Double2D - new location for the Car)
+	 */
+	@Override
+	public void setLocation(Double2D location) {
+		super.setLocation(location);
+		
+		if (vehicleIndex != null) {
+			vehicleIndex.update(vehicleIndexIdx);
+		}
+	}
+	
+	/**
+	 * Register the vehicle index which contains this Car, so that it can be updated when the Car moves.
+	 * @param inVehicleIndex (VehicleIndex - the index containing this Car)
+	 * @param inIdx (int - the index of this Car within the vehicle index)
+	 */
+	public void setVehicleIndex(VehicleIndex inVehicleIndex, int inIdx)
+	{
+		vehicleIndex = inVehicleIndex;
+		vehicleIndexIdx = inIdx;
+	}
+	
+	/**
+	 * Store the handle returned when the Car was put on the schedule (see COModel.scheduleEntities).
+	 * @param inStopper (Stoppable - handle for the repeating schedule entry of this Car)
+	 */
+	public void setStopper(Stoppable inStopper) { stopper = inStopper; }
+	
+	/**
+	 * Take the Car off the schedule, if it is on it.
+	 */
+	public void stop()
+	{
+		if (stopper != null) {
+			stopper.stop();
+			stopper = null;
+		}
+	}
+	
+	/**
+	 * Mark the Car as no longer active, and tell the simulation (if any) so that it can keep track of the
+	 * number of active UGVs.
+	 */
+	protected void deactivate()
+	{
+		if (isActive == true)
+		{
+			isActive = false;
+			if (sim != null) {
+				sim.vehicleDeactivated(this);
+			}
+		}
+	}
+	
+	/**
+	 * Return the Waypoints which have been created by this Car, and not yet removed.
+	 * @return Bag (the current Waypoints of this Car)
+	 */
+	public Bag getWaypoints() { return waypoints; }
+	
+	/**
+	 * Remove the supplied Waypoint from the Waypoints of this Car (called from COModel.removeFromEnvironment).
+	 * @param wp (Waypoint - the Waypoint to remove)
+	 */
+	public void removeWaypoint(Waypoint wp)
+	{
+		waypoints.remove(wp);
+	}
+
 
 	/**
 	 * A method which turns the car towards the direction of the target point.
@@ -221,7 +366,7 @@ public abstract class Car extends Entity implements Oriented2D
 		
 		// If the angular distance to the idealDirection is further, then we should stop at the targetDirection
 		if (currentToIdeal > currentToTarget && currentToTarget <= this.performance.getCurrentMaxTurning() && 
-			sim.roadAtPoint(this.location, sim.roads) && targetDir != -1) {
+			locationTracker.getRoad(sim, this.location) != -1 && targetDir != -1) {
 			idealDirection = targetDir;
 		}
 		
@@ -402,13 +547,30 @@ public abstract class Car extends Entity implements Oriented2D
 	 */
 	protected boolean onMap(Shape inShape)
 	{
-		// Construct a Rectangle2D.Double which represents the whole map, then test for intersection with 
-		// the supplied inShape
-		Shape mapShape = (Shape) new Rectangle2D.Double(0, 0, Constants.WorldXVal, Constants.WorldYVal);
-		Area mapArea = new Area(mapShape);
-		mapArea.intersect(new Area(inShape));
+		return onMap(inShape, inShape.getBounds2D());
+	}
+	
+	/**
+	 * Version of onMap(Shape) for callers which already have the bounds of the shape.
+	 * @param inShape (Shape - the shape to test)
+	 * @param bounds (Rectangle2D - the bounds of inShape, as returned by getBounds2D)
+	 * @return boolean (true if at least some of inShape is on the map)
+	 */
+	private boolean onMap(Shape inShape, Rectangle2D bounds)
+	{
+		// Most shapes lie entirely inside (or outside) of the map, which can be seen from their bounds: a Shape
+		// overlaps the map if its bounds lie within it (the vehicle footprints always have some area), and can't
+		// if its bounds don't overlap the map.  Only the shapes which straddle the edge need a full test.
+		if (bounds.getMinX() >= 0 && bounds.getMinY() >= 0 && bounds.getMaxX() <= Constants.WorldXVal && 
+			bounds.getMaxY() <= Constants.WorldYVal && bounds.isEmpty() == false)
+		{
+			return true;
+		} else if (bounds.intersects(0, 0, Constants.WorldXVal, Constants.WorldYVal) == false) {
+			return false;
+		}
 		
-		return !mapArea.isEmpty();
+		// Test the shapes which straddle the edge for intersection with a rectangle which represents the whole map
+		return inShape.intersects(0, 0, Constants.WorldXVal, Constants.WorldYVal);
 	}
 	
 	/** 
@@ -508,11 +670,48 @@ public abstract class Car extends Entity implements Oriented2D
 	{
 		// First make sure that the point is not located outside of the map (as the roads do extend
 		// further than the map.
-		if (onMap(inShape) == false)
+		Rectangle2D bounds = inShape.getBounds2D();
+		if (onMap(inShape, bounds) == false)
 		{
 			return false;
 		}
 		
+		// When the supplied roads are those of the simulation, the road network doesn't change during the run, so 
+		// use the road surfaces which the model has already constrained to the map rather than building an Area
+		// of all the roads.
+		if (sim != null && roads == sim.roads)
+		{
+			// The shape must be on the road if it lies entirely within the map and one of the roads, which will usually
+			// be the road at the location of the vehicle, or one of the roads connected to it, so check those first
+			if (location != null && bounds.getMinX() >= 0 && bounds.getMinY() >= 0 && bounds.getMaxX() <= Constants.WorldXVal && 
+				bounds.getMaxY() <= Constants.WorldYVal && sim.getRoadNetwork().getNoRoads() == roads.size() && 
+				locationTracker.getRoad(sim, location) != -1)
+			{
+				int[] connected = sim.getRoadNetwork().getConnectedRoads(locationTracker.getRoad(sim, location));
+				
+				for (int c = 0; c < connected.length; c++)
+				{
+					if (((Road) roads.get(connected[c])).containsRect(bounds) == true) {
+						return true;
+					}
+				}
+			}
+			
+			// Otherwise the shape is on the road if it overlaps any of the road surfaces within the map (the road
+			// network is the union of them).  The vehicle footprints are convex polygons, for which Shape.intersects
+			// is exact, so there is no need to build an Area to find the overlap.
+			Rectangle2D.Double[] surfaces = sim.getRoadSurfacesOnMap();
+			
+			for (int i = 0; i < surfaces.length; i++)
+			{
+				if (surfaces[i].intersects(bounds) == true && (surfaces[i].contains(bounds) == true || inShape.intersects(surfaces[i]) == true)) {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+		
 		// Build an Area shape that consists of all the Roads
 		Area allRoads = new Area();
 		Shape currentRoad;
@@ -713,7 +912,7 @@ public abstract class Car extends Entity implements Oriented2D
 				nextP = eTarget_current.getID(); // Retain the target for our next point
 			} else if (eTarget_current.getType() == Constants.TWAYPOINT) { // Check the type is Waypoint before cast or might get exception
 				nextP = ((Waypoint) eTarget_current).getNextPoint();
-				sim.environment.remove(eTarget_current); // Now that we are done with the old point, remove it.
+				sim.removeFromEnvironment(eTarget_current); // Now that we are done with the old point, remove it.
 			}
 			
 			wp = new Waypoint(wpID, nextP, type); // Use the current next point as new one (replace current WP), unless current WP is a target.
@@ -740,7 +939,9 @@ public abstract class Car extends Entity implements Oriented2D
 				
 		wp.setLocation(tempLoc);
 		setTargetID(wpID);
-		sim.environment.setObjectLocation(wp, tempLoc);
+		wp.setOwner(this);
+		waypoints.add(wp);
+		sim.addWaypoint(wp, tempLoc);
 		setDirection(location, tempLoc); // Turn the vehicle towards the new WP
 		return wp; // return WP so we can set eTarget to point to it
 	}
@@ -772,11 +973,15 @@ public abstract class Car extends Entity implements Oriented2D
 		// Simple and dirty method which checks the coordinates between 0 and 
 		// the moving obstacle viewing range away from the target in certain increments and see 
 		// if they intersect with the supplied car (moving obs) 
-		MutableDouble2D testCoord = new MutableDouble2D();
-		Double2D amountAdd = new Double2D();
+		double testX; // Test location, kept as two doubles as this is called for every car on each sweep
+		double testY;
+		double xStep;
+		double yStep;
 		double reqDistance = inRange;
-		Double2D reqCoord = new Double2D(-1,-1);
+		double reqX = -1; // Coordinates of the closest hit, only converted to a Double2D once the sweep is complete
+		double reqY = -1;
 		double distance;
+		Shape carShape = null; // Only built if a test location is found in the lane, then reused for the whole sweep
 		
 		// Restrict the obstacle checks to those which are in the same lane as
 		// the UGV, so need to know direction in order to restrict in method below
@@ -798,6 +1003,13 @@ public abstract class Car extends Entity implements Oriented2D
 			rightBound = locateRoadMarkings_AllRoads(sim.roads, true, sim, genLineType.OFFSIDE, viewingAngle, viewingRange, inSensitivity);
 		}
 		
+		// If no part of the car is within reach of the search (with a margin of two increments to allow for 
+		// rounding as the test location is moved outwards), it can't be found, so there is no need to search
+		if (inCar.distanceToShape(sensorLoc) > inRange + (2 * inSensitivity)) {
+			addSensorWork(sim, SensorCounters.Sensor.MOVING_OBSTACLES, 0, 0, 0, 0);
+			return NOT_DETECTED;
+		}
+		
 		// For each angle that the sensor is able to view, turning in realistic increments
 		double resolution = 0.5;
 		double newBearing = 0.0;
@@ -808,27 +1020,39 @@ public abstract class Car extends Entity implements Oriented2D
 		double startRange = 0;
 		double endRange = inRange;
 		double rangeSensitivity = inSensitivity;
+		
+		// Work done by the search (see SensorCounters)
+		long noRays = 0;
+		long noSamples = 0;
+		long noShapeTests = 0;
+		long noRoadTests = 0;
 								
 		for(double i = startAngle; i <= endAngle; i += resolution)
 		{
+			noRays++;
+			
 			// Reset the location that we start testing from and set the bearing
 			// that we are going to use for this iteration
-			testCoord.setTo(0,0);
-			testCoord.addIn(sensorLoc); // Displaced to model sensor on front of vehicle
+			testX = sensorLoc.x; // Displaced to model sensor on front of vehicle
+			testY = sensorLoc.y;
 			newBearing = Utility.correctAngle(getDirection() + i);
 			
 			// Construct the x an y increments for each iteration below
-			amountAdd = new Double2D(Utility.xMovement(newBearing, rangeSensitivity), Utility.yMovement(newBearing, rangeSensitivity));
+			xStep = Utility.xMovement(newBearing, rangeSensitivity);
+			yStep = Utility.yMovement(newBearing, rangeSensitivity);
 						
 		    // NOTE - j is not actually used, it just ensures the correct number of iterations
 			for(double j = startRange; j <= endRange; j += rangeSensitivity){
 												
-				testCoord.addIn(amountAdd);  // move the test location outwards on the chosen bearing
+				testX += xStep; // move the test location outwards on the chosen bearing
+				testY += yStep;
+				noSamples++;
 				
 				// Ensure that our test coordinate is between us and the edge of the road,
 				// as soon as we hit a point that is no longer on the road surface then we should 
 				// discontinue our search.
-				if (sim.roadAtPoint(new Double2D(testCoord), sim.roads) == false) {
+				noRoadTests++;
+				if (sim.roadAtPoint(testX, testY, sim.roads) == false) {
 					break; // Try searching again at the next bearing.
 				}
 								
@@ -837,41 +1061,47 @@ public abstract class Car extends Entity implements Oriented2D
 				
 				if (direction == UGV_Direction.NORTH || direction == UGV_Direction.SOUTH)
 				{
-					if ((testCoord.x > leftBound.x && testCoord.x < rightBound.x) || (testCoord.x < leftBound.x && testCoord.x > rightBound.x)) {
+					if ((testX > leftBound.x && testX < rightBound.x) || (testX < leftBound.x && testX > rightBound.x)) {
 						inLane = true;
 					}
 				} else {
-					if ((testCoord.y > leftBound.y && testCoord.y < rightBound.y) || (testCoord.y < leftBound.y && testCoord.y > rightBound.y)) {
+					if ((testY > leftBound.y && testY < rightBound.y) || (testY < leftBound.y && testY > rightBound.y)) {
 						inLane = true;
 					}
 				}
 								
 				if (inLane == true) {
-					// Find out which class of car we have so we can call the right inShape method
-					boolean isInShape = false;
-					if (inCar.type == DUMBCAR) 
-					{
-						isInShape = ((DumbCar) inCar).inShape(new Double2D(testCoord.x, testCoord.y));
-					} else { // must be a UGV
-						isInShape = ((UGV) inCar).inShape(new Double2D(testCoord.x, testCoord.y));
+					// The car doesn't move during the sweep, so its Shape (as used by DumbCar.inShape and 
+					// UGV.inShape) only needs to be built once
+					if (carShape == null) {
+						carShape = inCar.getShape();
 					}
+					boolean isInShape = carShape.contains(testX, testY);
+					noShapeTests++;
 										
-					// keep adding the amountAdd on and seeing if the coordinate is inside an obstacle
+					// keep adding the step on and seeing if the coordinate is inside an obstacle
 					if (isInShape == true)
 					{
-						// Store the distance at which the testCoord has intersected
-						distance = location.distance(testCoord.x, testCoord.y);
+						// Store the distance at which the test location has intersected
+						distance = location.distance(testX, testY);
 
 						if (distance < reqDistance) {
 							reqDistance = distance;
-							reqCoord = new Double2D(testCoord.x, testCoord.y);
+							reqX = testX;
+							reqY = testY;
 						}
 					}
 				}
 			}
 		}
 		
-		return reqCoord;
+		addSensorWork(sim, SensorCounters.Sensor.MOVING_OBSTACLES, noRays, noSamples, noShapeTests, noRoadTests);
+		
+		if (reqX == -1 && reqY == -1) {
+			return NOT_DETECTED;
+		}
+		
+		return new Double2D(reqX, reqY);
 	}
 	
 	/**
@@ -889,6 +1119,45 @@ public abstract class Car extends Entity implements Oriented2D
 	 * @return Double2D (coordinates of the closest location where the sensor detected a vehicle)
 	 */
 	protected Double2D checkAllMovingObstacles(COModel sim, Bag inCars, boolean sameLane, double inAngle, double inRange, double inSensitivity)
+	{
+		if (inCars != sim.cars) {
+			return sweepAllMovingObstacles(sim, inCars, sameLane, inAngle, inRange, inSensitivity);
+		}
+		
+		PerceptionSnapshot snapshot = getPerception(sim);
+		double[] key = movingObstaclesKey;
+		key[0] = getDirection();
+		key[1] = (sameLane == true ? 1 : 0);
+		key[2] = inAngle;
+		key[3] = inRange;
+		key[4] = inSensitivity;
+		PerceptionSnapshot.Reading reading = snapshot.getReading(sim, PerceptionSnapshot.Sensor.MOVING_OBSTACLES, key);
+		
+		if (reading == null)
+		{
+			long[] faultsBefore = PerceptionSnapshot.getFaultCounts(sim);
+			sim.getProfiler().enter(StepProfiler.Phase.UGV_PERCEPTION);
+			SimulationEvents.SensorSweep event = startSweepEvent();
+			Double2D result = sweepAllMovingObstacles(sim, inCars, sameLane, inAngle, inRange, inSensitivity);
+			endSweepEvent(event, sim, SensorCounters.Sensor.MOVING_OBSTACLES);
+			sim.getProfiler().exit(StepProfiler.Phase.UGV_PERCEPTION);
+			reading = snapshot.addReading(sim, PerceptionSnapshot.Sensor.MOVING_OBSTACLES, key, faultsBefore, new Double2D[] {result}, false);
+		}
+		
+		return reading.getPoint(0);
+	}
+	
+	/**
+	 * Perform the moving obstacle sweep for checkAllMovingObstacles (see above for details).
+	 * @param sim (COModel - access to the simulation environment)
+	 * @param inCars (Bag - access to all the cars in the simulation)
+	 * @param sameLane (boolean - true indicates search for vehicle in lane ahead, false means oncoming vehicle)
+	 * @param inAngle (double - angular range to use for search, relative to UGV direction checks +/- inAngle/2)
+	 * @param inRange (double - how far ahead of the UGV should be searched)
+	 * @param inSensitivity (double - increment to use in x and y directions when moving test location further from sensor)
+	 * @return Double2D (coordinates of the closest location where the sensor detected a vehicle)
+	 */
+	private Double2D sweepAllMovingObstacles(COModel sim, Bag inCars, boolean sameLane, double inAngle, double inRange, double inSensitivity)
 	{
 		// Init to the values we would want for finding the min
 		double reqDistance = inRange + 1;
@@ -905,7 +1174,7 @@ public abstract class Car extends Entity implements Oriented2D
 		sensorLoc = new Double2D(location.x + xDispl, location.y + yDispl);
 		
 		Double2D currentDistanceCoord; 
-		Double2D reqCoord = new Double2D(-1,-1);
+		Double2D reqCoord = NOT_DETECTED;
 				
 		Car currentCar;
 		
@@ -955,7 +1224,50 @@ public abstract class Car extends Entity implements Oriented2D
 	 */
 	protected Double2D locateRoadMarkings_AllRoads(Bag roads, boolean findNearest, COModel sim, genLineType reqLine, double inAngle, double inRange, double inSensitivity)
 	{
-		Double2D currentXY = new Double2D(0,0);
+		// The result of the sweep only depends on the location and (compass) direction of the vehicle, and
+		// the sensor parameters, so if an identical sweep has already been performed during this step, reuse it.
+		if (roads != sim.roads) {
+			return sweepRoadMarkings_AllRoads(roads, findNearest, sim, reqLine, inAngle, inRange, inSensitivity);
+		}
+		
+		PerceptionSnapshot snapshot = getPerception(sim);
+		double[] key = roadMarkingsKey;
+		key[0] = Utility.getDirectionDeg(getDirection());
+		key[1] = (findNearest == true ? 1 : 0);
+		key[2] = reqLine.ordinal();
+		key[3] = inAngle;
+		key[4] = inRange;
+		key[5] = inSensitivity;
+		PerceptionSnapshot.Reading reading = snapshot.getReading(sim, PerceptionSnapshot.Sensor.ROAD_MARKINGS, key);
+		
+		if (reading == null)
+		{
+			long[] faultsBefore = PerceptionSnapshot.getFaultCounts(sim);
+			sim.getProfiler().enter(StepProfiler.Phase.UGV_PERCEPTION);
+			SimulationEvents.SensorSweep event = startSweepEvent();
+			Double2D result = sweepRoadMarkings_AllRoads(roads, findNearest, sim, reqLine, inAngle, inRange, inSensitivity);
+			endSweepEvent(event, sim, SensorCounters.Sensor.ROAD_MARKINGS);
+			sim.getProfiler().exit(StepProfiler.Phase.UGV_PERCEPTION);
+			reading = snapshot.addReading(sim, PerceptionSnapshot.Sensor.ROAD_MARKINGS, key, faultsBefore, new Double2D[] {result}, false);
+		}
+		
+		return reading.getPoint(0);
+	}
+	
+	/**
+	 * Perform the road marking sweep for locateRoadMarkings_AllRoads (see above for details).
+	 * @param roads (Bag - access to the collection of roads)
+	 * @param findNearest (boolean - true to return the closest RM found; false to return the farthest RM found)
+	 * @param COModel sim (COModel - required for fault insertion)
+	 * @param reqLine (genLineType - which line are we searching for: nearside, offside, centre)
+	 * @param inAngle (double - viewing angle of vehicle - range of vision)
+	 * @param inRange (double - viewing depth of vehicle)
+	 * @param inSensitivity (double - increment to be used for range increases: search resolution)
+	 * @return Double2D (coordinates of the furthermost road marking detected)
+	 */
+	private Double2D sweepRoadMarkings_AllRoads(Bag roads, boolean findNearest, COModel sim, genLineType reqLine, double inAngle, double inRange, double inSensitivity)
+	{
+		Double2D currentXY;
 		
 		// Initialisation matters here or the conditions below won't evaluate correctly
 		Double2D requiredXY;
@@ -1010,10 +1322,12 @@ public abstract class Car extends Entity implements Oriented2D
 		//the viewing range away from the target in certain increments and see 
 		//if they intersect with road markings
 		MutableDouble2D testCoord = new MutableDouble2D();
-		Double2D amountAdd = new Double2D();
+		double xStep;
+		double yStep;
 		testCoord.addIn(location);
 		
-		Double2D RM = new Double2D(-1, -1); // Default value
+		double rmX = -1; // Default value, only converted to a Double2D once the search is complete
+		double rmY = -1;
 		
 		// For each angle that the sensor is able to view, turning in realistic increments
 		double resolution = 0.5; // angular search resolution (fixed)
@@ -1052,9 +1366,20 @@ public abstract class Car extends Entity implements Oriented2D
 			sim.setFault(10); 
 		}  
 				
+		// The desired heading e.g. North, South etc (see below) doesn't change during the search
+		int headingDeg = Utility.getDirectionDeg(getDirection());
+		
+		// Work done by the search (see SensorCounters)
+		long noRays = 0;
+		long noSamples = 0;
+		long noShapeTests = 0;
+		long noRoadTests = 0;
+		
 		// Check the viewable range at each angle
 		for(double i = startAngle; i >= endAngle; i -= resolution)
 		{
+			noRays++;
+			
 			// Each iteration we need to reset the testCoord so it is back at the current location
 			// of the vehicle (sensor)
 			testCoord.setTo(0,0);
@@ -1065,7 +1390,7 @@ public abstract class Car extends Entity implements Oriented2D
 			// Car is pointing in.  The desired heading is approximated from the current direction
 			// by Utility.getDirectionDeg.  The angular offset (i) is then applied to this value
 			// to give the sensor direction.
-			newBearing = Utility.correctAngle(Utility.getDirectionDeg(getDirection()) + i); 
+			newBearing = Utility.correctAngle(headingDeg + i); 
 			
 			// New Fault #13 - Force the sensor to 'reduce' distance resolution (double iterator step)
 			if (sim.getFault(13) == true && this.getType() == TUGV) { 
@@ -1075,7 +1400,8 @@ public abstract class Car extends Entity implements Oriented2D
 			
 			// Calculate the x and y displacements corresponding to a movement along newBearing 
 			// of length rangeSensitivity
-			amountAdd = new Double2D(Utility.xMovement(newBearing, rangeSensitivity), Utility.yMovement(newBearing, rangeSensitivity));
+			xStep = Utility.xMovement(newBearing, rangeSensitivity);
+			yStep = Utility.yMovement(newBearing, rangeSensitivity);
 			
 			// New Fault #11 - Force the distance loop to start half-way through
 			if (sim.getFault(11) == true && this.getType() == TUGV) { 
@@ -1092,47 +1418,61 @@ public abstract class Car extends Entity implements Oriented2D
 			// Note: We don't use j, this just ensures we run the loop the right number of times
 			for(double j = startRange; j <= endRange; j += rangeSensitivity)
 			{
-				// Keep adding the amountAdd on and seeing if the coordinate is still on the road, or whether it 
+				// Keep adding the step on and seeing if the coordinate is still on the road, or whether it 
 				// is on a road marking.  There would likely be no way to tell the difference between nearside and
 				// offside road markings, so is slightly inaccurate to use this detail from the object model.  
 				// Centre markings would be different, so can use this detail to differentiate between centre and offside.
 				
 				// Adding in the first increment prior to the test, rather than after as no point
 				// testing the location the vehicle is already in
-				testCoord.addIn(amountAdd);
+				testCoord.addIn(xStep, yStep);
+				noSamples++;
 				
 				// Make sure we are still on the road
-				if (((Road) road).inShape(new Double2D(testCoord)) == false)
+				noRoadTests++;
+				if (road.inShape(testCoord.x, testCoord.y) == false)
 				{
 					break; // exit the for loop and try the next bearing.
 				}
 				
+				noShapeTests++; // Test against the road markings
+				
 				if (reqLine == genLineType.CENTRE) // Are we looking for a centre line?
 				{
-					if ((((Road) road).getLine(LineType.CENTRE)).contains(testCoord.x, testCoord.y))
+					if (road.lineContains(LineType.CENTRE, testCoord.x, testCoord.y))
 					{
-						if (((location.distance(testCoord.x, testCoord.y) > location.distance(RM)) && findNearest == false) || RM.x == -1) {
-							RM = new Double2D(testCoord.x, testCoord.y);
-						} else if ((location.distance(testCoord.x, testCoord.y) < location.distance(RM)) && findNearest == true) {
-							RM = new Double2D(testCoord.x, testCoord.y);
+						if (((location.distance(testCoord.x, testCoord.y) > location.distance(rmX, rmY)) && findNearest == false) || rmX == -1) {
+							rmX = testCoord.x;
+							rmY = testCoord.y;
+						} else if ((location.distance(testCoord.x, testCoord.y) < location.distance(rmX, rmY)) && findNearest == true) {
+							rmX = testCoord.x;
+							rmY = testCoord.y;
 						}
 					}
 				} else { // Check both sets of edge markings as the vision algorithms are unlikely to know which are which
 						 // as they would be the same colour/shape
-					if ((((Road) road).getLine(LineType.NESIDE)).contains(testCoord.x, testCoord.y) ||
-						(((Road) road).getLine(LineType.SWSIDE)).contains(testCoord.x, testCoord.y))
+					if (road.lineContains(LineType.NESIDE, testCoord.x, testCoord.y) ||
+						road.lineContains(LineType.SWSIDE, testCoord.x, testCoord.y))
 					{
-						if (((location.distance(testCoord.x, testCoord.y) > location.distance(RM)) && findNearest == false) || RM.x == -1) {
-							RM = new Double2D(testCoord.x, testCoord.y);
-						} else if ((location.distance(testCoord.x, testCoord.y) < location.distance(RM)) && findNearest == true) {
-							RM = new Double2D(testCoord.x, testCoord.y);
+						if (((location.distance(testCoord.x, testCoord.y) > location.distance(rmX, rmY)) && findNearest == false) || rmX == -1) {
+							rmX = testCoord.x;
+							rmY = testCoord.y;
+						} else if ((location.distance(testCoord.x, testCoord.y) < location.distance(rmX, rmY)) && findNearest == true) {
+							rmX = testCoord.x;
+							rmY = testCoord.y;
 						}
 					}
 				}
 			}
 		}
 		
-		return RM; 
+		addSensorWork(sim, SensorCounters.Sensor.ROAD_MARKINGS, noRays, noSamples, noShapeTests, noRoadTests);
+		
+		if (rmX == -1 && rmY == -1) {
+			return NOT_DETECTED;
+		}
+		
+		return new Double2D(rmX, rmY); 
 	}	
 	
 	/**
@@ -1158,40 +1498,53 @@ public abstract class Car extends Entity implements Oriented2D
 		// sure that we only detect obstacles on the same side of the road as the UGV's direction of travel.		
 		Double2D furthestLaneMarking = locateRoadMarkings_AllRoads(sim.roads, false, sim, Constants.genLineType.NEARSIDE, inAngle , inRange, inSensitivity);
 
+		return inSensedLane(furthestLaneMarking, direction, testLoc.x, testLoc.y);
+	}
+	
+	/**
+	 *  Method to determine whether the supplied coordinates are in the same lane as the vehicle, given
+	 *  the location of the nearside lane marking that was found by the lane marking sensor.  The centre 
+	 *  of the road is calculated from the marking (based on direction of travel) and we check that the
+	 *  point is located between the centre and the edge of the section of road corresponding to the 
+	 *  lane that the Car is in (it doesn't have to be within the lane markings).
+	 *  @param nearsideMarking (Double2D - location of nearside lane marking found by the sensor)
+	 *  @param direction (UGV_Direction - approximate direction of travel of the vehicle)
+	 *  @param x (double - x coordinate of location we want to check against lane)
+	 *  @param y (double - y coordinate of location we want to check against lane)
+	 *  @return boolean (true if the location is in the same lane as the vehicle)
+	 **/
+	protected static boolean inSensedLane(Double2D nearsideMarking, UGV_Direction direction, double x, double y)
+	{
 		double centreOffset = Road.roadWidth/2 - Constants.ROADEDGINGWIDTH - Constants.ROADEDGEOFFSET; // Distance between edge line and centre
 		boolean inLane = true;
 		double centre;
 		
-		// Calculate where the centre of the road is (based on direction of travel) and
-		// check to make sure that the testLoc is located between the centre and the edge
-		// of the section of road corresponding to the lane that the Car is in (it doesn't
-		// have to be within the lane markings).
 		switch (direction) {
 
 			case NORTH : {
-				centre = furthestLaneMarking.x + centreOffset;
-				if (testLoc.x > centre || testLoc.x < (centre - Road.roadWidth/2)) {
+				centre = nearsideMarking.x + centreOffset;
+				if (x > centre || x < (centre - Road.roadWidth/2)) {
 					inLane = false;
 				}	
 				break;
 			}
 			case SOUTH : {
-				centre = furthestLaneMarking.x - centreOffset;
-				if (testLoc.x < centre || testLoc.x > (centre + Road.roadWidth/2)) {
+				centre = nearsideMarking.x - centreOffset;
+				if (x < centre || x > (centre + Road.roadWidth/2)) {
 					inLane = false;
 				}
 				break;
 			}
 			case EAST : {
-				centre = furthestLaneMarking.y + centreOffset;
-				if (testLoc.y > centre || testLoc.y < (centre - Road.roadWidth/2)) {
+				centre = nearsideMarking.y + centreOffset;
+				if (y > centre || y < (centre - Road.roadWidth/2)) {
 					inLane = false;
 				}
 				break;
 			}
 			case WEST : {
-				centre = furthestLaneMarking.y - centreOffset;
-				if (testLoc.y < centre || testLoc.y > (centre + Road.roadWidth/2)) {
+				centre = nearsideMarking.y - centreOffset;
+				if (y < centre || y > (centre + Road.roadWidth/2)) {
 					inLane = false;
 				}
 				break;
@@ -1201,9 +1554,104 @@ public abstract class Car extends Entity implements Oriented2D
 		return inLane;
 	}
 		
+	/**
+	 * Start a new, empty, perception snapshot for the current step.  Any sensor readings from earlier in 
+	 * the step are discarded.
+	 * @param sim (COModel - access to the simulation environment)
+	 * @return PerceptionSnapshot (the new snapshot)
+	 */
+	protected PerceptionSnapshot startPerception(COModel sim)
+	{
+		perception = new PerceptionSnapshot(sim.schedule.getSteps(), location);
+		return perception;
+	}
+	
+	/**
+	 * Return the perception snapshot for the current step, starting a new one if the vehicle has moved
+	 * (or the step has changed) since the current snapshot was started.
+	 * @param sim (COModel - access to the simulation environment)
+	 * @return PerceptionSnapshot (the snapshot for the current step)
+	 */
+	protected PerceptionSnapshot getPerception(COModel sim)
+	{
+		if (perception == null || perception.isCurrent(sim.schedule.getSteps(), location) == false) {
+			return startPerception(sim);
+		}
+		
+		return perception;
+	}
+	
+	/**
+	 * Count a sensor sweep by this vehicle, and if it is one of the sampled sweeps and the events are being
+	 * recorded, start a SensorSweep event for it (see SimulationEvents).  The rays cast by the sweep are those
+	 * reported to addSensorWork.
+	 * @return SimulationEvents.SensorSweep (the event, to be passed to endSweepEvent, or null if the sweep is not recorded)
+	 */
+	protected SimulationEvents.SensorSweep startSweepEvent()
+	{
+		noSweeps++;
+		if (noSweeps % SimulationEvents.SWEEP_SAMPLE_INTERVAL != 0) {
+			return null;
+		}
+		
+		SimulationEvents.SensorSweep event = new SimulationEvents.SensorSweep();
+		if (event.isEnabled() == false) {
+			return null;
+		}
+		
+		event.rays = noSweepRays; // Replaced by the number of rays cast during the sweep in endSweepEvent
+		event.begin();
+		return event;
+	}
+	
+	/**
+	 * Record the work done by a call of one of the sensor methods of this vehicle in the SensorCounters for the
+	 * run, and in the count of rays for the SensorSweep events.
+	 * @param sim (COModel - access to the simulation environment)
+	 * @param sensor (SensorCounters.Sensor - the sensor method)
+	 * @param noRays (long - number of rays cast)
+	 * @param noSamples (long - number of test locations evaluated)
+	 * @param noShapeTests (long - number of tests against the shape of a vehicle, obstacle or road marking)
+	 * @param noRoadTests (long - number of tests for the road surface)
+	 */
+	protected void addSensorWork(COModel sim, SensorCounters.Sensor sensor, long noRays, long noSamples, long noShapeTests, long noRoadTests)
+	{
+		noSweepRays += noRays;
+		sim.getSensorCounters().add(sensor, (getType() == TUGV) ? SensorCounters.Vehicle.UGV : SensorCounters.Vehicle.DUMBCAR,
+				noRays, noSamples, noShapeTests, noRoadTests);
+	}
+	
+	/**
+	 * Finish and record the SensorSweep event returned by startSweepEvent, if there is one.
+	 * @param event (SimulationEvents.SensorSweep - the event returned by startSweepEvent, may be null)
+	 * @param sim (COModel - access to the simulation environment)
+	 * @param sensor (SensorCounters.Sensor - the sensor which performed the sweep)
+	 */
+	protected void endSweepEvent(SimulationEvents.SensorSweep event, COModel sim, SensorCounters.Sensor sensor)
+	{
+		if (event == null) {
+			return;
+		}
+		
+		event.end();
+		event.rays = noSweepRays - event.rays;
+		event.sensor = sensor.toString();
+		event.vehicleID = this.ID;
+		event.vehicleType = getClass().getSimpleName();
+		event.step = sim.schedule.getSteps();
+		event.commit();
+	}
+	
 	/**
 	 * Abstract method so don't have to cast to run from subclasses
 	 * @return Shape (return the shape of the Car object)
 	 **/
 	public abstract Shape getShape();
+	
+	/**
+	 * Abstract method so don't have to cast to run from subclasses
+	 * @param coord (Double2D - location we want to measure from)
+	 * @return double (return the shortest distance from coord to the shape of the Car object, 0 if inside)
+	 **/
+	public abstract double distanceToShape(Double2D coord);
 }
@@ -126,6 +126,8 @@ public interface Constants
 	public static final int MAX_CARS = 20;
 	
 	public static final int MAX_ITERATIONS = 50; // Used for controlling loop when adding cars/obstacles
+	
+	public static final int MAX_FAILURE_MARKERS = 1000; // Number of Failures/Crashes kept for display (see MarkerStore)
 		
 	// Number of different Maps/Networks to generate on a given run
 	public static final int NO_RANDOM_RUNS = 20;
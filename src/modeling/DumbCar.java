@@ -2,7 +2,7 @@ package modeling;
 
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 
 import modeling.COModel.jctExitInfo;
@@ -33,6 +33,19 @@ import sim.util.MutableDouble2D;
 public class DumbCar extends Car {
 	
 	private static final long serialVersionUID = 1L;
+	
+	// Readings taken by sense() for use by the next call to step(), in the two-phase update (see DumbCarStepper)
+	private boolean sensed = false;
+	private boolean sensedOnRoad;
+	private double sensedDistToObs;
+	
+	// The Shape is requested several times a step (by this car, the sensors of the other vehicles and the
+	// AccidentDetector), so it is only rebuilt when the car has moved or turned.  It is kept in an immutable
+	// ShapeCache so that it can be shared safely with the sensing threads of the DumbCarStepper.
+	private volatile ShapeCache shapeCache = null;
+	
+	// Target used by stepDumbCar when the car doesn't have one (this id is illegal, to get ids one should use COModel.getNewID())
+	private static final Entity NO_TARGET = new Entity(-1, TOTHER);
 
 	/**
 	 * Constructor - create a moving car obstacle of type DUMBCAR.  
@@ -45,6 +58,39 @@ public class DumbCar extends Car {
 		super(idNo, -1, performance, initialBearing, DUMBCAR);
 		// NOTE: The targetId of a DumbCar will be -1 as it does not have a target
 	}
+	
+	/**
+	 * Reuse this DumbCar (after it has been removed from the simulation) as though it had just been
+	 * constructed with the supplied arguments, see COModel.addNewDumbCar.
+	 * @param idNo (int - new unique identifier for the car)
+	 * @param performance (CarPerformance - the performance parameters of the car)
+	 * @param initialBearing (double - direction in which the vehicle start pointing)
+	 */
+	public void reinitialise(int idNo, CarPerformance performance, double initialBearing)
+	{
+		reinitialise(idNo, -1, performance, initialBearing);
+		sensed = false;
+	}
+	
+	/**
+	 * Take the readings which the DumbCar needs from the rest of the simulation during the next step
+	 * (whether it is still on the road, and the distance to the nearest vehicle in the same lane), so that
+	 * they are all taken from the state at the start of the step.  Used by the two-phase update (see
+	 * DumbCarStepper), where this is called for all of the DumbCars, possibly in parallel, before any of them
+	 * is stepped.  This must not change anything other than the readings stored in this DumbCar.
+	 * @param inSim (COModel - access to the simulation environment)
+	 */
+	public void sense(COModel inSim)
+	{
+		sim = inSim;
+		
+		if (this.isActive == true)
+		{
+			sensedOnRoad = onRoad(sim.roads, getShape());
+			sensedDistToObs = Math.min(findImminentCrash(sim.cars), findImminentCrash(sim.ugvs));
+			sensed = true;
+		}
+	}
 
 	/**
 	 * This method overrides Car.step as the DumbCar has more knowledge about its environment than 
@@ -56,6 +102,21 @@ public class DumbCar extends Car {
 	{
 		sim = (COModel) state;
 		
+		StepProfiler profiler = sim.getProfiler(); // sim is cleared if the car leaves the road and is reused (see below)
+		profiler.enter(StepProfiler.Phase.DUMBCAR_STEP);
+		stepDumbCar();
+		profiler.exit(StepProfiler.Phase.DUMBCAR_STEP);
+	}
+	
+	/**
+	 * Carry out the step of the DumbCar (see step).
+	 */
+	private void stepDumbCar()
+	{
+		// Use the readings from sense() if it has been called since the last step (two-phase update)
+		boolean useSensed = sensed;
+		sensed = false;
+		
 		if(this.isActive == true)
 		{
 			resetSpeedParams(); // Reset these speed change vote counters for this step
@@ -66,7 +127,8 @@ public class DumbCar extends Car {
 			
 			// Check we are still on the road, and if we have left it, remove self from sim,
 			// do necessary housekeeping, and add a new DumbCar to the network.
-			if (onRoad(sim.roads, getShape()) == false) {
+			boolean isOnRoad = (useSensed == true) ? sensedOnRoad : onRoad(sim.roads, getShape());
+			if (isOnRoad == false) {
 				
 				// Log speed of car leaving the road
 				sim.infoLog.addLog("Step: " + sim.schedule.getSteps() + ", Car: " + this.getID() + 
@@ -85,8 +147,8 @@ public class DumbCar extends Car {
 					setJctID(0);
 				}
 				
-				this.isActive = false;
-				environment.remove(this); // Remove from environment
+				deactivate();
+				sim.retireDumbCar(this); // Remove from the environment and schedule, and return to the pool
 				sim.dealWithTermination();
 				
 				// Add a new car to the simulation at a random entry point to the network
@@ -102,23 +164,16 @@ public class DumbCar extends Car {
 			double moveV; // Vertical component of the cars movement
 			double moveH; // Horizontal component of the cars movement
 			
-			// Get location of target
-			Bag everything = environment.getAllObjects(); // This will get all of the objects in the world, then start filtering
-			
 			this.setStats(sim.getCarMaxSpeed(),sim.getCarMaxAcceleration(), sim.getCarMaxDecceleration(), sim.getCarMaxTurning()); 
 			
-			Entity e; // Temp variable for iterating
-			Entity eTarget = new Entity(-1, TOTHER); // This id for the target is illegal, to get ids one should use COModel.getNewID()
+			Entity eTarget = NO_TARGET; // Placeholder until the actual target (if any) is found below
 			
-			// Find the current target from the bag of all entities (if there is one)
+			// Find the current target from the entities in the environment, looked up by ID (if there is one)
 			if (this.getTargetID() != -1) {
-				for(int i = 0; i < everything.size(); i++)
+				Entity e = sim.getEnvironmentEntity(this.getTargetID());
+				if (e != null)
 				{
-					e = (Entity) everything.get(i);			
-					if (e.getID() == this.getTargetID())
-					{
-						eTarget =  e;
-					}
+					eTarget = e;
 				}
 			}
 			
@@ -128,12 +183,12 @@ public class DumbCar extends Car {
 			if (getJctID() > 0)
 			{
 				// Check that we have started to leave the junction
-				if (sim.junctionAtPoint(me, sim.junctions) == 0 || sim.junctionAtPoint(me, sim.junctions) != this.getJctID())
+				if (getLocationTracker().getJunction(sim, me) == 0 || getLocationTracker().getJunction(sim, me) != this.getJctID())
 				{
 					// Check to make sure that the original junction has been completely vacated (there are 
 					// accidents caused by the DC entering a second junction whilst remaining in the first junction 
 					// too - and then the first junction is marked as empty; however this shouldn't happen anymore.
-					int jctRetVal = sim.junctionAtArea(new Area(this.getShape()), sim.junctions);
+					int jctRetVal = sim.junctionAtArea(this.getShape(), sim.junctions);
 					
 					// See if we have entirely left the junction
 					if (jctRetVal == 0) 
@@ -153,9 +208,7 @@ public class DumbCar extends Car {
 							{
 								// Create a shape to represent this junction
 								Rectangle2D tempJctShape = new Rectangle2D.Double((tempJct.location.x-(Road.roadWidth/2)), (tempJct.location.y-(Road.roadWidth/2)), Road.roadWidth, Road.roadWidth);
-								Area jctArea = new Area (tempJctShape);
-								jctArea.intersect(new Area(this.getShape())); // Intersect with the DumbCar
-								if (jctArea.isEmpty()) {
+								if (this.getShape().intersects(tempJctShape) == false) { // Test for overlap with the DumbCar, as for COModel.junctionAtArea
 									// We've left the junction, so reset the junction occupancy so someone else can enter
 									sim.unOccupyJunction(getJctID(), sim.junctions, this.getID());
 									setJctID(0);
@@ -172,8 +225,13 @@ public class DumbCar extends Car {
 					
 			if (eTarget.getType() != TUTURNWP)
 			{
-				for(int i = 0; i < sim.junctions.size(); i++) 
+				// Only the junctions near the DumbCar can contain it, or have an approach which contains it (see JunctionIndex)
+				int[] jctCandidates = sim.getJunctionIndex().getCandidates(me);
+				
+				for(int c = 0; c < jctCandidates.length; c++) 
 				{				
+					int i = jctCandidates[c];
+					
 					// ARE WE INSIDE A JUNCTION (only checking whether the 'location' of the DumbCar is in a junction
 					// this is the centre of the front of the vehicle, so we should pick up a vehicle as soon as it 
 					// starts to enter the junction.
@@ -185,7 +243,9 @@ public class DumbCar extends Car {
 						
 						// Vehicle currently within the junction, we need a new waypoint to redirect
 						// towards the destination (junction exit)
+						sim.getProfiler().enter(StepProfiler.Phase.JUNCTION);
 						jctExitInfo junctionInfo = ((Junction) sim.junctions.get(i)).getRandomExit(this, i, sim);
+						sim.getProfiler().exit(StepProfiler.Phase.JUNCTION);
 						Double2D junctionWP = junctionInfo.exitWP;
 
 						// Implementing 4-way Stop						
@@ -246,16 +306,16 @@ public class DumbCar extends Car {
 				// detected (which could be the one that the vehicle is supposed to have left) - although as the WP is placed
 				// slightly outside of the original junction, the vehicle should not actually be inside the original junction
 				// when the WP is cleared and the code above executes to find another junction entry.
-				if (sim.junctionAtPoint(me, sim.junctions) == 0 || sim.junctionAtPoint(me, sim.junctions) != this.getJctID())
+				if (getLocationTracker().getJunction(sim, me) == 0 || getLocationTracker().getJunction(sim, me) != this.getJctID())
 				{
 					// Log speed of car leaving junction
 					sim.infoLog.addLog("Step: " + sim.schedule.getSteps() + ", Front of Car: " + this.getID() + " leaving junction" + 
 							           ", at speed: " + this.getSpeed() + ", bearing: " + this.getDirection() + ".");
 										
 					this.setTargetID(-1); // back to default as have 'reached' target
-					environment.remove(eTarget);
+					sim.removeFromEnvironment(eTarget);
 										
-				} else if (sim.junctionAtPoint(me, sim.junctions) != 0) { // Only set the direction when we are in the junction
+				} else if (getLocationTracker().getJunction(sim, me) != 0) { // Only set the direction when we are in the junction
 				
 					setDirection(me, eTarget.getLocation());
 					
@@ -266,8 +326,13 @@ public class DumbCar extends Car {
 			// OBSTACLE AVOIDANCE - Need a different method for DumbCar (cf. Car) as it's taking far too long to conduct 
 			// the lidar-based search instead will use something that will be much 'cheaper' and is not a 'cheat' as 
 			// these vehicles are meant to simulate human-drivers anyway, so should have access to better information.
-			double distToObs = findImminentCrash(sim.cars);
-			distToObs = Math.min(distToObs, findImminentCrash(sim.ugvs));
+			double distToObs;
+			if (useSensed == true) {
+				distToObs = sensedDistToObs;
+			} else {
+				distToObs = findImminentCrash(sim.cars);
+				distToObs = Math.min(distToObs, findImminentCrash(sim.ugvs));
+			}
 			
 			double prevDist = getStoppingDistance();
 			this.setStoppingDistance(distToObs); // Update for next step
@@ -307,7 +372,7 @@ public class DumbCar extends Car {
 				moveV = Utility.yMovement(this.getDirection(), sim.getCarMaxSpeed());
 				moveH = Utility.xMovement(this.getDirection(), sim.getCarMaxSpeed());
 				sumForces.zero();
-				sumForces.addIn(new Double2D(moveH, moveV));	
+				sumForces.addIn(moveH, moveV);	
 		        sumForces.addIn(me);
 		        
 		        // Only execute this code if we aren't about to move into a junction
@@ -323,7 +388,7 @@ public class DumbCar extends Car {
 		        		moveV = Utility.yMovement(desiredLoc.startBearing, sim.getCarMaxSpeed());
 		        		moveH = Utility.xMovement(desiredLoc.startBearing, sim.getCarMaxSpeed());
 		        		sumForces.zero();
-		        		sumForces.addIn(new Double2D(moveH, moveV));	
+		        		sumForces.addIn(moveH, moveV);	
 		        		sumForces.addIn(desiredLoc.startLoc);
 
 		        		// Set the direction of this Car to point to this location
@@ -347,12 +412,13 @@ public class DumbCar extends Car {
 			moveH = Utility.xMovement(getDirection(), getSpeed());
 			
 			sumForces.zero(); // Before we use it again, make sure it has been reset
-			sumForces.addIn(new Double2D(moveH, moveV));	
+			sumForces.addIn(moveH, moveV);	
 	        sumForces.addIn(me);
-			sim.environment.setObjectLocation(this, new Double2D(sumForces));
-			this.setLocation( new Double2D(sumForces));
+			Double2D newLocation = new Double2D(sumForces); // Double2D is immutable, so one copy can be shared
+			sim.environment.setObjectLocation(this, newLocation);
+			this.setLocation(newLocation);
 						
-			location = new Double2D(sumForces);
+			location = newLocation;
 		}
 		
 		if(sim != null)
@@ -378,13 +444,32 @@ public class DumbCar extends Car {
 	 * @return Shape (the actual vehicle footprint, as a rectangle rotated according to the vehicle heading)
 	 */
 	public Shape getShape()
+	{
+		double orientation = ((Car) this).orientation2D();
+		ShapeCache cache = shapeCache;
+		
+		if (cache == null || cache.x != location.x || cache.y != location.y || cache.orientation != orientation)
+		{
+			cache = new ShapeCache(location.x, location.y, orientation, buildShape(orientation));
+			shapeCache = cache;
+		}
+		
+		return cache.shape;
+	}
+	
+	/**
+	 * Build the rectangle representing the moving car obstacle at its current location (see getShape).
+	 * @param orientation (double - the orientation2D direction of travel of the car)
+	 * @return Shape (the vehicle footprint, as a rectangle rotated according to the vehicle heading)
+	 */
+	private Shape buildShape(double orientation)
 	{
 		// The 'location' is the front and centre of this shape which we will assume is of the size given in
 		// the Constants file for an obstacle
 		double widthOffset = Constants.OBSTACLE_WIDTH/2;
 		
 		// Return a shape and align it with the oriented position of the vehicle
-		Rectangle2D.Double carRectangle = new Rectangle2D.Double();
+		Rectangle2D.Double carRectangle;
 		
 		// NOTE: the location is used as the front of the vehicle
 		// Assume the basic shape is as it would appear when pointed along the x-axis, so this 
@@ -393,9 +478,12 @@ public class DumbCar extends Car {
 		// change to this might reduce the 'flipping'/jumping behaviour seen when the DumbCars manoeuvre
 		// around in junctions. TODO - consider adjusting the anchor point for more realistic turning.
 		carRectangle = new Rectangle2D.Double(location.x - Constants.OBSTACLE_LENGTH, location.y - widthOffset, Constants.OBSTACLE_LENGTH, Constants.OBSTACLE_WIDTH);		
-		AffineTransform rotateTransform = AffineTransform.getRotateInstance(((Car) this).orientation2D(), location.x, location.y);		
-				
-		Shape carShape = rotateTransform.createTransformedShape(carRectangle);		
+		AffineTransform rotateTransform = AffineTransform.getRotateInstance(orientation, location.x, location.y);		
+		
+		// Same as rotateTransform.createTransformedShape(carRectangle), but only sized for the 6 segments of a rectangle
+		// rather than the default capacity of a Path2D, as a Shape is built for every car that moves on each step
+		Path2D.Double carShape = new Path2D.Double(Path2D.WIND_NON_ZERO, 6);
+		carShape.append(carRectangle.getPathIterator(rotateTransform), false);
 		return carShape;
 	}	
 	
@@ -411,6 +499,17 @@ public class DumbCar extends Car {
 		return carShape.contains(coord.x, coord.y); // Uses Shape.contains - it's not entirely clear whether points on the boundary are included
 	}
 	
+	/**
+	 * Method which returns the shortest distance between a provided coordinate and the shape boundary,
+	 * without having to construct the shape.
+	 * @param coord (Double2D - location we want to measure from)
+	 * @return double (distance from coord to the shape, 0 if coord is inside the shape)
+	 */
+	public double distanceToShape(Double2D coord)
+	{
+		return Utility.distanceToOrientedBox(coord, location, orientation2D(), Constants.OBSTACLE_LENGTH, Constants.OBSTACLE_WIDTH);
+	}
+	
 	/**
 	 * This method searches through the supplied Bag of vehicles and tests to see whether they 
 	 * are very close (within 20 + OBSTACLE_LENGTH) to the DumbCar.  If so, it calculates the 
@@ -424,6 +523,11 @@ public class DumbCar extends Car {
 		Car currentCar;
 		double tempDist;
 		
+		// Only the vehicles which are in range need to be checked, so use the index for the DumbCars
+		if (cars == sim.cars) {
+			cars = sim.getCarIndex().getVehiclesWithinDistance(location, 20 + Constants.OBSTACLE_LENGTH);
+		}
+		
 		// Loop through all the other cars, and check the separation
 		for (int c=0; c<cars.size(); c++)
 		{
@@ -478,4 +582,23 @@ public class DumbCar extends Car {
 		
 		return retVal;
 	}	
+	
+	/**
+	 * The Shape of the car, and the location and orientation it was built for.
+	 */
+	private static class ShapeCache
+	{
+		public final double x;
+		public final double y;
+		public final double orientation;
+		public final Shape shape;
+		
+		public ShapeCache(double inX, double inY, double inOrientation, Shape inShape)
+		{
+			x = inX;
+			y = inY;
+			orientation = inOrientation;
+			shape = inShape;
+		}
+	}
 }
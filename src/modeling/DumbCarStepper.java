@@ -0,0 +1,115 @@
+package modeling;
+
+import sim.engine.ParallelSequence;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+
+/**
+ * @author hh940
+ *
+ * Steppable which steps all of the DumbCars in COModel.cars in two phases, used in place of scheduling each
+ * DumbCar separately when the two-phase car update is selected (see COModel.setTwoPhaseCarUpdate).
+ *
+ * In the first phase every DumbCar senses the simulation (whether it is still on the road, and how far it is
+ * from the nearest vehicle in its lane, see DumbCar.sense) while no vehicle is moving, so every car sees the
+ * state left by the previous step.  As the cars don't change anything during this phase, it can be shared
+ * between several threads.  In the second phase the cars decide and move one at a time, in the order of
+ * COModel.cars, using the readings from the first phase; anything which is shared between the cars (e.g.
+ * junction occupancy, IDs and the random number generator) is only used in this phase.  The results are
+ * therefore the same whatever the number of threads.
+ *
+ * Note that the results are not the same as when the DumbCars are scheduled separately, as each car then
+ * senses the cars which have already moved during the current step.
+ */
+public class DumbCarStepper implements Steppable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final int noThreads;
+	private DumbCar[] current = new DumbCar[0]; // The cars being stepped during the current step
+	private ParallelSequence sensePhase = null; // Built on first use, when more than one thread is used
+
+	/**
+	 * Constructor.
+	 * @param inNoThreads (int - number of threads to use for the sensing phase, 1 to sense in this thread)
+	 */
+	public DumbCarStepper(int inNoThreads)
+	{
+		noThreads = Math.max(1, inNoThreads);
+	}
+
+	/**
+	 * Step all of the DumbCars which are in the simulation at the start of the step (cars which are added
+	 * during the step will be stepped from the next step onwards, as if they had been put on the schedule).
+	 * @param state (SimState - access to the simulation environment)
+	 */
+	public void step(SimState state)
+	{
+		COModel sim = (COModel) state;
+
+		current = new DumbCar[sim.cars.size()];
+		for (int c = 0; c < current.length; c++) {
+			current[c] = (DumbCar) sim.cars.get(c);
+		}
+
+		// Phase 1 - sense
+		sim.getProfiler().enter(StepProfiler.Phase.DUMBCAR_STEP);
+		sim.prepareForParallelSensing();
+
+		if (noThreads > 1 && current.length > 1)
+		{
+			if (sensePhase == null) {
+				sensePhase = new ParallelSequence(buildSensors());
+			}
+
+			sensePhase.step(state);
+		} else {
+			senseCars(sim, 0, 1);
+		}
+		
+		sim.getProfiler().exit(StepProfiler.Phase.DUMBCAR_STEP);
+
+		// Phase 2 - decide and move
+		for (int c = 0; c < current.length; c++) {
+			current[c].step(state);
+		}
+	}
+
+	/**
+	 * Build one Steppable per thread for the sensing phase.  Sensor t senses cars t, t+noThreads, t+2*noThreads
+	 * etc. of the current step, so the sensors don't need to be rebuilt when the number of cars changes.
+	 * @return Steppable[] (the sensors, one per thread)
+	 */
+	private Steppable[] buildSensors()
+	{
+		Steppable[] sensors = new Steppable[noThreads];
+
+		for (int t = 0; t < noThreads; t++)
+		{
+			final int first = t;
+			sensors[t] = new Steppable() {
+				private static final long serialVersionUID = 1L;
+
+				public void step(SimState state)
+				{
+					senseCars((COModel) state, first, noThreads);
+				}
+			};
+		}
+
+		return sensors;
+	}
+
+	/**
+	 * Run the sensing phase for cars first, first+stride, first+2*stride etc. of the current step.
+	 * @param sim (COModel - access to the simulation environment)
+	 * @param first (int - index of the first car to sense)
+	 * @param stride (int - gap between the cars to sense)
+	 */
+	private void senseCars(COModel sim, int first, int stride)
+	{
+		for (int c = first; c < current.length; c += stride) {
+			current[c].sense(sim);
+		}
+	}
+}
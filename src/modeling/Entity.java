@@ -12,7 +12,7 @@ public class Entity implements Steppable, Constants
 {
 	private static final long serialVersionUID = 1L;
 	
-	protected final int ID;
+	protected int ID; // Not final, as a pooled DumbCar is given a new ID when it is reused (see Car.reinitialise)
 	protected final int type;	
 	protected Double2D location;
 	protected boolean isSchedulable;
@@ -73,4 +73,11 @@ public class Entity implements Steppable, Constants
 	 * @return int (unique ID of the Entity)
 	 */
 	public int getID() {return ID;}
+	
+	/**
+	 * Give the Entity a new ID.  This must only be used when the Entity is not in the simulation (or any of
+	 * the registries of Entities), i.e. when an Entity from a pool is being reused.
+	 * @param idNo (int - new unique ID for the Entity)
+	 */
+	protected void setID(int idNo) {ID = idNo;}
 }
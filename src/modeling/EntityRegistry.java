@@ -0,0 +1,185 @@
+package modeling;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import sim.util.Bag;
+
+/**
+ * @author hh940
+ *
+ * Registry of Entities indexed by their ID, so that (for example) the current target or waypoint of a
+ * vehicle can be found without looping through every object in the simulation.  IDs are handed out in
+ * sequence by COModel.getNewID, so the Entities are stored in an array indexed directly by ID, which is
+ * grown as required.  The first Entity of type TTARGET to be registered is also recorded, as there is
+ * only expected to be one target in the simulation.
+ *
+ * IDs are normally unique, but fault #0 deliberately gives a new Waypoint the same ID as an earlier Entity,
+ * so the registry counts the Entities registered with each ID.  Where several Entities share an ID, get
+ * can't say which of them the caller wants, so callers should check getCount and fall back to their
+ * original search in that (rare) case.  To support that search, the registry also keeps all of its Entities
+ * in a Bag (see getAll), in the same order as MASON keeps the objects in a Continuous2D: new Entities are
+ * added to the end, and a removed Entity is replaced by the last one in the Bag.
+ */
+public class EntityRegistry {
+
+	private Entity[] entities = new Entity[64];
+	private int[] counts = new int[64];
+	private Entity target = null;
+	private int noEntities = 0;
+	private Bag all = new Bag(); // Every registered Entity, in Continuous2D.getAllObjects order
+	private IdentityHashMap<Entity, Integer> allIndex = new IdentityHashMap<Entity, Integer>(); // Index of each Entity in all
+
+	/**
+	 * Constructor.  Create an empty registry.
+	 */
+	public EntityRegistry()
+	{
+		// Nothing more to do
+	}
+
+	/**
+	 * Constructor.  Create a registry containing all of the Entities in the supplied Bag, registered in Bag
+	 * order (so that the target is the first TTARGET in the Bag).
+	 * @param inEntities (Bag - the Entities to register)
+	 */
+	public EntityRegistry(Bag inEntities)
+	{
+		for (int i = 0; i < inEntities.size(); i++) {
+			register((Entity) inEntities.get(i));
+		}
+	}
+
+	/**
+	 * Add the supplied Entity to the registry, replacing any Entity which was previously registered with
+	 * the same ID.  Entities with a negative (i.e. illegal) ID, and Entities which are already registered, are
+	 * ignored.
+	 * @param e (Entity - the Entity to register)
+	 */
+	public void register(Entity e)
+	{
+		int id = e.getID();
+		if (id < 0 || allIndex.containsKey(e) == true) {
+			return;
+		}
+
+		if (id >= entities.length) {
+			entities = Arrays.copyOf(entities, Math.max(entities.length * 2, id + 1));
+			counts = Arrays.copyOf(counts, entities.length);
+		}
+
+		entities[id] = e;
+		counts[id]++;
+		noEntities++;
+		allIndex.put(e, all.size());
+		all.add(e);
+
+		if (target == null && e.getType() == Constants.TTARGET) {
+			target = e;
+		}
+	}
+
+	/**
+	 * Remove the supplied Entity from the registry, if it is registered.
+	 * @param e (Entity - the Entity to remove)
+	 * @return boolean (true if the Entity was registered, and has been removed)
+	 */
+	public boolean unregister(Entity e)
+	{
+		Integer index = allIndex.remove(e);
+		if (index == null) {
+			return false;
+		}
+
+		// Fill the gap with the last Entity in the Bag, as Bag.remove does
+		all.remove(index.intValue());
+		if (index.intValue() < all.size()) {
+			allIndex.put((Entity) all.get(index.intValue()), index);
+		}
+
+		int id = e.getID();
+
+		if (entities[id] == e) {
+			entities[id] = null;
+		}
+		counts[id]--;
+		noEntities--;
+
+		if (target == e) {
+			target = null;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return true if the supplied Entity is in the registry.
+	 * @param e (Entity - the Entity to look for)
+	 * @return boolean (true if the Entity is registered)
+	 */
+	public boolean contains(Entity e)
+	{
+		return allIndex.containsKey(e);
+	}
+
+	/**
+	 * Return the Entity with the supplied ID.  If more than one Entity has been registered with this ID (see
+	 * getCount), this is the most recently registered one, or null if that one has since been removed.
+	 * @param id (int - the ID of the Entity required)
+	 * @return Entity (the Entity with this ID, or null if there isn't one in the registry)
+	 */
+	public Entity get(int id)
+	{
+		if (id < 0 || id >= entities.length) {
+			return null;
+		}
+
+		return entities[id];
+	}
+
+	/**
+	 * Return the number of Entities currently registered with the supplied ID (normally 0 or 1).
+	 * @param id (int - the ID to check)
+	 * @return int (number of registered Entities with this ID)
+	 */
+	public int getCount(int id)
+	{
+		if (id < 0 || id >= counts.length) {
+			return 0;
+		}
+
+		return counts[id];
+	}
+
+	/**
+	 * Return the target i.e. the first Entity of type TTARGET which was registered (and is still registered).
+	 * @return Entity (the target, or null if no target has been registered)
+	 */
+	public Entity getTarget() { return target; }
+
+	/**
+	 * Return the number of Entities currently in the registry.
+	 * @return int (number of Entities in the registry)
+	 */
+	public int getNoEntities() { return noEntities; }
+
+	/**
+	 * Return all of the Entities in the registry, in the order described above.  The Bag is owned by the
+	 * registry, so it must not be modified by the caller.
+	 * @return Bag (all of the registered Entities)
+	 */
+	public Bag getAll() { return all; }
+
+	/**
+	 * Remove all of the Entities from the registry.
+	 */
+	public void clear()
+	{
+		Arrays.fill(entities, null);
+		Arrays.fill(counts, 0);
+		target = null;
+		noEntities = 0;
+		all.clear();
+		allIndex.clear();
+	}
+}
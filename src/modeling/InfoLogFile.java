@@ -17,12 +17,27 @@ public class InfoLogFile {
 	private File infoLog = new File(Constants.outFilePath + "InfoLog.txt"); // Specify the name and location of the file
 	private COModel sim;
 	private PrintStream ps;
+	private StepProfiler profiler = null; // Times the writes to the file, if set (see setProfiler)
 	
 	/**
 	 * Constructor - create a new output stream at the required location/name, and 
 	 * catch an exception if the file cannot be found.
 	 */
 	public InfoLogFile(){ 
+		this(true);
+	}
+	
+	/**
+	 * Constructor - as above, but if wantOutputFile is false, no file is created, and the lines which
+	 * are logged are discarded.
+	 * @param wantOutputFile (boolean - true to write the log to the file, false to discard it)
+	 */
+	public InfoLogFile(boolean wantOutputFile){ 
+		
+		if (wantOutputFile == false) {
+			ps = Utility.getNullPrintStream();
+			return;
+		}
 				
 		try{
 			ps= new PrintStream(new FileOutputStream(infoLog));
@@ -40,7 +55,24 @@ public class InfoLogFile {
 	 */
 	public void addLog(String str)
 	{
+		if (profiler != null) {
+			profiler.enter(StepProfiler.Phase.LOGGING);
+		}
+		
 		ps.println(str); 
+		
+		if (profiler != null) {
+			profiler.exit(StepProfiler.Phase.LOGGING);
+		}
+	}
+	
+	/**
+	 * Set the profiler which should time the writes to the file (see StepProfiler).
+	 * @param inProfiler (StepProfiler - the profiler to use, or null for none)
+	 */
+	public void setProfiler(StepProfiler inProfiler)
+	{
+		profiler = inProfiler;
 	}
 	
 	/** 
@@ -35,6 +35,34 @@ public class Junction extends Entity
 	// Store the ID of the vehicle who has occupied the junction (used to validate unOccupy requests)
 	private long occupierID = 0;
 	
+	// Shapes of the junction, and of its approaches and exits.  Junctions never move, so these are built once by the 
+	// constructor, rather than each time a vehicle checks whether it is in the junction.
+	private final Rectangle2D.Double junctionArea;
+	private final Path2D.Double junctionApproach;
+	private final Path2D.Double junctionExit;
+	private final Rectangle2D.Double junctionBounds; // Encloses the junction, approaches and exits (see JunctionIndex)
+	
+	// The exits are always checked in this order (and numbered 1-4 in this order by getRandomExit)
+	private static final int[] EXIT_ARMS = {T_EAST, T_SOUTH, T_WEST, T_NORTH};
+	private static final UGV_Direction[] EXIT_DIRECTIONS = {UGV_Direction.EAST, UGV_Direction.SOUTH, UGV_Direction.WEST, UGV_Direction.NORTH};
+	
+	// Probability of the UGV choosing an exit it has already taken n times, 0.8^n (see getJunctionExit)
+	private static final double[] EXIT_PROBABILITIES = buildExitProbabilities(64);
+	
+	// Maximum number of passes through the exits when they are chosen with the retry loops (see getJunctionExit)
+	private static final int MAX_EXIT_PASSES = 1000;
+	
+	// The mid-point of each exit lane, and the locations the UGV and DumbCars aim for (offset out of the junction), 
+	// in the order of EXIT_ARMS.  These are built once by the constructor.
+	private final Double2D[] exitLanes = new Double2D[EXIT_ARMS.length];
+	private final Double2D[] ugvExits = new Double2D[EXIT_ARMS.length];
+	private final Double2D[] carExits = new Double2D[EXIT_ARMS.length];
+	private final int noArms; // Number of arms with a non-zero length
+	
+	// Number of steps after which an occupied junction is released, when the UGV or a DumbCar tries to enter it
+	public static final int UGV_OCCUPANCY_TIMEOUT = 80;
+	public static final int DUMBCAR_OCCUPANCY_TIMEOUT = 30;
+	
 	/**
 	 * Constructor.  Create the Entity, set its location, and populated the lengthDir array with either
 	 * the length of road extending in each direction from the junction, or jctApproachLen if the road
@@ -56,6 +84,24 @@ public class Junction extends Entity
 		this.lengthDir[T_EAST] = Math.min(eDir, jctApproachLen);
 		this.lengthDir[T_SOUTH] = Math.min(sDir, jctApproachLen);
 		this.lengthDir[T_WEST] = Math.min(wDir, jctApproachLen);
+		
+		junctionArea = buildJunctionArea();
+		junctionApproach = buildJunctionApproach();
+		junctionExit = buildJunctionExit();
+		
+		junctionBounds = new Rectangle2D.Double();
+		Rectangle2D.union(junctionApproach.getBounds2D(), junctionExit.getBounds2D(), junctionBounds);
+		Rectangle2D.union(junctionArea, junctionBounds, junctionBounds);
+		
+		buildExits(1.5, 1); // Offsets to move the exit locations outside of the junction (see getJunctionExit and getRandomExit)
+		
+		int armCount = 0;
+		for (int e = 0; e < EXIT_ARMS.length; e++) {
+			if (lengthDir[EXIT_ARMS[e]] > 0) {
+				armCount++;
+			}
+		}
+		noArms = armCount;
 	}
 	
 	/**
@@ -65,9 +111,8 @@ public class Junction extends Entity
 	 */
 	public boolean inShape(Double2D coord)
 	{
-		// Construct a rectangle that is the size of the whole road area (rather than just the centre line)
-		// and check whether it contains the supplied coordinates.
-		Rectangle2D.Double junctionArea = getJunctionArea();
+		// Check whether the rectangle that is the size of the whole road area (rather than just the centre line)
+		// contains the supplied coordinates.
 		return Utility.betterContains(junctionArea, coord);
 	}	
 	
@@ -78,8 +123,7 @@ public class Junction extends Entity
 	 */
 	public boolean inApproach(Double2D coord)
 	{
-		// Construct a Path2D that is the size of the whole junction approach area
-		Path2D.Double junctionApproach = getJunctionApproach();
+		// Check the Path2D that is the size of the whole junction approach area
 		return junctionApproach.contains(coord.x, coord.y);
 	}
 	
@@ -91,16 +135,52 @@ public class Junction extends Entity
 	 */
 	public boolean inExit(Double2D coord)
 	{
-		// Construct a Path2D that is the size of the whole junction exit area
-		Path2D.Double junctionExit = getJunctionExit();
+		// Check the Path2D that is the size of the whole junction exit area
 		return junctionExit.contains(coord.x, coord.y);
 	}
 	
 	/**
 	 *  Method returns a Rectangle2D which represents the internal junction area (rather than just the centre point)
-	 *  @return Rectangle2D.Double (returns a Rectangle2D which represents the shape of the junction area)
+	 *  @return Rectangle2D.Double (returns a copy of the Rectangle2D which represents the shape of the junction area)
 	 */
 	public Rectangle2D.Double getJunctionArea()
+	{
+		return (Rectangle2D.Double) junctionArea.clone();
+	}
+	
+	/**
+	 *  Method returns a Path2D which represents the junction approaches (see buildJunctionApproach)
+	 *  @return Path2D.Double (returns a copy of the Path2D which represents the area of the junction and junction approaches)
+	 */
+	public Path2D.Double getJunctionApproach()
+	{
+		return (Path2D.Double) junctionApproach.clone();
+	}
+	
+	/**
+	 *  Method returns a Path2D which represents the junction exits (see buildJunctionExit)
+	 *  @return Path2D.Double (returns a copy of the Path2D which represents the area of the junction and junction exits)
+	 */
+	public Path2D.Double getJunctionExit()
+	{
+		return (Path2D.Double) junctionExit.clone();
+	}
+	
+	/**
+	 *  Method returns a Rectangle2D which encloses the junction, and all of its approaches and exits, so a location 
+	 *  outside this rectangle cannot be in the junction, approaches or exits
+	 *  @return Rectangle2D.Double (returns a copy of the bounding rectangle)
+	 */
+	public Rectangle2D.Double getJunctionBounds()
+	{
+		return (Rectangle2D.Double) junctionBounds.clone();
+	}
+	
+	/**
+	 *  Build the Rectangle2D which represents the internal junction area (called once by the constructor)
+	 *  @return Rectangle2D.Double (returns a Rectangle2D which represents the shape of the junction area)
+	 */
+	private Rectangle2D.Double buildJunctionArea()
 	{
 		// Calculate the coordinates of the upper left corner of the rectangle
 		return new Rectangle2D.Double((location.x-(Road.roadWidth/2)), (location.y-(Road.roadWidth/2)), Road.roadWidth, Road.roadWidth);	
@@ -112,10 +192,10 @@ public class Junction extends Entity
 	 *  in each direction.  If the arm length is zero, the path is not extended to include a junction approach
 	 *  in that direction.  The junction approach length is limited to jctApproachLen or the length of the 
 	 *  junction arm (if that is shorter).  Only includes the actual approach lanes, rather than including the 
-	 *  lanes that are leaving the junction.
+	 *  lanes that are leaving the junction.  Called once by the constructor.
 	 *  @return Path2D.Double (return a Path2D.Double which represents the area of the junction and junction approaches)
 	 */	
-	public Path2D.Double getJunctionApproach()
+	private Path2D.Double buildJunctionApproach()
 	{
 		Path2D.Double junctionApproach = new Path2D.Double();
 		
@@ -174,10 +254,10 @@ public class Junction extends Entity
 	 *  in each direction.  If the arm length is zero, the path is not extended to include a junction exit
 	 *  in that direction.  The junction exit length is limited to jctApproachLen or the length of the 
 	 *  junction arm (if that is shorter).  Only includes the actual exit lanes, rather than including the 
-	 *  lanes that are entering the junction.
+	 *  lanes that are entering the junction.  Called once by the constructor.
 	 *  @return Path2D.Double (return a Path2D.Double which represents the area of the junction and junction exits)
 	 */	
-	public Path2D.Double getJunctionExit()
+	private Path2D.Double buildJunctionExit()
 	{
 		Path2D.Double junctionExit = new Path2D.Double();
 		
@@ -244,7 +324,9 @@ public class Junction extends Entity
 	 *  but with reducing probability (the more times they have been visited, the less likely they are to
 	 *  be chosen again.  If more than one exit is identified as a possibility during an iteration, those 
 	 *  which bring the UGV closer (crow-flies) to the target are prioritised; loop continues until an exit 
-	 *  is found.  
+	 *  is found.  The outcome of the loop is now worked out with a single random number (see chooseUGVExit),
+	 *  unless COModel.getCompatibleMode is set, when the loop itself is used so that seeds reproduce
+	 *  the runs of earlier versions.
 	 *  
 	 *  The junction history stores a count of the number of times an exit
 	 *  has been chosen so that the probability used on future iterations (as ii) will reduce the
@@ -269,8 +351,9 @@ public class Junction extends Entity
 		{	
 			// Check the time that the occupied flag was set and if it has exceeded a maximum time, then clear 
 			// the occupied flag and allow the method to continue below.  
-			if (sim.schedule.getSteps() > (occupiedTime + 80)) // Timeout after 80s
+			if (sim.schedule.getSteps() > (occupiedTime + UGV_OCCUPANCY_TIMEOUT)) // Timeout after 80s
 			{
+				addTimeoutEvent(theUGV, "UGV", sim);
 				occupierID = 0;
 				occupied = false;
 				occupiedTime = 0;
@@ -295,103 +378,167 @@ public class Junction extends Entity
 		theUGV.setJctID(this.ID);
 		theUGV.stopWaiting(); // Doesn't matter if the vehicle wasn't actually waiting or not, call this anyway
 		
-		double x = location.x;
-		double y = location.y;
-		double laneWidth = Road.roadWidth/2;
-		final double offset = 1.5; // Offset to move location outside of junction, distance is set a little 
-		                           // further so that WP doesn't get 'eaten' prematurely
-		
-		int [][] junctionHistory = theUGV.getJunctionHistory(); // Read in the junction history array from the UGV
-		
-		Double2D exitCoords = new Double2D(-1,-1);
-		Double2D tempCoords = new Double2D(0,0);
-		int loopCount = 0;
-		UGV_Direction selected = UGV_Direction.NORTH;
+		int [] history = theUGV.getJunctionHistory()[idx]; // Read in the junction history of this junction from the UGV
 		
-		// Loop until we find valid exit coordinates, or we reach the loop timeout at 1000 steps, note that we
-		// use the supplied idx parameter, which is the Bag.get(idx).  This is what we use in the junctionHistory
+		// Note that we use the supplied idx parameter, which is the Bag.get(idx).  This is what we use in the junctionHistory
 		// array for identifying the junction as it keeps the array size to be the number of junctions, rather
 		// than a substantially larger array if we wanted to index by junction identifier.  NOTE: because we do not
 		// change the elements in the Junctions bag, the locations (idx) in the Bag should remain constant. If we 
 		// were adding/removing junctions, then we would no longer be able to guarantee the items would be in the 
 		// same places (see sim.util.Bag in MASON documentation).
-		while (exitCoords.x == -1 && exitCoords.y == -1 && loopCount < 1000) {
+		int exit;
+		if (sim.getCompatibleMode() == true) {
+			exit = chooseUGVExitByPasses(target, history, sim);
+		} else {
+			exit = chooseUGVExit(target, history, sim);
+		}
 		
-			// Check the EB exit. If we have not visited this direction at this junction yet, or there
-			// are no junctions which haven't been visited and a biased coin flip selects this one.
-			if (lengthDir[T_EAST] > 0 && ((junctionHistory[idx][UGV_Direction.EAST.ordinal()] == 0) || 
-			     (loopCount > 0 && (sim.random.nextDouble() < (Math.pow(0.8, (junctionHistory[idx][UGV_Direction.EAST.ordinal()]))))))) 
+		// Check for a valid return value and if so, update the junctionHistory array so that we 
+		// know we've just visited this junction exit (stores a count of the number of visits)
+		if (exit == -1)
+		{
+			return new jctExitDirInfo(new Double2D(-1, -1), Utility.getDirectionDeg(UGV_Direction.NORTH));
+		}
+		
+		theUGV.updateJunctionHistory(idx, EXIT_DIRECTIONS[exit]);
+		
+		return new jctExitDirInfo(ugvExits[exit], Utility.getDirectionDeg(EXIT_DIRECTIONS[exit])); // Return the location and bearing we are aiming for
+	}
+	
+	/**
+	 * Choose the exit for the UGV with the original retry loop, which uses the same random numbers as earlier versions of the
+	 * simulation (see COModel.setCompatibleMode).  On the first pass, the exits which have not been visited are
+	 * candidates; on each later pass, a random number is drawn for each exit, and an exit which has been visited n times is a 
+	 * candidate with probability 0.8^n.  The loop ends after the first pass with any candidates, and the candidate which brings
+	 * the UGV closest to the target is chosen.
+	 * @param target (Double2D - coordinates of the UGV's target)
+	 * @param history (int[] - number of times the UGV has taken each exit of this junction, indexed by UGV_Direction)
+	 * @param sim (COModel - access to the random number generator)
+	 * @return int (the exit, as an index into EXIT_ARMS, or -1 if no exit was chosen)
+	 */
+	private int chooseUGVExitByPasses(Double2D target, int[] history, COModel sim)
+	{
+		int selected = -1;
+		
+		for (int loopCount = 0; selected == -1 && loopCount < MAX_EXIT_PASSES; loopCount++)
+		{
+			for (int e = 0; e < EXIT_ARMS.length; e++)
 			{
-				tempCoords = new Double2D(x+laneWidth, y-(laneWidth/2)); // Mid-point of exit lane
+				// If we have not visited this direction at this junction yet, or there are no junctions which haven't 
+				// been visited and a biased coin flip selects this one.
+				int noVisits = history[EXIT_DIRECTIONS[e].ordinal()];
 				
-				// If we haven't found a valid exit yet, or this exit location will bring us closer to our
-				// target than the one we have previously selected, then update our exitCoords to this new
-				// exit location (plus an offset into the lane).  Set this direction as selected.
-				if ((exitCoords.x == -1 && exitCoords.y == -1) || (exitCoords.distance(target) > tempCoords.distance(target))) {
-					exitCoords = new Double2D(tempCoords.x + offset, tempCoords.y);
-					selected = UGV_Direction.EAST;
+				if (lengthDir[EXIT_ARMS[e]] > 0 && (noVisits == 0 || (loopCount > 0 && sim.random.nextDouble() < getExitProbability(noVisits))))
+				{
+					// If we haven't found a valid exit yet, or this exit location will bring us closer to our
+					// target than the one we have previously selected, then select this one.
+					if (selected == -1 || ugvExits[selected].distance(target) > exitLanes[e].distance(target)) {
+						selected = e;
+					}
 				}
 			}
-
-			// Check the SB exit. If we have not visited this direction at this junction yet, or there
-			// are no junctions which haven't been visited and a biased coin flip selects this one.
-			if (lengthDir[T_SOUTH] > 0 && ((junctionHistory[idx][UGV_Direction.SOUTH.ordinal()] == 0) || 
-				  (loopCount > 0 && (sim.random.nextDouble() < (Math.pow(0.8, (junctionHistory[idx][UGV_Direction.SOUTH.ordinal()]))))))) 
-			{
-				tempCoords = new Double2D(x+(laneWidth/2), y+laneWidth); // Mid-point of exit lane
-
-				// If we haven't found a valid exit yet, or this exit location will bring us closer to our
-				// target than the one we have previously selected, then update our exitCoords to this new
-				// exit location (plus an offset into the lane).  Set this direction as selected.
-				if ((exitCoords.x == -1 && exitCoords.y == -1) || (exitCoords.distance(target) > tempCoords.distance(target))) {
-					exitCoords = new Double2D(tempCoords.x, tempCoords.y + offset);
-					selected = UGV_Direction.SOUTH;
-				}
-			}
-
-			// Check the WB exit. If we have not visited this direction at this junction yet, or there
-			// are no junctions which haven't been visited and a biased coin flip selects this one.
-			if (lengthDir[T_WEST] > 0 && ((junctionHistory[idx][UGV_Direction.WEST.ordinal()] == 0) || 
-				  (loopCount > 0 && (sim.random.nextDouble() < (Math.pow(0.8, (junctionHistory[idx][UGV_Direction.WEST.ordinal()]))))))) 
+		}
+		
+		return selected;
+	}
+	
+	/**
+	 * Choose the exit for the UGV with a single random number, with the same probabilities as chooseUGVExitByPasses.  If
+	 * any exit has not been visited, the loop would end on its first pass without drawing any random numbers, so the same
+	 * exit is chosen.  Otherwise, the probability of each exit being chosen is worked out from the probability of each set
+	 * of exits being the candidates on a pass (for up to four exits, there are at most 16 sets), given that there is at least
+	 * one candidate, and that this happens before the loop times out.  The exits are then chosen with one draw.
+	 * @param target (Double2D - coordinates of the UGV's target)
+	 * @param history (int[] - number of times the UGV has taken each exit of this junction, indexed by UGV_Direction)
+	 * @param sim (COModel - access to the random number generator)
+	 * @return int (the exit, as an index into EXIT_ARMS, or -1 if no exit was chosen)
+	 */
+	private int chooseUGVExit(Double2D target, int[] history, COModel sim)
+	{
+		int[] exits = new int[EXIT_ARMS.length]; // The exits which are present, in order
+		double[] probability = new double[EXIT_ARMS.length]; // Probability of each of them being a candidate on a pass
+		int noExits = 0;
+		int selected = -1;
+		
+		for (int e = 0; e < EXIT_ARMS.length; e++)
+		{
+			if (lengthDir[EXIT_ARMS[e]] > 0)
 			{
-				tempCoords = new Double2D(x-laneWidth, y+(laneWidth/2)); // Mid-point of exit lane
-
-				// If we haven't found a valid exit yet, or this exit location will bring us closer to our
-				// target than the one we have previously selected, then update our exitCoords to this new
-				// exit location (plus an offset into the lane).  Set this direction as selected.
-				if ((exitCoords.x == -1 && exitCoords.y == -1) || (exitCoords.distance(target) > tempCoords.distance(target))) {
-					exitCoords = new Double2D(tempCoords.x - offset, tempCoords.y);
-					selected = UGV_Direction.WEST;
+				int noVisits = history[EXIT_DIRECTIONS[e].ordinal()];
+				
+				// Exits which have not been visited are chosen on the first pass
+				if (noVisits == 0 && (selected == -1 || ugvExits[selected].distance(target) > exitLanes[e].distance(target))) {
+					selected = e;
 				}
+				
+				exits[noExits] = e;
+				probability[noExits] = getExitProbability(noVisits);
+				noExits++;
 			}
-
-			// Check the NB exit. If we have not visited this direction at this junction yet, or there
-			// are no junctions which haven't been visited and a biased coin flip selects this one.
-			if (lengthDir[T_NORTH] > 0 && ((junctionHistory[idx][UGV_Direction.NORTH.ordinal()] == 0) || 
-				  (loopCount > 0 && (sim.random.nextDouble() < (Math.pow(0.8, (junctionHistory[idx][UGV_Direction.NORTH.ordinal()]))))))) 
+		}
+		
+		if (selected != -1 || noExits == 0) {
+			return selected;
+		}
+		
+		// Work out the probability of each exit being chosen on a pass, from each set of candidates
+		double[] chosen = new double[EXIT_ARMS.length];
+		double noCandidates = 1; // Probability of there being no candidates on a pass
+		
+		for (int i = 0; i < noExits; i++) {
+			noCandidates *= (1 - probability[i]);
+		}
+		
+		for (int set = 1; set < (1 << noExits); set++)
+		{
+			double setProbability = 1;
+			int setChoice = -1;
+			
+			for (int i = 0; i < noExits; i++)
 			{
-				tempCoords = new Double2D(x-(laneWidth/2), y-laneWidth); // Mid-point of exit lane
-
-				// If we haven't found a valid exit yet, or this exit location will bring us closer to our
-				// target than the one we have previously selected, then update our exitCoords to this new
-				// exit location (plus an offset into the lane).  Set this direction as selected.
-				if ((exitCoords.x == -1 && exitCoords.y == -1) || (exitCoords.distance(target) > tempCoords.distance(target))) {
-					exitCoords = new Double2D(tempCoords.x, tempCoords.y - offset);
-					selected = UGV_Direction.NORTH;
+				if ((set & (1 << i)) != 0)
+				{
+					setProbability *= probability[i];
+					
+					if (setChoice == -1 || ugvExits[setChoice].distance(target) > exitLanes[exits[i]].distance(target)) {
+						setChoice = exits[i];
+					}
+				} else {
+					setProbability *= (1 - probability[i]);
 				}
 			}
 			
-			loopCount ++;
+			chosen[setChoice] += setProbability;
 		}
 		
-		// Check for a valid return value and if so, update the junctionHistory array so that we 
-		// know we've just visited this junction exit (stores a count of the number of visits)
-		if (exitCoords.x != -1)
+		// The retry loop has MAX_EXIT_PASSES-1 passes after the first in which to find a candidate, so the chance of 
+		// each exit being chosen is its chance on a pass, given there is a candidate, scaled by the chance of finding one
+		if (noCandidates >= 1) {
+			return -1; // The loop would always time out
+		}
+		
+		double found = 1 - Math.pow(noCandidates, MAX_EXIT_PASSES - 1);
+		double draw = sim.random.nextDouble();
+		double cumulative = 0;
+		
+		if (draw >= found) {
+			return -1; // The loop would have timed out
+		}
+		
+		for (int e = 0; e < EXIT_ARMS.length; e++)
 		{
-			theUGV.updateJunctionHistory(idx, selected);
+			cumulative += chosen[e] * found / (1 - noCandidates);
+			
+			if (chosen[e] > 0) {
+				selected = e; // In case the probabilities don't quite add up
+			}
+			
+			if (draw < cumulative) {
+				return e;
+			}
 		}
 		
-		return new jctExitDirInfo(exitCoords, Utility.getDirectionDeg(selected)); // Return the location and bearing we are aiming for
+		return selected;
 	}
 	
 	/**
@@ -399,7 +546,8 @@ public class Junction extends Entity
 	 *  This is chosen at random, and can return the adjacent (and opposite direction) for a U-turn.  
 	 *  The location returned is slightly outside of the junction so that 
 	 *  upon 'collection' by the Car, the Car is no longer in the junction.
-	 *  Loop continues until a valid exit is chosen.  Where the junction is actually a dead end, the
+	 *  Each available exit is equally likely to be chosen (with one random number, or with the original
+	 *  retry loop if COModel.getCompatibleMode is set).  Where the junction is actually a dead end, the
 	 *  vehicle is permitted to continue straight ahead and leave the road network.
 	 *  @param theCar (DumbCar - the Car which has arrived at the junction)
 	 *  @param idx (int - index used to access this Junction in the Junctions Bag)
@@ -414,8 +562,9 @@ public class Junction extends Entity
 			
 			// Check the time that the occupied flag was set and if it has exceeded a maximum time, then clear 
 			// the occupied flag and allow the method to continue below.  
-			if (sim.schedule.getSteps() > (occupiedTime + 30)) // Reset junction occupancy to zero after 30 steps (more aggressive than UGV)
+			if (sim.schedule.getSteps() > (occupiedTime + DUMBCAR_OCCUPANCY_TIMEOUT)) // Reset junction occupancy to zero after 30 steps (more aggressive than UGV)
 			{
+				addTimeoutEvent(theCar, "DumbCar", sim);
 				occupierID = 0;
 				occupied = false;
 				occupiedTime = 0;
@@ -440,81 +589,133 @@ public class Junction extends Entity
 		theCar.setJctID(this.ID);
 		theCar.stopWaiting(); // Doesn't matter if the vehicle wasn't actually waiting or not, call this anyway
 		
-		double x = location.x;
-		double y = location.y;
-		double laneWidth = Road.roadWidth/2;
-		final double offset = 1; // Offset to move location outside of junction
-		
-		Double2D exitCoords = new Double2D(-1,-1);
-		Double2D tempCoords = new Double2D(0,0);
-		int loopCount = 0;
-		
 		// Actually need to know which direction the Car is facing in order to
 		// ensure that it can leave the junction at a dead-end, but that it cannot 
 		// perform a u-turn to exit from a dead-end at which it has only just joined.
 		UGV_Direction carDir = Utility.getDirection(theCar.getDirection());
 		
-		// Work out if this is a dead-end (used to permit the dead-end to be used as an exit by a DumbCar)
-		int dirCount = 0;
-		if (lengthDir[T_EAST] > 0) {
-			dirCount++;
-		}
+		// Work out which exits are available: the arms of the junction, or if this is a dead-end, the direction the vehicle 
+		// is heading towards (this permits the dead-end to be used as an exit by a DumbCar)
+		boolean[] available = new boolean[EXIT_ARMS.length];
+		int noAvailable = 0;
 		
-		if (lengthDir[T_SOUTH] > 0) {
-			dirCount++;
+		for (int e = 0; e < EXIT_ARMS.length; e++)
+		{
+			available[e] = (lengthDir[EXIT_ARMS[e]] > 0 || (noArms == 1 && lengthDir[EXIT_ARMS[e]] == 0 && carDir == EXIT_DIRECTIONS[e]));
+			
+			if (available[e] == true) {
+				noAvailable++;
+			}
 		}
 		
-		if (lengthDir[T_WEST] > 0) {
-			dirCount++;
-		}
+		int exit = -1;
 		
-		if (lengthDir[T_NORTH] > 0) {
-			dirCount++;
-		}		
+		if (sim.getCompatibleMode() == true)
+		{
+			// Loop until we have chosen a direction that is actually present: choose a number at random, which will 
+			// specify the nth direction (in the ordering) - this is used to effect the random choice, although it has to 
+			// correspond to the direction chosen being available (that's why we need lots of iterations, to maximise our 
+			// chances of finding a match)
+			for (int loopCount = 0; exit == -1 && loopCount < MAX_EXIT_PASSES; loopCount++)
+			{
+				int dir = sim.random.nextInt(4) + 1; // there will always be a minimum of 1 direction
 				
-		// Loop until we have chosen a direction that is actually present
-		while (exitCoords.x == -1 && exitCoords.y == -1 && loopCount < 1000) {
-		
-			// Choose a number at random, will specify the nth available direction (in the ordering)
-			// - this is used to effect the random choice, although it has to correspond to the 
-			// direction chosen being available (that's why we need lots of iterations, to 
-			// maximise our chances of finding a match)
-			int dir = sim.random.nextInt(4) + 1; // there will always be a minimum of 1 direction
+				if (available[dir - 1] == true) {
+					exit = dir - 1;
+				}
+			}
+		} else if (noAvailable > 0) {
 			
-			// If we've chosen dir=1, and there is an EB arm, or this is a EB dead-end which the vehicle is heading towards, choose EB
-			if ((lengthDir[T_EAST] > 0 || (dirCount == 1 && lengthDir[T_EAST] == 0 && carDir == UGV_Direction.EAST)) && dir == 1) 
+			// Each available exit is equally likely to be chosen by the loop above, so just choose one of them
+			int choice = sim.random.nextInt(noAvailable);
+			
+			for (int e = 0; exit == -1; e++)
 			{
-				tempCoords = new Double2D(x+laneWidth, y-(laneWidth/2)); // Mid-point of exit lane
-				if (exitCoords.x == -1 && exitCoords.y == -1) {
-					exitCoords = new Double2D(tempCoords.x + offset, tempCoords.y);
+				if (available[e] == true)
+				{
+					if (choice == 0) {
+						exit = e;
+					}
+					choice--;
 				}
-			// If we've chosen dir=2, and there is an SB arm, or this is a SB dead-end which the vehicle is heading towards, choose SB	
-			} else if ((lengthDir[T_SOUTH] > 0 || (dirCount == 1 && lengthDir[T_SOUTH] == 0 & carDir == UGV_Direction.SOUTH)) && dir == 2) 
-			{
-				tempCoords = new Double2D(x+(laneWidth/2), y+laneWidth); // Mid-point of exit lane
-				if (exitCoords.x == -1 && exitCoords.y == -1) {
-					exitCoords = new Double2D(tempCoords.x, tempCoords.y + offset);
+			}
+		}
+		
+		if (exit == -1) {
+			return new jctExitInfo(new Double2D(-1, -1), this.ID);
+		}
+		
+		return new jctExitInfo(carExits[exit], this.ID); // Return the offset exit location and the ID of the junction
+	}
+	
+	/**
+	 * Build the mid-point of each exit lane, and the locations the vehicles aim for, which are offset into the exit lane
+	 * (called once by the constructor).
+	 * @param ugvOffset (double - offset for the UGV, which is set a little further so that WP doesn't get 'eaten' prematurely)
+	 * @param carOffset (double - offset for the DumbCars)
+	 */
+	private void buildExits(double ugvOffset, double carOffset)
+	{
+		double x = location.x;
+		double y = location.y;
+		double laneWidth = Road.roadWidth/2;
+		
+		for (int e = 0; e < EXIT_ARMS.length; e++)
+		{
+			switch (EXIT_DIRECTIONS[e]) {
+				case EAST : {
+					exitLanes[e] = new Double2D(x+laneWidth, y-(laneWidth/2));
+					ugvExits[e] = new Double2D(exitLanes[e].x + ugvOffset, exitLanes[e].y);
+					carExits[e] = new Double2D(exitLanes[e].x + carOffset, exitLanes[e].y);
+					break;
 				}
-			// If we've chosen dir=3, and there is an WB arm, or this is an WB dead-end which the vehicle is heading towards, choose WB	
-			} else if ((lengthDir[T_WEST] > 0 || (dirCount == 1 && lengthDir[T_WEST] == 0 && carDir == UGV_Direction.WEST)) && dir == 3) 
-			{
-				tempCoords = new Double2D(x-laneWidth, y+(laneWidth/2)); // Mid-point of exit lane
-				if (exitCoords.x == -1 && exitCoords.y == -1) {
-					exitCoords = new Double2D(tempCoords.x - offset, tempCoords.y);
+				case SOUTH : {
+					exitLanes[e] = new Double2D(x+(laneWidth/2), y+laneWidth);
+					ugvExits[e] = new Double2D(exitLanes[e].x, exitLanes[e].y + ugvOffset);
+					carExits[e] = new Double2D(exitLanes[e].x, exitLanes[e].y + carOffset);
+					break;
 				}
-			// If we've chosen dir=4, and there is an NB arm, or this is a NB dead-end which the vehicle is heading towards, choose NB
-			} else if ((lengthDir[T_NORTH] > 0 || (dirCount == 1 && lengthDir[T_NORTH] == 0 && carDir == UGV_Direction.NORTH)) && dir == 4) 
-			{
-				tempCoords = new Double2D(x-(laneWidth/2), y-laneWidth); // Mid-point of exit lane
-				if (exitCoords.x == -1 && exitCoords.y == -1) {
-					exitCoords = new Double2D(tempCoords.x, tempCoords.y - offset);
+				case WEST : {
+					exitLanes[e] = new Double2D(x-laneWidth, y+(laneWidth/2));
+					ugvExits[e] = new Double2D(exitLanes[e].x - ugvOffset, exitLanes[e].y);
+					carExits[e] = new Double2D(exitLanes[e].x - carOffset, exitLanes[e].y);
+					break;
+				}
+				default : {
+					exitLanes[e] = new Double2D(x-(laneWidth/2), y-laneWidth);
+					ugvExits[e] = new Double2D(exitLanes[e].x, exitLanes[e].y - ugvOffset);
+					carExits[e] = new Double2D(exitLanes[e].x, exitLanes[e].y - carOffset);
+					break;
 				}
 			}
-			
-			loopCount ++;
 		}
-				
-		return new jctExitInfo(exitCoords, this.ID); // Return the offset exit location and the ID of the junction
+	}
+	
+	/**
+	 * Return the probability of the UGV choosing an exit which it has already taken a number of times, on a pass of the
+	 * retry loop (see getJunctionExit).
+	 * @param noVisits (int - number of times the UGV has taken the exit)
+	 * @return double (0.8^noVisits)
+	 */
+	private static double getExitProbability(int noVisits)
+	{
+		return (noVisits < EXIT_PROBABILITIES.length) ? EXIT_PROBABILITIES[noVisits] : Math.pow(0.8, noVisits);
+	}
+	
+	/**
+	 * Build the table of exit probabilities, 0.8^n (with the same values as Math.pow returns).
+	 * @param length (int - number of entries in the table)
+	 * @return double[] (the probabilities)
+	 */
+	private static double[] buildExitProbabilities(int length)
+	{
+		double[] retVal = new double[length];
+		
+		for (int n = 0; n < length; n++) {
+			retVal[n] = Math.pow(0.8, n);
+		}
+		
+		return retVal;
 	}
 	
 	/** 
@@ -531,6 +732,28 @@ public class Junction extends Entity
 		}
 	}
 	
+	/**
+	 * Record a JunctionTimeout event for the occupancy of the junction, which is about to be cleared so that
+	 * the supplied vehicle can enter it, if the events are being recorded (see SimulationEvents).
+	 * @param vehicle (Car - the vehicle entering the junction)
+	 * @param vehicleType (String - the type of the vehicle, for the event)
+	 * @param sim (COModel - access to the simulation environment)
+	 */
+	private void addTimeoutEvent(Car vehicle, String vehicleType, COModel sim)
+	{
+		SimulationEvents.JunctionTimeout event = new SimulationEvents.JunctionTimeout();
+		if (event.isEnabled() == true)
+		{
+			event.junctionID = this.ID;
+			event.occupierID = occupierID;
+			event.vehicleID = vehicle.getID();
+			event.vehicleType = vehicleType;
+			event.occupiedSteps = sim.schedule.getSteps() - occupiedTime;
+			event.step = sim.schedule.getSteps();
+			event.commit();
+		}
+	}
+	
 	/**
 	 * Return the ID of the vehicle occupying the junction (for logging purposes)
 	 * @return long (return the ID of the vehicle occupying the junction)
@@ -0,0 +1,279 @@
+package modeling;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+
+import sim.util.Bag;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Spatial index of the junctions on the map, which allows the junction, junction approach or junction exit at a
+ * location to be found without checking every junction.  The map is divided into square cells, and each cell
+ * stores the indices of the junctions whose bounds (the junction, and all of its approaches and exits, see
+ * Junction.getJunctionBounds) overlap it, in the same order as the junctions Bag.  A query only tests the
+ * junctions listed for the cells it covers, using the same tests as the linear searches in COModel, so it
+ * always returns the same result as a search through the whole Bag would.
+ *
+ * Unlike the RoadIndex, junctions can be added to the index one at a time, as COModelBuilder queries the
+ * junctions while it is still adding them to the map (see COModel.getJunctionIndex).
+ */
+public class JunctionIndex {
+
+	private static final double CELL_SIZE = Road.roadWidth;
+
+	private final Bag junctions = new Bag();
+	private final Bag jctAreas = new Bag(); // Rectangle2D.Double for the area of each junction
+	private final int[][][] cellJunctions; // indexed [x cell][y cell], lists indices into junctions
+	private final int noCellsX;
+	private final int noCellsY;
+	private int[] minCellX = new int[16]; // First cell column covered by each junction
+	private int[] minCellY = new int[16]; // First cell row covered by each junction
+
+	/**
+	 * Constructor.  Create an empty index for a map of the supplied size.
+	 * @param worldX (double - width of the map)
+	 * @param worldY (double - height of the map)
+	 */
+	public JunctionIndex(double worldX, double worldY)
+	{
+		noCellsX = (int) Math.floor(worldX / CELL_SIZE) + 1;
+		noCellsY = (int) Math.floor(worldY / CELL_SIZE) + 1;
+
+		cellJunctions = new int[noCellsX][noCellsY][];
+		for (int i = 0; i < noCellsX; i++) {
+			for (int j = 0; j < noCellsY; j++) {
+				cellJunctions[i][j] = new int[0];
+			}
+		}
+	}
+
+	/**
+	 * Add a junction to the index.  The junctions must be added in the same order as the junctions Bag.
+	 * @param junction (Junction - the junction to add)
+	 */
+	public void add(Junction junction)
+	{
+		int idx = junctions.size();
+		Rectangle2D.Double bounds = junction.getJunctionBounds();
+
+		junctions.add(junction);
+		jctAreas.add(junction.getJunctionArea());
+
+		if (idx == minCellX.length)
+		{
+			int[] newMinCellX = new int[idx * 2];
+			int[] newMinCellY = new int[idx * 2];
+			System.arraycopy(minCellX, 0, newMinCellX, 0, idx);
+			System.arraycopy(minCellY, 0, newMinCellY, 0, idx);
+			minCellX = newMinCellX;
+			minCellY = newMinCellY;
+		}
+
+		minCellX[idx] = getCellX(bounds.getMinX());
+		minCellY[idx] = getCellY(bounds.getMinY());
+
+		// Each cell only lists a few junctions, so just extend the arrays by one (this keeps the lists in Bag order)
+		for (int i = minCellX[idx]; i <= getCellX(bounds.getMaxX()); i++) {
+			for (int j = minCellY[idx]; j <= getCellY(bounds.getMaxY()); j++) {
+				int[] oldList = cellJunctions[i][j];
+				int[] newList = new int[oldList.length + 1];
+				System.arraycopy(oldList, 0, newList, 0, oldList.length);
+				newList[oldList.length] = idx;
+				cellJunctions[i][j] = newList;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of junctions which are included in the index.
+	 * @return int (number of junctions in the index)
+	 */
+	public int getNoJunctions() { return junctions.size(); }
+
+	/**
+	 * Return the indices of the junctions which might contain the supplied location, or have an approach or exit
+	 * which contains it, in the order of the junctions Bag.  Any junction which is not included cannot contain
+	 * the location (nor can its approaches and exits).
+	 * @param coord (Double2D - the location to check)
+	 * @return int[] (indices into the junctions Bag, which must not be modified)
+	 */
+	public int[] getCandidates(Double2D coord)
+	{
+		// Anything outside the indexed area is checked against all of the junctions so that we still return
+		// exactly the same result as a linear search (although no junction should extend this far).
+		if (coord.x < 0 || coord.y < 0 || coord.x >= noCellsX * CELL_SIZE || coord.y >= noCellsY * CELL_SIZE)
+		{
+			int[] retVal = new int[junctions.size()];
+			for (int i = 0; i < retVal.length; i++) {
+				retVal[i] = i;
+			}
+
+			return retVal;
+		}
+
+		return cellJunctions[getCellX(coord.x)][getCellY(coord.y)];
+	}
+
+	/**
+	 * Return the ID of the junction which contains the supplied location (see COModel.junctionAtPoint).
+	 * @param coord (Double2D - the location to check)
+	 * @return int (0 = no junction; -1 = multiple junctions; n = ID of junction)
+	 */
+	public int getJunctionAtPoint(Double2D coord)
+	{
+		int jctID = 0;
+		int[] candidates = getCandidates(coord);
+
+		for (int c = 0; c < candidates.length; c++)
+		{
+			Junction junction = (Junction) junctions.get(candidates[c]);
+
+			if (junction.inShape(coord) == true)
+			{
+				if (jctID != 0) {
+					return -1;
+				}
+
+				jctID = junction.getID();
+			}
+		}
+
+		return jctID;
+	}
+
+	/**
+	 * Return the type of the first junction (in the order of the junctions Bag) which contains the supplied
+	 * location (see COModel.junctionTypeAtPoint).
+	 * @param coord (Double2D - the location to check)
+	 * @return int (type identifier for the junction, or NOJUNCTION if no junction is found)
+	 */
+	public int getJunctionTypeAtPoint(Double2D coord)
+	{
+		int[] candidates = getCandidates(coord);
+
+		for (int c = 0; c < candidates.length; c++)
+		{
+			Junction junction = (Junction) junctions.get(candidates[c]);
+
+			if (junction.inShape(coord) == true) {
+				return junction.getType();
+			}
+		}
+
+		return Constants.NOJUNCTION;
+	}
+
+	/**
+	 * Return whether the supplied location is in any junction approach (see COModel.junctionAppAtPoint).
+	 * @param coord (Double2D - the location to check)
+	 * @return boolean (true if location is in a junction approach, false otherwise)
+	 */
+	public boolean inApproach(Double2D coord)
+	{
+		int[] candidates = getCandidates(coord);
+
+		for (int c = 0; c < candidates.length; c++)
+		{
+			if (((Junction) junctions.get(candidates[c])).inApproach(coord) == true) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Return whether the supplied location is in any junction exit (see COModel.junctionExitAtPoint).
+	 * @param coord (Double2D - the location to check)
+	 * @return boolean (true if location is in a junction exit, false otherwise)
+	 */
+	public boolean inExit(Double2D coord)
+	{
+		int[] candidates = getCandidates(coord);
+
+		for (int c = 0; c < candidates.length; c++)
+		{
+			if (((Junction) junctions.get(candidates[c])).inExit(coord) == true) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Return the ID of the junction which overlaps the supplied shape (see COModel.junctionAtArea).
+	 * @param inArea (Shape - the shape to check for overlap with the junctions, need not be an Area)
+	 * @return int (0 = no junction; -1 = multiple junctions; n = ID of junction)
+	 */
+	public int getJunctionAtArea(Shape inArea)
+	{
+		Rectangle2D areaBounds = inArea.getBounds2D();
+		int retVal = 0;
+
+		if (areaBounds.isEmpty() == true) {
+			return retVal;
+		}
+
+		int minX = getCellX(areaBounds.getMinX());
+		int minY = getCellY(areaBounds.getMinY());
+
+		for (int i = minX; i <= getCellX(areaBounds.getMaxX()); i++)
+		{
+			for (int j = minY; j <= getCellY(areaBounds.getMaxY()); j++)
+			{
+				int[] candidates = cellJunctions[i][j];
+
+				for (int c = 0; c < candidates.length; c++)
+				{
+					int idx = candidates[c];
+
+					// A junction which covers several of these cells is only tested in the first of them
+					if (i != Math.max(minX, minCellX[idx]) || j != Math.max(minY, minCellY[idx])) {
+						continue;
+					}
+
+					// An overlap must have some area, so the bounds of the shape must overlap the junction too
+					Rectangle2D.Double jctRect = (Rectangle2D.Double) jctAreas.get(idx);
+					if (areaBounds.intersects(jctRect) == false) {
+						continue;
+					}
+
+					// Shape.intersects finds whether the interiors overlap without building an Area intersection
+					if (inArea.intersects(jctRect) == true)
+					{
+						if (retVal != 0) {
+							return -1; // We've already found another junction that overlaps with this shape
+						}
+
+						retVal = ((Junction) junctions.get(idx)).getID();
+					}
+				}
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Return the index of the column of cells containing the supplied x coordinate, limited to the grid.
+	 * @param x (double - x coordinate)
+	 * @return int (index of cell column)
+	 */
+	private int getCellX(double x)
+	{
+		return Math.max(0, Math.min(noCellsX-1, (int) Math.floor(x / CELL_SIZE)));
+	}
+
+	/**
+	 * Return the index of the row of cells containing the supplied y coordinate, limited to the grid.
+	 * @param y (double - y coordinate)
+	 * @return int (index of cell row)
+	 */
+	private int getCellY(double y)
+	{
+		return Math.max(0, Math.min(noCellsY-1, (int) Math.floor(y / CELL_SIZE)));
+	}
+}
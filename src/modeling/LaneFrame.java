@@ -0,0 +1,57 @@
+package modeling;
+
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Immutable description of a location in the coordinate frame of the Road it is on: the ID of the road,
+ * the longitudinal distance (s) along the road from its northern/western end, the lateral offset (d) from
+ * the centre line of the road (positive to the south/east of the centre line) and the lane (1 for the NB
+ * or EB lane, 2 for the SB or WB lane, as per Road.getLane).
+ *
+ * NOTE: This is derived from the object model of the roads, so it would be a cheat for the UGV to use
+ * it in its control software; it is intended for map construction, collision detection and logging.
+ */
+public class LaneFrame {
+
+	private final int roadId;
+	private final double s;
+	private final double d;
+	private final int lane;
+
+	/**
+	 * Constructor.  Work out the lane frame coordinates of the supplied location on the supplied road.
+	 * @param road (Road - the road that the location is on)
+	 * @param coord (Double2D - the location to convert into the lane frame)
+	 */
+	public LaneFrame(Road road, Double2D coord)
+	{
+		roadId = road.getID();
+
+		if (road.getIsNS() == true)
+		{
+			s = coord.y - Math.min(road.y1, road.y2);
+			d = coord.x - road.x1;
+		} else {
+			s = coord.x - Math.min(road.x1, road.x2);
+			d = coord.y - road.y1;
+		}
+
+		lane = road.getLane(coord);
+	}
+
+	public int getRoadId() { return roadId; }
+	public double getS() { return s; }
+	public double getD() { return d; }
+	public int getLane() { return lane; }
+
+	/**
+	 * Return a string representation of the lane frame, for logging.
+	 * @return String (the lane frame coordinates)
+	 */
+	public String toString()
+	{
+		return "(road=" + roadId + ", s=" + s + ", d=" + d + ", lane=" + lane + ")";
+	}
+}
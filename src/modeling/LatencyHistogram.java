@@ -0,0 +1,126 @@
+package modeling;
+
+/**
+ * @author hh940
+ *
+ * Histogram of latencies (in ns) with log-linear buckets: each power of two is divided into SUB_BUCKETS
+ * equal buckets, so every recorded value is known to within 1/SUB_BUCKETS (12.5%) of its size, whatever its
+ * magnitude, while the whole range of a long is covered by a few hundred counters.  Recording a value is a
+ * couple of shifts and an increment, so a histogram can be updated on every call of a hot method (see
+ * StepProfiler).
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int NO_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final long[] counts = new long[NO_BUCKETS];
+	private long noValues = 0;
+	private long total = 0;
+	private long max = 0;
+
+	/**
+	 * Add a value to the histogram (negative values are recorded as 0).
+	 * @param value (long - the latency to record, in ns)
+	 */
+	public void record(long value)
+	{
+		if (value < 0) {
+			value = 0;
+		}
+
+		counts[getBucket(value)]++;
+		noValues++;
+		total += value;
+		max = Math.max(max, value);
+	}
+
+	/**
+	 * Remove all of the values from the histogram.
+	 */
+	public void clear()
+	{
+		for (int b = 0; b < counts.length; b++) {
+			counts[b] = 0;
+		}
+		noValues = 0;
+		total = 0;
+		max = 0;
+	}
+
+	public long getNoValues() { return noValues; }
+	public long getTotal() { return total; }
+	public long getMax() { return max; }
+
+	/**
+	 * Return the mean of the recorded values.
+	 * @return double (mean value, or 0 if nothing has been recorded)
+	 */
+	public double getMean()
+	{
+		return (noValues == 0) ? 0 : (double) total / noValues;
+	}
+
+	/**
+	 * Return the value below which the supplied fraction of the recorded values fall, to the resolution of
+	 * the buckets (the upper bound of the bucket containing the percentile is returned, limited to the maximum
+	 * recorded value).
+	 * @param fraction (double - e.g. 0.99 for the 99th percentile)
+	 * @return long (the percentile, or 0 if nothing has been recorded)
+	 */
+	public long getPercentile(double fraction)
+	{
+		if (noValues == 0) {
+			return 0;
+		}
+
+		long required = (long) Math.ceil(fraction * noValues);
+		long found = 0;
+
+		for (int b = 0; b < counts.length; b++)
+		{
+			found += counts[b];
+			if (found >= Math.max(1, required)) {
+				return Math.min(getUpperBound(b), max);
+			}
+		}
+
+		return max;
+	}
+
+	/**
+	 * Return the index of the bucket which holds the supplied (non-negative) value.  Values below SUB_BUCKETS
+	 * have a bucket each; above that, the bucket is given by the position of the highest bit that is set, and
+	 * the SUB_BUCKET_BITS bits below it.
+	 * @param value (long - the value)
+	 * @return int (index of the bucket)
+	 */
+	private static int getBucket(long value)
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Return the largest value which is held in the supplied bucket.
+	 * @param bucket (int - index of the bucket)
+	 * @return long (the largest value in the bucket)
+	 */
+	private static long getUpperBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		long lower = (1L << exponent) + (subBucket << (exponent - SUB_BUCKET_BITS));
+		return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
@@ -0,0 +1,190 @@
+package modeling;
+
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Keeps track of the road, lane and junction at the location of a vehicle, so that they don't have to be found
+ * from scratch each time they are needed.  A vehicle moves at most a few metres in a step, so the road it is on
+ * is almost always the road it was on in the previous step, or one of the roads which share a junction with it.
+ *
+ * The road is the first road (in the order of the roads Bag) which contains the location, i.e. the same road
+ * as RoadIndex.getRoadAtPoint returns.  When the location is strictly inside a road, the only other roads which
+ * can contain it are those which overlap the road, and COModelBuilder only allows roads to overlap where they
+ * meet at a junction (see RoadNetwork.getConnectedRoads), so the first road can be found by checking just those.
+ * The cached road is checked first, then the roads connected to it, and the RoadIndex is only used if the
+ * location is not strictly inside any of them (or if the road network has not been built for all the roads).
+ *
+ * The junction is the result of COModel.junctionAtPoint for the location, which is found with the JunctionIndex,
+ * and is reused for as long as the vehicle stays at the same location (it is requested several times in a step).
+ *
+ * Each vehicle has its own tracker, so a DumbCar can use it from the sensing threads of the DumbCarStepper.
+ */
+public class LocationTracker {
+
+	private RoadIndex roadIndex = null; // The index which the road was found with (there is a new one for each map)
+	private Double2D roadLoc = null; // The location at which the road and lane were found
+	private int roadIdx = -1;
+	private int lane = -1;
+
+	private JunctionIndex junctionIndex = null; // The index which the junction was found with
+	private int noJunctions = 0; // Number of junctions in the index when the junction was found
+	private Double2D jctLoc = null; // The location at which the junction was found
+	private int jctID = 0;
+
+	/**
+	 * Forget the road, lane and junction, e.g. when a vehicle is reused.
+	 */
+	public void clear()
+	{
+		roadIndex = null;
+		roadLoc = null;
+		roadIdx = -1;
+		lane = -1;
+		junctionIndex = null;
+		noJunctions = 0;
+		jctLoc = null;
+		jctID = 0;
+	}
+
+	/**
+	 * Return the index of the first road (in the order of the roads Bag) which contains the supplied location.
+	 * @param sim (COModel - access to the roads and road network)
+	 * @param loc (Double2D - the location of the vehicle)
+	 * @return int (index of the road, or -1 if the location is not on a road)
+	 */
+	public int getRoad(COModel sim, Double2D loc)
+	{
+		update(sim, loc);
+		return roadIdx;
+	}
+
+	/**
+	 * Return the lane of the first road which contains the supplied location (see Road.getLane).
+	 * @param sim (COModel - access to the roads and road network)
+	 * @param loc (Double2D - the location of the vehicle)
+	 * @return int (1 for N/E, 2 for S/W, or -1 if the location is not on a road)
+	 */
+	public int getLane(COModel sim, Double2D loc)
+	{
+		update(sim, loc);
+		return lane;
+	}
+
+	/**
+	 * Return the ID of the junction which contains the supplied location (see COModel.junctionAtPoint).
+	 * @param sim (COModel - access to the junctions)
+	 * @param loc (Double2D - the location of the vehicle)
+	 * @return int (0 = no junction; -1 = multiple junctions; n = ID of junction)
+	 */
+	public int getJunction(COModel sim, Double2D loc)
+	{
+		JunctionIndex index = sim.getJunctionIndex();
+
+		if (index != junctionIndex || index.getNoJunctions() != noJunctions || loc.equals(jctLoc) == false)
+		{
+			junctionIndex = index;
+			noJunctions = index.getNoJunctions();
+			jctLoc = loc;
+			jctID = index.getJunctionAtPoint(loc);
+		}
+
+		return jctID;
+	}
+
+	/**
+	 * Return the roads whose surfaces might overlap the straight path between two locations, if both of the
+	 * locations are strictly inside the road at the second location (as the road is convex, so is the rest of the
+	 * path, and any road which overlaps the path must overlap the road).
+	 * @param sim (COModel - access to the roads and road network)
+	 * @param fromLoc (Double2D - the start of the path, e.g. the previous location of the vehicle)
+	 * @param toLoc (Double2D - the end of the path, e.g. the current location of the vehicle)
+	 * @return int[] (indices of the roads in increasing order, which must not be modified, or null if they are not known)
+	 */
+	public int[] getRoadsOnPath(COModel sim, Double2D fromLoc, Double2D toLoc)
+	{
+		int r = getRoad(sim, toLoc);
+
+		if (r == -1 || sim.getRoadNetwork().getNoRoads() != roadIndex.getNoRoads()) {
+			return null;
+		}
+
+		Road road = (Road) sim.roads.get(r);
+		if (road.inInterior(fromLoc) == false || road.inInterior(toLoc) == false) {
+			return null;
+		}
+
+		return sim.getRoadNetwork().getConnectedRoads(r);
+	}
+
+	/**
+	 * Find the road and lane at the supplied location, if it is not the location they were last found at.
+	 * @param sim (COModel - access to the roads and road network)
+	 * @param loc (Double2D - the location of the vehicle)
+	 */
+	private void update(COModel sim, Double2D loc)
+	{
+		RoadIndex index = sim.getRoadIndex();
+
+		if (index != roadIndex)
+		{
+			roadIndex = index;
+			roadLoc = null;
+			roadIdx = -1;
+		} else if (loc.equals(roadLoc) == true) {
+			return;
+		}
+
+		int found = -2; // Not found yet
+		RoadNetwork network = sim.getRoadNetwork();
+
+		if (roadIdx != -1 && network.getNoRoads() == index.getNoRoads())
+		{
+			// Check the road we were on, and then the roads connected to it
+			found = findRoad(sim, network, roadIdx, loc);
+
+			int[] connected = network.getConnectedRoads(roadIdx);
+			for (int c = 0; c < connected.length && found == -2; c++)
+			{
+				if (connected[c] != roadIdx) {
+					found = findRoad(sim, network, connected[c], loc);
+				}
+			}
+		}
+
+		if (found == -2) {
+			found = index.getRoadIdxAtPoint(loc);
+		}
+
+		roadLoc = loc;
+		roadIdx = found;
+		lane = (found == -1) ? -1 : ((Road) sim.roads.get(found)).getLane(loc);
+	}
+
+	/**
+	 * If the supplied location is strictly inside a road, return the first road which contains it, which must be
+	 * the road itself or one of the roads connected to it.
+	 * @param sim (COModel - access to the roads)
+	 * @param network (RoadNetwork - the road network of the map)
+	 * @param candidate (int - index of the road to check)
+	 * @param loc (Double2D - the location)
+	 * @return int (index of the first road containing the location, or -2 if it is not strictly inside the candidate road)
+	 */
+	private static int findRoad(COModel sim, RoadNetwork network, int candidate, Double2D loc)
+	{
+		if (((Road) sim.roads.get(candidate)).inInterior(loc) == false) {
+			return -2;
+		}
+
+		int[] connected = network.getConnectedRoads(candidate);
+		for (int c = 0; c < connected.length; c++)
+		{
+			if (((Road) sim.roads.get(connected[c])).inShape(loc) == true) {
+				return connected[c];
+			}
+		}
+
+		return candidate; // Not reached, as the candidate road contains the location
+	}
+}
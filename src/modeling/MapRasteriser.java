@@ -0,0 +1,206 @@
+package modeling;
+
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * @author hh940
+ *
+ * Class used to fill the static discrete map layers (roadMap, junctionMap, jctApproachMap, roadMarkingMap
+ * and obstacleMap) from the Shapes of the map features.  Rather than testing every grid cell against every
+ * feature, each Shape is scan-converted into the range of cells covered by its bounding box, and only those
+ * cells are tested for containment.  The grid is split into strips of columns which are filled in parallel
+ * using fork/join; as each strip owns a disjoint set of columns, no two tasks ever write the same cell.
+ *
+ * The same containment test is applied to the same cell coordinate (i/resolution, j/resolution) as the
+ * per-cell builders which this replaces, and the Shapes are painted in reverse order of priority so that
+ * the first matching Shape wins, so the output is identical cell-for-cell.
+ */
+public class MapRasteriser {
+
+	private static final int STRIP_WIDTH = 32; // Number of columns below which a strip is filled sequentially
+
+	private final Shape[] shapes;
+	private final Rectangle2D[] bounds;
+	private final int[] values;
+	private final boolean[] inclusiveEdges;
+	private int noShapes = 0;
+
+	/**
+	 * Constructor.  Creates an empty collection of Shapes with room for the supplied number of entries.
+	 * @param capacity (int - maximum number of Shapes which will be added to the rasteriser)
+	 */
+	public MapRasteriser(int capacity)
+	{
+		shapes = new Shape[capacity];
+		bounds = new Rectangle2D[capacity];
+		values = new int[capacity];
+		inclusiveEdges = new boolean[capacity];
+	}
+
+	/**
+	 * Add a Shape which should be painted into the map with the supplied value.  Shapes must be added in
+	 * order of priority; where two Shapes cover the same cell, the one which was added first will win.
+	 * The containment test matches Shape.contains (which excludes points on the eastern and southern
+	 * boundaries), use addRectangle for features which are tested with Utility.betterContains.
+	 * @param inShape (Shape - the footprint of the map feature)
+	 * @param inValue (int - the value to be stored in cells which fall inside the Shape)
+	 */
+	public void addShape(Shape inShape, int inValue)
+	{
+		add(inShape, inValue, false);
+	}
+
+	/**
+	 * Add a rectangle which should be painted into the map with the supplied value, using the same
+	 * containment test as Utility.betterContains i.e. including points on the eastern and southern
+	 * boundaries.  As for addShape, rectangles must be added in order of priority.
+	 * @param inRect (Rectangle2D.Double - the footprint of the map feature)
+	 * @param inValue (int - the value to be stored in cells which fall inside the rectangle)
+	 */
+	public void addRectangle(Rectangle2D.Double inRect, int inValue)
+	{
+		add(inRect, inValue, true);
+	}
+
+	/**
+	 * Store the Shape, its bounds and value.
+	 * @param inShape (Shape - the footprint of the map feature)
+	 * @param inValue (int - the value to be stored in cells which fall inside the Shape)
+	 * @param inInclusiveEdges (boolean - true if the Utility.betterContains test should be used)
+	 */
+	private void add(Shape inShape, int inValue, boolean inInclusiveEdges)
+	{
+		shapes[noShapes] = inShape;
+		bounds[noShapes] = inShape.getBounds2D();
+		values[noShapes] = inValue;
+		inclusiveEdges[noShapes] = inInclusiveEdges;
+		noShapes++;
+	}
+
+	/**
+	 * Fill the supplied grid field with the stored Shapes.  Every cell which is not covered by any Shape is
+	 * set to the background value.
+	 * @param field (int[][] - the field of the IntGrid2D to be filled, indexed [x][y])
+	 * @param resolution (int - number of grid cells per unit of distance in the simulation environment)
+	 * @param background (int - the value to be stored in cells which are not covered by any Shape)
+	 */
+	public void rasterise(int[][] field, int resolution, int background)
+	{
+		if (field.length == 0) {
+			return;
+		}
+
+		ForkJoinPool.commonPool().invoke(new StripTask(field, null, field[0].length, resolution, background, 0, field.length));
+	}
+
+	/**
+	 * Fill the supplied packed grid with the stored Shapes.  Every cell which is not covered by any Shape is
+	 * set to the background value.
+	 * @param grid (PackedIntGrid2D - the grid to be filled)
+	 * @param resolution (int - number of grid cells per unit of distance in the simulation environment)
+	 * @param background (int - the value to be stored in cells which are not covered by any Shape)
+	 */
+	public void rasterise(PackedIntGrid2D grid, int resolution, int background)
+	{
+		if (grid.getWidth() == 0) {
+			return;
+		}
+
+		ForkJoinPool.commonPool().invoke(new StripTask(null, grid, grid.getHeight(), resolution, background, 0, grid.getWidth()));
+	}
+
+	/**
+	 * Check whether the supplied coordinate is inside the Shape with the supplied index, using the same
+	 * test as the method which would originally have been used for that type of map feature.
+	 * @param idx (int - index of the Shape)
+	 * @param x (double - x coordinate of the point to test)
+	 * @param y (double - y coordinate of the point to test)
+	 * @return boolean (true if the point is inside the Shape)
+	 */
+	private boolean contains(int idx, double x, double y)
+	{
+		if (inclusiveEdges[idx] == true) {
+			return Utility.betterContains((Rectangle2D.Double) shapes[idx], x, y);
+		} else {
+			return shapes[idx].contains(x, y);
+		}
+	}
+
+	/**
+	 * Task which fills a strip of columns [startCol, endCol) of the grid, splitting itself in two if the
+	 * strip is wider than STRIP_WIDTH.  Exactly one of field and packedGrid is used; for a packed grid, each
+	 * column is filled in a temporary array and then packed.
+	 */
+	private class StripTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int[][] field;
+		private final PackedIntGrid2D packedGrid;
+		private final int height;
+		private final int resolution;
+		private final int background;
+		private final int startCol;
+		private final int endCol;
+
+		StripTask(int[][] inField, PackedIntGrid2D inPackedGrid, int inHeight, int inResolution, int inBackground, int inStartCol, int inEndCol)
+		{
+			field = inField;
+			packedGrid = inPackedGrid;
+			height = inHeight;
+			resolution = inResolution;
+			background = inBackground;
+			startCol = inStartCol;
+			endCol = inEndCol;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (endCol - startCol > STRIP_WIDTH) {
+				int midCol = (startCol + endCol) >>> 1;
+				invokeAll(new StripTask(field, packedGrid, height, resolution, background, startCol, midCol),
+						  new StripTask(field, packedGrid, height, resolution, background, midCol, endCol));
+				return;
+			}
+
+			int[] tempColumn = (field == null) ? new int[height] : null;
+
+			for (int i = startCol; i < endCol; i++)
+			{
+				int[] column = (field == null) ? tempColumn : field[i];
+				Arrays.fill(column, background);
+
+				// Paint the lowest priority Shape first so that higher priority Shapes overwrite it.  The covering
+				// cell range is padded by one cell in each direction so that rounding in i/resolution can never
+				// cause a boundary cell to be missed; the containment test decides the final answer.
+				for (int s = noShapes-1; s >= 0; s--)
+				{
+					if (i < (int) Math.floor(bounds[s].getMinX() * resolution) - 1 || i > (int) Math.ceil(bounds[s].getMaxX() * resolution) + 1) {
+						continue;
+					}
+
+					int jMin = Math.max(0, (int) Math.floor(bounds[s].getMinY() * resolution) - 1);
+					int jMax = Math.min(height-1, (int) Math.ceil(bounds[s].getMaxY() * resolution) + 1);
+
+					for (int j = jMin; j <= jMax; j++)
+					{
+						// Adjust i/j values back to appropriate coordinate scale for occupancy check
+						if (contains(s, ((double) i) / resolution, ((double) j) / resolution))
+						{
+							column[j] = values[s];
+						}
+					}
+				}
+
+				if (field == null) {
+					packedGrid.setColumn(i, column);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package modeling;
+
+import sim.field.continuous.Continuous2D;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Store for the markers which are only added to the simulation so that they can be visualised: the Failures
+ * and Crashes recorded by the AccidentDetector, and the Waypoints created by the vehicles.  These used to be
+ * added to COModel.environment, where they slowed down every search of the vehicles, obstacles and target (a
+ * UGV which is following a line can record a Failure on every step).  They are now kept in a separate
+ * Continuous2D (see getField) which is only used by the portrayals in the UI.
+ *
+ * The number of Failures and Crashes held is limited by the capacity of the store; once it is full, the oldest
+ * one is discarded to make room for each new one.  Waypoints are not limited, as each vehicle removes its
+ * Waypoints as it reaches them.  When the store is disabled (e.g. in a headless simulation, where nothing will
+ * display the markers) nothing is stored at all.
+ */
+public class MarkerStore {
+
+	private final Continuous2D field;
+	private final Entity[] failures; // Circular buffer of the most recent Failures/Crashes
+	private int nextFailure = 0; // Slot in failures for the next Failure/Crash
+	private boolean enabled = true;
+
+	/**
+	 * Constructor.
+	 * @param worldX (double - width of the map)
+	 * @param worldY (double - height of the map)
+	 * @param capacity (int - maximum number of Failures/Crashes to store)
+	 */
+	public MarkerStore(double worldX, double worldY, int capacity)
+	{
+		field = new Continuous2D(1.0, worldX, worldY);
+		failures = new Entity[capacity];
+	}
+
+	/**
+	 * Return the field containing the markers, for the portrayals.
+	 * @return Continuous2D (field containing the stored markers at their locations)
+	 */
+	public Continuous2D getField() { return field; }
+
+	public boolean getEnabled() { return enabled; }
+
+	/**
+	 * Enable or disable the store.  Disabling the store discards any markers which are already stored.
+	 * @param inEnabled (boolean - true if markers should be stored)
+	 */
+	public void setEnabled(boolean inEnabled)
+	{
+		enabled = inEnabled;
+		if (enabled == false) {
+			clear();
+		}
+	}
+
+	/**
+	 * Add a Failure or Crash marker at the supplied location, discarding the oldest one if the store is full.
+	 * @param marker (Entity - the Failure or Crash)
+	 * @param location (Double2D - location of the marker)
+	 */
+	public void addFailure(Entity marker, Double2D location)
+	{
+		if (enabled == false || failures.length == 0) {
+			return;
+		}
+
+		if (failures[nextFailure] != null) {
+			field.remove(failures[nextFailure]);
+		}
+
+		failures[nextFailure] = marker;
+		field.setObjectLocation(marker, location);
+		nextFailure = (nextFailure + 1) % failures.length;
+	}
+
+	/**
+	 * Add a Waypoint at the supplied location.
+	 * @param wp (Waypoint - the Waypoint)
+	 * @param location (Double2D - location of the Waypoint)
+	 */
+	public void addWaypoint(Waypoint wp, Double2D location)
+	{
+		if (enabled == true) {
+			field.setObjectLocation(wp, location);
+		}
+	}
+
+	/**
+	 * Remove the supplied marker from the store, if it is stored.
+	 * @param marker (Entity - the Waypoint, Failure or Crash to remove)
+	 */
+	public void remove(Entity marker)
+	{
+		if (field.remove(marker) == null || marker instanceof Waypoint) {
+			return;
+		}
+
+		for (int i = 0; i < failures.length; i++)
+		{
+			if (failures[i] == marker) {
+				failures[i] = null;
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Remove all of the markers from the store.
+	 */
+	public void clear()
+	{
+		field.clear();
+		for (int i = 0; i < failures.length; i++) {
+			failures[i] = null;
+		}
+		nextFailure = 0;
+	}
+}
@@ -42,6 +42,15 @@ public abstract class Obstacle extends Entity implements Oriented2D
 	 * @return boolean (true if the coord intersects with the obstacle shape)
 	 */
 	public abstract boolean inShape(Double2D coord);	
+	
+	/**
+	 * method which returns true or false if a provided coordinate is in the shape, without a Double2D having
+	 * to be allocated for the coordinate: would have to be overwritten when implemented
+	 * @param x (double - x coordinate of location we want to test for intersection with the obstacle shape)
+	 * @param y (double - y coordinate of location we want to test for intersection with the obstacle shape)
+	 * @return boolean (true if the coord intersects with the obstacle shape)
+	 */
+	public abstract boolean inShape(double x, double y);
 		
 	/**
 	 * This method provides the orientation of the vehicle in radians and relative to a scale/axis
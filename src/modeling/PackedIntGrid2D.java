@@ -0,0 +1,194 @@
+package modeling;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import sim.field.grid.IntGrid2D;
+
+/**
+ * @author hh940
+ *
+ * A compact alternative to IntGrid2D for map layers which only store a handful of values e.g. the
+ * roadMarkingMap (NOPAINT, WHITEPAINT or WHITERPAINT).  Each cell is stored in 2 bits, packed into
+ * one array of longs per column, so the values 0..3 can be stored at 1/16th of the memory used by an
+ * IntGrid2D of the same size.  Columns are held in separate arrays so that different columns can be
+ * written from different threads (see MapRasteriser).
+ */
+public class PackedIntGrid2D {
+
+	private static final int BITS_PER_CELL = 2;
+	private static final int CELLS_PER_WORD = 64 / BITS_PER_CELL;
+	private static final long CELL_MASK = (1L << BITS_PER_CELL) - 1;
+	public static final int MAX_VALUE = (int) CELL_MASK;
+
+	private final int width;
+	private final int height;
+	private final long[][] data; // indexed [x][word containing y]
+
+	/**
+	 * Constructor.  Create a grid of the supplied size with all cells set to the initial value.
+	 * @param inWidth (int - number of cells in the x direction)
+	 * @param inHeight (int - number of cells in the y direction)
+	 * @param initialValue (int - value 0..MAX_VALUE to store in every cell)
+	 */
+	public PackedIntGrid2D(int inWidth, int inHeight, int initialValue)
+	{
+		width = inWidth;
+		height = inHeight;
+		data = new long[width][(height + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+		setTo(initialValue);
+	}
+
+	public int getWidth() { return width; }
+	public int getHeight() { return height; }
+
+	/**
+	 * Return the value stored in the cell at the supplied location.
+	 * @param x (int - x index of the cell)
+	 * @param y (int - y index of the cell)
+	 * @return int (the value stored in the cell)
+	 */
+	public int get(int x, int y)
+	{
+		return (int) ((data[x][y / CELLS_PER_WORD] >>> ((y % CELLS_PER_WORD) * BITS_PER_CELL)) & CELL_MASK);
+	}
+
+	/**
+	 * Store the supplied value in the cell at the supplied location.
+	 * @param x (int - x index of the cell)
+	 * @param y (int - y index of the cell)
+	 * @param value (int - value 0..MAX_VALUE to store in the cell)
+	 */
+	public void set(int x, int y, int value)
+	{
+		checkValue(value);
+		int shift = (y % CELLS_PER_WORD) * BITS_PER_CELL;
+		long[] column = data[x];
+		column[y / CELLS_PER_WORD] = (column[y / CELLS_PER_WORD] & ~(CELL_MASK << shift)) | ((long) value << shift);
+	}
+
+	/**
+	 * Store a whole column of values at once.  This only writes to the storage for column x, so
+	 * different columns can safely be written at the same time from different threads.
+	 * @param x (int - x index of the column)
+	 * @param values (int[] - the values to store, one for each y index of the column)
+	 */
+	public void setColumn(int x, int[] values)
+	{
+		long[] column = data[x];
+		Arrays.fill(column, 0L);
+
+		for (int y = 0; y < height; y++)
+		{
+			checkValue(values[y]);
+			column[y / CELLS_PER_WORD] |= ((long) values[y]) << ((y % CELLS_PER_WORD) * BITS_PER_CELL);
+		}
+	}
+
+	/**
+	 * Set every cell in the grid to the supplied value.
+	 * @param value (int - value 0..MAX_VALUE to store in every cell)
+	 * @return PackedIntGrid2D (this grid)
+	 */
+	public PackedIntGrid2D setTo(int value)
+	{
+		checkValue(value);
+
+		// Replicate the value into every 2-bit slot of a word
+		long word = 0;
+		for (int i = 0; i < CELLS_PER_WORD; i++) {
+			word = (word << BITS_PER_CELL) | value;
+		}
+
+		for (int x = 0; x < width; x++) {
+			Arrays.fill(data[x], word);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Return an IntGrid2D containing the same values, for use by the portrayals in the UI (which
+	 * read IntGrid2D.field directly).  Identical columns share the same int[] in the returned grid, so
+	 * on a map of mostly straight lines it takes up a fraction of the memory of a full IntGrid2D; as a
+	 * result, the returned grid must be treated as read-only.
+	 * @return IntGrid2D (read-only copy of the grid)
+	 */
+	public IntGrid2D toIntGrid2D()
+	{
+		int[][] field = new int[width][];
+		HashMap<ColumnKey, int[]> distinctColumns = new HashMap<ColumnKey, int[]>();
+
+		for (int x = 0; x < width; x++)
+		{
+			ColumnKey key = new ColumnKey(data[x]);
+			int[] column = distinctColumns.get(key);
+
+			if (column == null)
+			{
+				column = new int[height];
+				for (int y = 0; y < height; y++) {
+					column[y] = get(x, y);
+				}
+				distinctColumns.put(key, column);
+			}
+
+			field[x] = column;
+		}
+
+		return new SharedColumnIntGrid2D(width, height, field);
+	}
+
+	/**
+	 * Check that the supplied value can be stored in a cell.
+	 * @param value (int - value to check)
+	 */
+	private static void checkValue(int value)
+	{
+		if (value < 0 || value > MAX_VALUE)
+		{
+			throw new RuntimeException("Value " + value + " cannot be stored in a PackedIntGrid2D cell (range 0.." + MAX_VALUE + ")");
+		}
+	}
+
+	/**
+	 * IntGrid2D which uses the supplied (possibly shared) columns as its field, rather than allocating
+	 * a full field of its own.
+	 */
+	private static class SharedColumnIntGrid2D extends IntGrid2D
+	{
+		private static final long serialVersionUID = 1L;
+
+		SharedColumnIntGrid2D(int inWidth, int inHeight, int[][] inField)
+		{
+			super(0, 0);
+			field = inField;
+			width = inWidth;
+			height = inHeight;
+		}
+	}
+
+	/**
+	 * Wrapper which allows the packed storage for a column to be used as a HashMap key.
+	 */
+	private static class ColumnKey
+	{
+		private final long[] words;
+		private final int hash;
+
+		ColumnKey(long[] inWords)
+		{
+			words = inWords;
+			hash = Arrays.hashCode(inWords);
+		}
+
+		@Override
+		public int hashCode() { return hash; }
+
+		@Override
+		public boolean equals(Object o)
+		{
+			return (o instanceof ColumnKey) && Arrays.equals(words, ((ColumnKey) o).words);
+		}
+	}
+}
@@ -21,6 +21,11 @@ public class ParkedCar extends Obstacle implements Oriented2D {
 	
 	private int roadId; // Store the ID of the Road the ParkedCar is located on
 	
+	// ParkedCars don't move, so the Shape used for the sensor sweeps and collision tests is only rebuilt if the location changes
+	private Shape cachedShape = null;
+	private Rectangle2D cachedBounds = null;
+	private Double2D cachedShapeLocation = null;
+	
 	/**
 	 * Constructor.  Construct the underlying Obstacle object, and store the supplied Road ID
 	 * @param idNo (int - unique identifier for the ParkedCar object)
@@ -40,8 +45,18 @@ public class ParkedCar extends Obstacle implements Oriented2D {
 	 */
 	public boolean inShape(Double2D coord)
 	{
-		Shape carShape = getShape();		
-		return carShape.contains(coord.x, coord.y);
+		return inShape(coord.x, coord.y);
+	}	
+
+	/**
+	 * Method which returns true or false if a provided coordinate is in the shape
+	 * @param x (double - x coordinate of location we want to check for intersection with ParkedCar)
+	 * @param y (double - y coordinate of location we want to check for intersection with ParkedCar)
+	 * @return boolean (returns true if the coordinate intersects with the object)
+	 */
+	public boolean inShape(double x, double y)
+	{
+		return getCachedShape().contains(x, y);
 	}	
 
 	/**
@@ -52,12 +67,34 @@ public class ParkedCar extends Obstacle implements Oriented2D {
 	 */
 	public boolean inShape(Shape inShape)
 	{
-		Shape carShape = getShape();	
+		Shape carShape = getCachedShape();
+		
+		// The shapes can only overlap if their bounds do, which rules out all but the nearest vehicles
+		if (cachedBounds.intersects(inShape.getBounds2D()) == false) {
+			return false;
+		}
+		
 		Area carArea = new Area (carShape);
 		carArea.intersect(new Area(inShape));
 		return !carArea.isEmpty();
 	}	
 	
+	/**
+	 * Return the Shape of the ParkedCar, building it (and its bounds) again only if the location has changed.
+	 * @return Shape (the footprint of the ParkedCar, which must not be modified)
+	 */
+	private Shape getCachedShape()
+	{
+		if (cachedShape == null || cachedShapeLocation != location)
+		{
+			cachedShape = getShape();
+			cachedBounds = cachedShape.getBounds2D();
+			cachedShapeLocation = location;
+		}
+		
+		return cachedShape;
+	}
+	
 	/**
 	 * method which returns the ID of the road on which the Obstacle is located
 	 * @return int (return ID of the Road on which the ParkedCar is located)
@@ -0,0 +1,157 @@
+package modeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Record of everything that a vehicle has sensed during one step of the simulation, from one location.
+ * A new snapshot is started at the beginning of each UGV step (see UGV.step).  Each sensor sweep is only
+ * performed the first time it is requested during the step; the result is stored as an immutable Reading
+ * along with the number of times each fault was called during the sweep, and any later request for the
+ * same sweep (same sensor, bearing and sensor parameters) is answered from the Reading.
+ *
+ * As the decision logic in the step still requests each sensor at the same points (and with the same
+ * arguments) as before, each request replays the faults that the sweep called, so the 'Faults Called'
+ * counts are the same as if every request had performed its own sweep.
+ */
+public class PerceptionSnapshot {
+
+	/**
+	 * The sensors whose readings are stored in the snapshot.
+	 */
+	public enum Sensor {ROAD_MARKINGS, STATIC_OBSTACLES, MOVING_OBSTACLES, NEARLY_OFF_ROAD};
+
+	private final long step;
+	private final Double2D location;
+	private final ArrayList<Reading> readings = new ArrayList<Reading>();
+	private static final long[] NO_FAULTS_CALLED = new long[Constants.MAX_FAULTS]; // Shared by the readings which called no faults, never modified
+
+	/**
+	 * Constructor.  Start an empty snapshot for the supplied step and vehicle location.
+	 * @param inStep (long - the step of the simulation that the snapshot belongs to)
+	 * @param inLocation (Double2D - location of the vehicle during the step)
+	 */
+	public PerceptionSnapshot(long inStep, Double2D inLocation)
+	{
+		step = inStep;
+		location = inLocation;
+	}
+
+	/**
+	 * Return true if the snapshot was taken on the supplied step, at the supplied location.
+	 * @param inStep (long - the current step of the simulation)
+	 * @param inLocation (Double2D - the current location of the vehicle)
+	 * @return boolean (true if the readings in the snapshot can be used for this step and location)
+	 */
+	public boolean isCurrent(long inStep, Double2D inLocation)
+	{
+		return (step == inStep && location.equals(inLocation));
+	}
+
+	/**
+	 * Return the stored reading for the supplied sensor and sensor parameters, after replaying the faults
+	 * which were called when the reading was taken.  Returns null if the sensor has not been swept with
+	 * these parameters yet during this step.
+	 * @param sim (COModel - access to the fault counts)
+	 * @param sensor (Sensor - the sensor that the reading is for)
+	 * @param key (double[] - the bearing and parameters that were used for the sweep)
+	 * @return Reading (the stored reading, or null if there isn't one)
+	 */
+	public Reading getReading(COModel sim, Sensor sensor, double[] key)
+	{
+		for (int i = 0; i < readings.size(); i++)
+		{
+			Reading reading = readings.get(i);
+			if (reading.sensor == sensor && Arrays.equals(reading.key, key))
+			{
+				for (int f = 0; f < Constants.MAX_FAULTS; f++) {
+					if (reading.faultsCalled[f] > 0) {
+						sim.setFault(f, reading.faultsCalled[f]);
+					}
+				}
+
+				return reading;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Return a copy of the current fault called counts, to be passed to addReading once the sweep has
+	 * been performed.
+	 * @param sim (COModel - access to the fault counts)
+	 * @return long[] (the number of times each fault has been called so far)
+	 */
+	public static long[] getFaultCounts(COModel sim)
+	{
+		long[] faultCounts = new long[Constants.MAX_FAULTS];
+		for (int f = 0; f < Constants.MAX_FAULTS; f++) {
+			faultCounts[f] = sim.getFaultCalled(f);
+		}
+
+		return faultCounts;
+	}
+
+	/**
+	 * Store the result of a sensor sweep which has just been performed.  The key is copied, so the caller
+	 * may reuse its array for later lookups.
+	 * @param sim (COModel - access to the fault counts)
+	 * @param sensor (Sensor - the sensor that the reading is for)
+	 * @param key (double[] - the bearing and parameters that were used for the sweep)
+	 * @param faultsBefore (long[] - the fault counts from before the sweep, see getFaultCounts)
+	 * @param points (Double2D[] - the location(s) returned by the sweep, may be null)
+	 * @param flag (boolean - the boolean returned by the sweep, if any)
+	 * @return Reading (the new reading)
+	 */
+	public Reading addReading(COModel sim, Sensor sensor, double[] key, long[] faultsBefore, Double2D[] points, boolean flag)
+	{
+		// Most sweeps don't call any faults, so those readings share an array of zero counts
+		long[] faultsCalled = NO_FAULTS_CALLED;
+		for (int f = 0; f < Constants.MAX_FAULTS; f++)
+		{
+			long called = sim.getFaultCalled(f) - faultsBefore[f];
+			if (called != 0)
+			{
+				if (faultsCalled == NO_FAULTS_CALLED) {
+					faultsCalled = new long[Constants.MAX_FAULTS];
+				}
+				faultsCalled[f] = called;
+			}
+		}
+
+		Reading reading = new Reading(sensor, key.clone(), points, flag, faultsCalled);
+		readings.add(reading);
+
+		return reading;
+	}
+
+	/**
+	 * The result of a single sensor sweep: the locations (e.g. nearest and farthest detections) or boolean
+	 * that the sweep found, and the number of times each fault was called during the sweep.
+	 */
+	public static class Reading
+	{
+		private final Sensor sensor;
+		private final double[] key;
+		private final Double2D[] points;
+		private final boolean flag;
+		private final long[] faultsCalled;
+
+		private Reading(Sensor inSensor, double[] inKey, Double2D[] inPoints, boolean inFlag, long[] inFaultsCalled)
+		{
+			sensor = inSensor;
+			key = inKey;
+			points = inPoints;
+			flag = inFlag;
+			faultsCalled = inFaultsCalled;
+		}
+
+		public Double2D getPoint(int idx) { return points[idx]; }
+		public boolean getFlag() { return flag; }
+	}
+}
@@ -25,6 +25,13 @@ public class Road extends Line2D.Double implements Steppable
 	private double roadLength;
 	private double direction; // This can range from 0 (incl) to 180 (excl) where 0 is equivalent to N/S and 90 to E/W
 	
+	// Roads don't move once they have been constructed, so the rectangles used by the sensor sweeps and the lines
+	// used by COModel.snapToLane and the AccidentDetector are built once and reused (getSurface, getLine and getThinLine
+	// still return new objects, as callers are free to modify those)
+	private final Rectangle2D.Double surface;
+	private final Rectangle2D.Double[] lines;
+	private final Line2D.Double[] thinLines;
+	
 	/** 
 	 * Constructor.  Store the supplied unique ID and typeNo of the road, create an appropriate line, given the 
 	 * start and end coordinates, and calculate the road length and direction.
@@ -52,6 +59,14 @@ public class Road extends Line2D.Double implements Steppable
 		} else {
 			// TODO - Raise an error here
 		}
+		
+		surface = getSurface();
+		lines = new Rectangle2D.Double[LineType.values().length];
+		thinLines = new Line2D.Double[LineType.values().length];
+		for (LineType lineType : LineType.values()) {
+			lines[lineType.ordinal()] = getLine(lineType);
+			thinLines[lineType.ordinal()] = getThinLine(lineType);
+		}
 	}	
 		
 	/**
@@ -139,12 +154,34 @@ public class Road extends Line2D.Double implements Steppable
 	 */
 	public boolean inShape(Double2D coord)
 	{
-		// Construct a rectangle that is the size of the whole road area (rather than just the centre line)
-		Rectangle2D.Double roadSurface = getSurface();
-		
+		return inShape(coord.x, coord.y);
+	}
+	
+	/**
+	 * Method returns true if the supplied location intersects with the road object (when extended by required width), false 
+	 * otherwise.  Version of inShape(Double2D) which doesn't need a Double2D to be allocated for the location.
+	 * @param x (double - x coordinate of location to test for intersection with the Road object)
+	 * @param y (double - y coordinate of location to test for intersection with the Road object)
+	 * @return boolean (returns true if the supplied location intersects with the footprint of the Road)
+	 */
+	public boolean inShape(double x, double y)
+	{
 		// This 'contains' method is better than the standard one which doesn't include points which are on the 
 		// eastern and southern boundaries of the shape
-		return Utility.betterContains(roadSurface, coord);
+		return Utility.betterContains(surface, x, y);
+	}
+	
+	/**
+	 * Method returns true if the supplied location is inside the footprint of the painted line of the specified type (using
+	 * the standard 'contains' test, as for getLine(inLineType).contains(x, y)).
+	 * @param inLineType (LineType - NESIDE / CENTRE / SWSIDE)
+	 * @param x (double - x coordinate of location to test)
+	 * @param y (double - y coordinate of location to test)
+	 * @return boolean (returns true if the supplied location is on the selected painted line)
+	 */
+	public boolean lineContains(LineType inLineType, double x, double y)
+	{
+		return lines[inLineType.ordinal()].contains(x, y);
 	}
 		
 	/**
@@ -154,10 +191,28 @@ public class Road extends Line2D.Double implements Steppable
 	 */
 	public boolean inShape(Rectangle2D.Double inRectangle)
 	{
-		// Construct a rectangle that is the size of the whole road area (rather than just the centre line)
-		Rectangle2D.Double roadSurface = getSurface();
-		
-		return roadSurface.intersects(inRectangle);
+		return surface.intersects(inRectangle);
+	}
+	
+	/**
+	 * Method returns true if the supplied location is strictly inside the footprint of the road (i.e. not on its boundary).
+	 * Any other road which contains such a location must overlap this road (see RoadNetwork.getConnectedRoads).
+	 * @param coord (Double2D - coordinates of location to test)
+	 * @return boolean (returns true if the supplied location is inside the footprint of the Road, and not on its boundary)
+	 */
+	public boolean inInterior(Double2D coord)
+	{
+		return (coord.x > surface.x && coord.x < surface.x + surface.width && coord.y > surface.y && coord.y < surface.y + surface.height);
+	}
+	
+	/**
+	 * Method returns true if the supplied rectangle lies entirely within the footprint of the road, false otherwise
+	 * @param inRectangle (Rectangle2D - rectangle to test)
+	 * @return boolean (returns true if the supplied rectangle is contained by the footprint of the Road)
+	 */
+	public boolean containsRect(Rectangle2D inRectangle)
+	{
+		return surface.contains(inRectangle);
 	}	
 	
 	/**
@@ -327,6 +382,28 @@ public class Road extends Line2D.Double implements Steppable
 		return paintedLine;
 	}
 	
+	/**
+	 * Return the rectangle representing the painted line of the required type (see getLine), without building
+	 * a new one.
+	 * @param inLineType (LineType - type identifier for line required: NESIDE/SWSIDE/CENTRE)
+	 * @return Rectangle2D.Double (the footprint of the painted line, which must not be modified)
+	 */
+	public Rectangle2D.Double getSharedLine(LineType inLineType)
+	{
+		return lines[inLineType.ordinal()];
+	}
+	
+	/**
+	 * Return the line representing the inside edge of the required road marking (see getThinLine), without 
+	 * building a new one.
+	 * @param inLineType (LineType - type identifier for line required: NESIDE/SWSIDE)
+	 * @return Line2D.Double (the inside edge of the road marking, which must not be modified)
+	 */
+	public Line2D.Double getSharedThinLine(LineType inLineType)
+	{
+		return thinLines[inLineType.ordinal()];
+	}
+	
 	/*
 	 * This method returns 1 for N or E; 2 for S or W
 	 * @param coord (Double2D - coordinates of location on the Road at which we want to check the lane direction)
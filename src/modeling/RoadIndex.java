@@ -0,0 +1,162 @@
+package modeling;
+
+import java.awt.geom.Rectangle2D;
+
+import sim.util.Bag;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Spatial index of the (axis-aligned) roads on the map, which allows the road at a location to be found
+ * without checking every road.  The map is divided into square cells, and each cell stores the indices of
+ * the roads whose surface overlaps it, in the same order as the roads Bag.  A query only tests the roads
+ * listed for the cell containing the location, using the same containment test as Road.inShape, so it
+ * always returns the same road as a linear search through the Bag would (the first one found).
+ */
+public class RoadIndex {
+
+	private static final double CELL_SIZE = Road.roadWidth;
+
+	private final Road[] roads;
+	private final Rectangle2D.Double[] surfaces;
+	private final int[][][] cellRoads; // indexed [x cell][y cell], lists indices into roads
+	private final int noCellsX;
+	private final int noCellsY;
+
+	/**
+	 * Constructor.  Build the index for the supplied roads.
+	 * @param inRoads (Bag - the roads on the map)
+	 * @param worldX (double - width of the map)
+	 * @param worldY (double - height of the map)
+	 */
+	public RoadIndex(Bag inRoads, double worldX, double worldY)
+	{
+		roads = new Road[inRoads.size()];
+		surfaces = new Rectangle2D.Double[inRoads.size()];
+		noCellsX = (int) Math.floor(worldX / CELL_SIZE) + 1;
+		noCellsY = (int) Math.floor(worldY / CELL_SIZE) + 1;
+
+		int[][] cellCounts = new int[noCellsX][noCellsY];
+
+		for (int r = 0; r < roads.length; r++)
+		{
+			roads[r] = (Road) inRoads.get(r);
+			surfaces[r] = roads[r].getSurface();
+		}
+
+		// Count the roads in each cell first, so that each cell can be given an array of the right size
+		for (int r = 0; r < roads.length; r++)
+		{
+			for (int i = getCellX(surfaces[r].getMinX()); i <= getCellX(surfaces[r].getMaxX()); i++) {
+				for (int j = getCellY(surfaces[r].getMinY()); j <= getCellY(surfaces[r].getMaxY()); j++) {
+					cellCounts[i][j]++;
+				}
+			}
+		}
+
+		cellRoads = new int[noCellsX][noCellsY][];
+		for (int i = 0; i < noCellsX; i++) {
+			for (int j = 0; j < noCellsY; j++) {
+				cellRoads[i][j] = new int[cellCounts[i][j]];
+				cellCounts[i][j] = 0;
+			}
+		}
+
+		// Roads are added in Bag order so that queries find the same road as a linear search
+		for (int r = 0; r < roads.length; r++)
+		{
+			for (int i = getCellX(surfaces[r].getMinX()); i <= getCellX(surfaces[r].getMaxX()); i++) {
+				for (int j = getCellY(surfaces[r].getMinY()); j <= getCellY(surfaces[r].getMaxY()); j++) {
+					cellRoads[i][j][cellCounts[i][j]++] = r;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the number of roads which are included in the index.
+	 * @return int (number of roads in the index)
+	 */
+	public int getNoRoads() { return roads.length; }
+
+	/**
+	 * Return the first road (in the order of the roads Bag) whose surface contains the supplied location.
+	 * @param coord (Double2D - the location to check)
+	 * @return Road (the road at the location, or null if the location is not on a road)
+	 */
+	public Road getRoadAtPoint(Double2D coord)
+	{
+		int r = getRoadIdxAtPoint(coord);
+		return (r == -1) ? null : roads[r];
+	}
+
+	/**
+	 * Return the index of the first road (in the order of the roads Bag) whose surface contains the supplied location.
+	 * @param coord (Double2D - the location to check)
+	 * @return int (index of the road at the location, or -1 if the location is not on a road)
+	 */
+	public int getRoadIdxAtPoint(Double2D coord)
+	{
+		// Anything outside the indexed area is checked against all of the roads so that we still return
+		// exactly the same result as a linear search (although no road surface should extend this far).
+		if (coord.x < 0 || coord.y < 0 || coord.x >= noCellsX * CELL_SIZE || coord.y >= noCellsY * CELL_SIZE)
+		{
+			for (int r = 0; r < roads.length; r++)
+			{
+				if (Utility.betterContains(surfaces[r], coord) == true) {
+					return r;
+				}
+			}
+
+			return -1;
+		}
+
+		int[] candidates = cellRoads[getCellX(coord.x)][getCellY(coord.y)];
+		for (int c = 0; c < candidates.length; c++)
+		{
+			if (Utility.betterContains(surfaces[candidates[c]], coord) == true) {
+				return candidates[c];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Return the lane frame (road id, distance along the road, offset from the centre line and lane) of
+	 * the supplied location.
+	 * @param coord (Double2D - the location to convert into the lane frame)
+	 * @return LaneFrame (the lane frame of the location, or null if the location is not on a road)
+	 */
+	public LaneFrame getLaneFrame(Double2D coord)
+	{
+		Road road = getRoadAtPoint(coord);
+
+		if (road == null) {
+			return null;
+		}
+
+		return new LaneFrame(road, coord);
+	}
+
+	/**
+	 * Return the index of the column of cells containing the supplied x coordinate, limited to the grid.
+	 * @param x (double - x coordinate)
+	 * @return int (index of cell column)
+	 */
+	private int getCellX(double x)
+	{
+		return Math.max(0, Math.min(noCellsX-1, (int) Math.floor(x / CELL_SIZE)));
+	}
+
+	/**
+	 * Return the index of the row of cells containing the supplied y coordinate, limited to the grid.
+	 * @param y (double - y coordinate)
+	 * @return int (index of cell row)
+	 */
+	private int getCellY(double y)
+	{
+		return Math.max(0, Math.min(noCellsY-1, (int) Math.floor(y / CELL_SIZE)));
+	}
+}
@@ -0,0 +1,345 @@
+package modeling;
+
+import sim.util.Bag;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Graph of the road network of a map: the junctions are the nodes, and the stretches of road between adjacent
+ * junctions on the same road are the edges.  The graph is built by COModelBuilder as the map is generated (each
+ * road and junction is added to the graph at the same time as it is added to the COModel), and is kept with
+ * the map (see COModel.getRoadNetwork), so that the connectivity of the network does not have to be rediscovered
+ * by comparing every junction with every road.
+ *
+ * The junctions and roads are numbered in the same order as the junctions and roads Bags of the COModel.  The
+ * junctions on each road are kept in order along the road, and whenever a junction is added to a road, the edge
+ * between the junctions either side of it is split in two.  The dead ends (junctions with only one arm, see
+ * Junction.isDeadEnd) are flagged when they are added, along with the location at which a DumbCar can enter
+ * the network there.
+ *
+ * For each road, the roads which share a junction with it (including the road itself) are also kept, in order of
+ * index.  COModelBuilder does not allow a new road to overlap any road other than the one it branches from (at
+ * the junction which joins them), so these are the only roads whose surfaces can overlap the road.
+ */
+public class RoadNetwork {
+
+	private final Bag roads = new Bag();
+	private final Bag nodes = new Bag(); // Node for each junction
+	private final Bag roadNodes = new Bag(); // Bag of the Nodes on each road, in order of increasing x or y
+	private final Bag edges = new Bag(); // All of the Edges
+	private final Bag deadEnds = new Bag(); // Nodes of the dead ends, in the order in which they were added
+	private final Bag connectedRoads = new Bag(); // int[] of the roads which share a junction with each road, in order
+
+	/**
+	 * Remove all of the junctions and roads, ready for a new map.
+	 */
+	public void clear()
+	{
+		roads.clear();
+		nodes.clear();
+		roadNodes.clear();
+		edges.clear();
+		deadEnds.clear();
+		connectedRoads.clear();
+	}
+
+	/**
+	 * Add a road to the network (with no junctions on it yet).
+	 * @param road (Road - the road, which must be added to the end of the COModel roads Bag at the same time)
+	 * @return int (index of the road)
+	 */
+	public int addRoad(Road road)
+	{
+		roads.add(road);
+		roadNodes.add(new Bag());
+		connectedRoads.add(new int[] {roads.size() - 1});
+		return roads.size() - 1;
+	}
+
+	/**
+	 * Add a junction to the network (not yet on any road).
+	 * @param junction (Junction - the junction, which must be added to the end of the COModel junctions Bag at the same time)
+	 * @return int (index of the junction)
+	 */
+	public int addJunction(Junction junction)
+	{
+		Node node = new Node(nodes.size(), junction);
+		nodes.add(node);
+
+		if (node.isDeadEnd == true) {
+			deadEnds.add(node);
+		}
+
+		return node.index;
+	}
+
+	/**
+	 * Record that a junction lies on a road, connecting it to the junctions either side of it on the road (if
+	 * there are any), in place of the edge between them.  Nothing is changed if the junction is already on the road.
+	 * @param jctIdx (int - index of the junction)
+	 * @param roadIdx (int - index of the road)
+	 */
+	public void addJunctionToRoad(int jctIdx, int roadIdx)
+	{
+		Node node = (Node) nodes.get(jctIdx);
+		Road road = (Road) roads.get(roadIdx);
+		Bag onRoad = (Bag) roadNodes.get(roadIdx);
+
+		if (onRoad.contains(node) == true) {
+			return;
+		}
+
+		// Find where the junction goes along the road
+		double position = getPosition(node, road);
+		int pos = 0;
+		while (pos < onRoad.size() && getPosition((Node) onRoad.get(pos), road) < position) {
+			pos++;
+		}
+
+		Node prev = (pos > 0) ? (Node) onRoad.get(pos - 1) : null;
+		Node next = (pos < onRoad.size()) ? (Node) onRoad.get(pos) : null;
+
+		// The junction splits the edge between its neighbours
+		if (prev != null && next != null) {
+			removeEdge(prev.getEdge(next, roadIdx));
+		}
+
+		if (prev != null) {
+			addEdge(prev, node, roadIdx);
+		}
+
+		if (next != null) {
+			addEdge(node, next, roadIdx);
+		}
+
+		onRoad.add(node);
+		for (int i = onRoad.size() - 1; i > pos; i--) {
+			onRoad.set(i, onRoad.get(i - 1));
+		}
+		onRoad.set(pos, node);
+		
+		// The road now shares the junction with any other roads that the junction is on
+		for (int i = 0; i < node.roads.length; i++) {
+			connectRoads(roadIdx, node.roads[i]);
+			connectRoads(node.roads[i], roadIdx);
+		}
+		node.roads = addToSorted(node.roads, roadIdx);
+	}
+
+	public int getNoJunctions() { return nodes.size(); }
+	public int getNoRoads() { return roads.size(); }
+	public int getNoEdges() { return edges.size(); }
+	public int getNoDeadEnds() { return deadEnds.size(); }
+
+	public Junction getJunction(int jctIdx) { return ((Node) nodes.get(jctIdx)).junction; }
+	public Road getRoad(int roadIdx) { return (Road) roads.get(roadIdx); }
+	public Edge getEdge(int edgeIdx) { return (Edge) edges.get(edgeIdx); }
+
+	/**
+	 * Return the junctions on a road, in order of increasing x (E/W roads) or y (N/S roads).
+	 * @param roadIdx (int - index of the road)
+	 * @return int[] (indices of the junctions on the road)
+	 */
+	public int[] getJunctionsOnRoad(int roadIdx)
+	{
+		Bag onRoad = (Bag) roadNodes.get(roadIdx);
+		int[] retVal = new int[onRoad.size()];
+
+		for (int i = 0; i < retVal.length; i++) {
+			retVal[i] = ((Node) onRoad.get(i)).index;
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Return the roads which share a junction with a road, i.e. the only roads whose surfaces can overlap it.
+	 * @param roadIdx (int - index of the road)
+	 * @return int[] (indices of the roads, including roadIdx itself, in increasing order, which must not be modified)
+	 */
+	public int[] getConnectedRoads(int roadIdx)
+	{
+		return (int[]) connectedRoads.get(roadIdx);
+	}
+
+	/**
+	 * Return the edges which meet at a junction (one for each arm of the junction which leads to another junction).
+	 * @param jctIdx (int - index of the junction)
+	 * @return Bag (the Edges at the junction, which must not be modified)
+	 */
+	public Bag getEdges(int jctIdx)
+	{
+		return ((Node) nodes.get(jctIdx)).edges;
+	}
+
+	/**
+	 * Return whether a junction is a dead end (has only one arm, see Junction.isDeadEnd).
+	 * @param jctIdx (int - index of the junction)
+	 * @return boolean (true if the junction is a dead end)
+	 */
+	public boolean isDeadEnd(int jctIdx)
+	{
+		return ((Node) nodes.get(jctIdx)).isDeadEnd;
+	}
+
+	/**
+	 * Return the index of the i-th dead end, in the order in which the dead ends were added.
+	 * @param i (int - number of the dead end, from 0 to getNoDeadEnds()-1)
+	 * @return int (index of the junction)
+	 */
+	public int getDeadEnd(int i)
+	{
+		return ((Node) deadEnds.get(i)).index;
+	}
+
+	/**
+	 * Return the location at which a DumbCar can enter the network at a dead end (see Junction.getDeadEndEntry).
+	 * @param jctIdx (int - index of the junction)
+	 * @return Double2D (the entry location, or (-1,-1) if the junction is not a dead end)
+	 */
+	public Double2D getDeadEndEntry(int jctIdx)
+	{
+		return ((Node) nodes.get(jctIdx)).deadEndEntry;
+	}
+
+	/**
+	 * Return the position of a junction along a road: its y coordinate for a N/S road, or its x coordinate for an
+	 * E/W road.
+	 * @param node (Node - the junction)
+	 * @param road (Road - the road)
+	 * @return double (the position along the road)
+	 */
+	private static double getPosition(Node node, Road road)
+	{
+		return (road.getIsNS() == true) ? node.junction.getLocation().y : node.junction.getLocation().x;
+	}
+
+	/**
+	 * Record that a road shares a junction with another road.
+	 * @param roadIdx (int - index of the road)
+	 * @param otherIdx (int - index of the other road)
+	 */
+	private void connectRoads(int roadIdx, int otherIdx)
+	{
+		connectedRoads.set(roadIdx, addToSorted((int[]) connectedRoads.get(roadIdx), otherIdx));
+	}
+
+	/**
+	 * Return a copy of a sorted array with a value added in order, or the array itself if it already contains the value.
+	 * @param values (int[] - the values, in increasing order)
+	 * @param value (int - the value to add)
+	 * @return int[] (the values, in increasing order)
+	 */
+	private static int[] addToSorted(int[] values, int value)
+	{
+		int pos = 0;
+		while (pos < values.length && values[pos] < value) {
+			pos++;
+		}
+
+		if (pos < values.length && values[pos] == value) {
+			return values;
+		}
+
+		int[] retVal = new int[values.length + 1];
+		System.arraycopy(values, 0, retVal, 0, pos);
+		retVal[pos] = value;
+		System.arraycopy(values, pos, retVal, pos + 1, values.length - pos);
+		return retVal;
+	}
+
+	/**
+	 * Connect two junctions which are adjacent on a road.
+	 * @param from (Node - the junction nearer the start of the road, i.e. lower x or y)
+	 * @param to (Node - the junction nearer the end of the road)
+	 * @param roadIdx (int - index of the road)
+	 */
+	private void addEdge(Node from, Node to, int roadIdx)
+	{
+		Edge edge = new Edge(from.index, to.index, roadIdx, from.junction.getLocation().distance(to.junction.getLocation()));
+		from.edges.add(edge);
+		to.edges.add(edge);
+		edges.add(edge);
+	}
+
+	/**
+	 * Disconnect two junctions.
+	 * @param edge (Edge - the edge between them)
+	 */
+	private void removeEdge(Edge edge)
+	{
+		((Node) nodes.get(edge.from)).edges.removeNonDestructively(edge);
+		((Node) nodes.get(edge.to)).edges.removeNonDestructively(edge);
+		edges.removeNonDestructively(edge);
+	}
+
+	/**
+	 * A stretch of road between two adjacent junctions.
+	 */
+	public static class Edge
+	{
+		public final int from; // Index of the junction at the lower x or y end
+		public final int to; // Index of the junction at the higher x or y end
+		public final int road; // Index of the road
+		public final double length; // Distance between the centres of the junctions
+
+		public Edge(int inFrom, int inTo, int inRoad, double inLength)
+		{
+			from = inFrom;
+			to = inTo;
+			road = inRoad;
+			length = inLength;
+		}
+
+		/**
+		 * Return the junction at the other end of the edge.
+		 * @param jctIdx (int - index of the junction at one end)
+		 * @return int (index of the junction at the other end)
+		 */
+		public int getOther(int jctIdx)
+		{
+			return (jctIdx == from) ? to : from;
+		}
+	}
+
+	/**
+	 * A junction, the roads it is on, and the edges which meet at it.
+	 */
+	private static class Node
+	{
+		public final int index;
+		public final Junction junction;
+		public final Bag edges = new Bag();
+		public int[] roads = new int[0]; // Indices of the roads the junction is on, in increasing order
+		public final boolean isDeadEnd;
+		public final Double2D deadEndEntry;
+
+		public Node(int inIndex, Junction inJunction)
+		{
+			index = inIndex;
+			junction = inJunction;
+			isDeadEnd = inJunction.isDeadEnd();
+			deadEndEntry = (isDeadEnd == true) ? inJunction.getDeadEndEntry() : new Double2D(-1, -1);
+		}
+
+		/**
+		 * Return the edge between this junction and another on the supplied road.
+		 * @param other (Node - the other junction)
+		 * @param roadIdx (int - index of the road)
+		 * @return Edge (the edge)
+		 */
+		public Edge getEdge(Node other, int roadIdx)
+		{
+			for (int e = 0; e < edges.size(); e++)
+			{
+				Edge edge = (Edge) edges.get(e);
+				if (edge.road == roadIdx && edge.getOther(index) == other.index) {
+					return edge;
+				}
+			}
+
+			throw new RuntimeException("RoadNetwork: no edge between junctions " + index + " and " + other.index + " on road " + roadIdx + ".");
+		}
+	}
+}
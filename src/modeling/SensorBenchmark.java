@@ -0,0 +1,309 @@
+package modeling;
+
+import java.lang.management.ManagementFactory;
+
+import ec.util.MersenneTwisterFast;
+import sim.util.Bag;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Script file to measure the throughput and allocation rate of the sensor and geometry queries which account
+ * for most of the cost of a simulation step: the road marking, moving obstacle and static obstacle sensors of
+ * the vehicles, the on-road test, and the roadAtPoint/snapToLane/snapToKerb queries used when placing entities.
+ * Any change to one of these paths should be checked here before and after, so that the improvement can be
+ * shown rather than assumed.
+ *
+ * This is a self-contained harness rather than a JMH suite, as the project is built from the MASON and ECJ jars
+ * alone.  It follows the same approach as JMH: each query is called repeatedly for a warm-up period (so that
+ * the JIT has settled down), and then for a measurement period, in which the number of calls per second and
+ * the bytes allocated per call (measured by the ThreadMXBean, as with JMH's '-prof gc') are recorded.  The
+ * results of the calls are combined into a checksum which is reported at the end, so that the JIT cannot
+ * discard the calls.  The class is in the modeling package as most of the sensors are protected.
+ *
+ * The fixtures are headless simulations generated from a fixed set of external seeds, which are run for a
+ * number of steps so that the vehicles are spread out over the network in representative positions, and a
+ * fixed set of random points over each map.  The vehicle sensors are called for every vehicle in turn, and
+ * a new perception snapshot is started before each call so that every call performs its sweep (see
+ * PerceptionSnapshot).
+ *
+ * Usage: SensorBenchmark [noMaps] [warmupMillis] [measuredMillis] [settleSteps]
+ */
+public class SensorBenchmark {
+
+	private static final int DEFAULT_NO_MAPS = 6;
+	private static final int DEFAULT_WARMUP_MILLIS = 1000; // per query, per map
+	private static final int DEFAULT_MEASURED_MILLIS = 2000; // per query, per map
+	private static final int DEFAULT_SETTLE_STEPS = 50;
+	private static final int NO_POINTS = 500; // Random points per map for the geometry queries
+	private static final int BATCH = 16; // Calls between checks of the clock
+
+	// Sensor parameters, as used by the UGV
+	private static final double ROAD_VIEWING_ANGLE = 90;
+	private static final double ROAD_VIEWING_RANGE = 10;
+	private static final double MOV_OBS_VIEWING_ANGLE = 30;
+	private static final double MOV_OBS_VIEWING_RANGE = 100;
+	private static final double SENSITIVITY = 0.5;
+
+	private static com.sun.management.ThreadMXBean threadBean;
+	private static long threadId;
+
+	public static void main(String[] args) {
+
+		int noMaps = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NO_MAPS;
+		long warmupNanos = ((args.length > 1) ? Long.parseLong(args[1]) : DEFAULT_WARMUP_MILLIS) * 1000000L;
+		long measuredNanos = ((args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_MEASURED_MILLIS) * 1000000L;
+		int settleSteps = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_SETTLE_STEPS;
+
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (threadBean.isThreadAllocatedMemorySupported() == false) {
+			throw new RuntimeException("SensorBenchmark: this JVM cannot measure thread allocation.");
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		threadId = Thread.currentThread().getId();
+
+		Bag fixtures = new Bag();
+		for (int m = 1; m <= noMaps; m++)
+		{
+			Fixture f = new Fixture(m, settleSteps);
+			if (f.ugvs.size() == 0) {
+				System.out.println("Map " + m + ": the simulation finished while settling, map not used.");
+			} else {
+				fixtures.add(f);
+			}
+		}
+
+		if (fixtures.size() == 0) {
+			throw new RuntimeException("SensorBenchmark: no maps could be used.");
+		}
+
+		long checksum = 0;
+		Operation[] operations = buildOperations();
+
+		for (int o = 0; o < operations.length; o++)
+		{
+			long totalCalls = 0;
+			long totalNanos = 0;
+			long totalBytes = 0;
+
+			for (int f = 0; f < fixtures.size(); f++)
+			{
+				Fixture fixture = (Fixture) fixtures.get(f);
+
+				Measurement warmup = measure(operations[o], fixture, warmupNanos);
+				Measurement result = measure(operations[o], fixture, measuredNanos);
+
+				checksum += warmup.checksum + result.checksum;
+				totalCalls += result.calls;
+				totalNanos += result.nanos;
+				totalBytes += result.bytes;
+			}
+
+			double callsPerSec = totalCalls / (totalNanos / 1e9);
+			System.out.println(operations[o].getName() + ": " + String.format("%.1f", callsPerSec) + " calls/s, " +
+					String.format("%.1f", (double) totalBytes / totalCalls) + " bytes/call (" + totalCalls + " calls over " +
+					fixtures.size() + " maps).");
+		}
+
+		System.out.println("Checksum: " + checksum);
+
+		for (int f = 0; f < fixtures.size(); f++) {
+			((Fixture) fixtures.get(f)).sim.finish();
+		}
+	}
+
+	/**
+	 * Call the supplied operation repeatedly on the supplied fixture for (at least) the supplied period.
+	 * @param op (Operation - the query to call)
+	 * @param fixture (Fixture - the map and vehicles to call it on)
+	 * @param period (long - how long to keep calling it, in ns)
+	 * @return Measurement (number of calls, time taken, bytes allocated and checksum of the results)
+	 */
+	private static Measurement measure(Operation op, Fixture fixture, long period)
+	{
+		Measurement retVal = new Measurement();
+		int i = 0;
+
+		long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+
+		do {
+			for (int b = 0; b < BATCH; b++) {
+				retVal.checksum += op.run(fixture, i++);
+			}
+			retVal.nanos = System.nanoTime() - start;
+		} while (retVal.nanos < period);
+
+		retVal.bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+		retVal.calls = i;
+		return retVal;
+	}
+
+	/**
+	 * Build the list of queries to measure.
+	 * @return Operation[] (the queries, in the order they are to be reported)
+	 */
+	private static Operation[] buildOperations()
+	{
+		return new Operation[] {
+			new Operation("Car.locateRoadMarkings_AllRoads") {
+				public long run(Fixture f, int i) {
+					Car car = f.getVehicle(i);
+					car.startPerception(f.sim);
+					return hash(car.locateRoadMarkings_AllRoads(f.sim.roads, false, f.sim, Constants.genLineType.NEARSIDE,
+							ROAD_VIEWING_ANGLE, ROAD_VIEWING_RANGE, SENSITIVITY));
+				}
+			},
+			new Operation("Car.checkAllMovingObstacles") {
+				public long run(Fixture f, int i) {
+					Car car = f.getVehicle(i);
+					car.startPerception(f.sim);
+					return hash(car.checkAllMovingObstacles(f.sim, f.sim.cars, (i % 2 == 0), MOV_OBS_VIEWING_ANGLE,
+							MOV_OBS_VIEWING_RANGE, SENSITIVITY));
+				}
+			},
+			new Operation("UGV.checkAllObstacles") {
+				public long run(Fixture f, int i) {
+					UGV ugv = f.getUGV(i);
+					ugv.startPerception(f.sim);
+					return hash(ugv.checkAllObstacles(f.sim, ugv.getDirection(), true, 0));
+				}
+			},
+			new Operation("UGV.checkAllMovingObsCircle") {
+				public long run(Fixture f, int i) {
+					return (f.getUGV(i).checkAllMovingObsCircle(f.sim, f.sim.cars, SENSITIVITY) == true) ? 1 : 0;
+				}
+			},
+			new Operation("COModel.roadAtPoint") {
+				public long run(Fixture f, int i) {
+					return (f.sim.roadAtPoint(f.getPoint(i), f.sim.roads) == true) ? 1 : 0;
+				}
+			},
+			new Operation("COModel.snapToLane") {
+				public long run(Fixture f, int i) {
+					Double2D point = f.getPoint(i);
+					return hash(f.sim.snapToLane(point.x, point.y).startLoc);
+				}
+			},
+			new Operation("COModel.snapToKerb") {
+				public long run(Fixture f, int i) {
+					Double2D point = f.getPoint(i);
+					return hash(f.sim.snapToKerb(point.x, point.y));
+				}
+			},
+			new Operation("Car.onRoad") {
+				public long run(Fixture f, int i) {
+					Car car = f.getVehicle(i);
+					return (car.onRoad(f.sim.roads, car.getShape()) == true) ? 1 : 0;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Combine the coordinates of a sensor result into a number for the checksum.
+	 * @param coord (Double2D - the result, may be null)
+	 * @return long (a value which depends on both coordinates)
+	 */
+	private static long hash(Double2D coord)
+	{
+		if (coord == null) {
+			return 0;
+		}
+
+		return Double.doubleToLongBits(coord.x) * 31 + Double.doubleToLongBits(coord.y);
+	}
+
+	/**
+	 * A query to be measured.
+	 */
+	private static abstract class Operation
+	{
+		private final String name;
+
+		public Operation(String inName)
+		{
+			name = inName;
+		}
+
+		public String getName() { return name; }
+
+		/**
+		 * Call the query once, for the i-th vehicle or point of the fixture (wrapping around as required).
+		 * @param f (Fixture - the map and vehicles to use)
+		 * @param i (int - number of the call, used to choose the vehicle or point)
+		 * @return long (a value which depends on the result of the query, for the checksum)
+		 */
+		public abstract long run(Fixture f, int i);
+	}
+
+	/**
+	 * The results of a measurement period.
+	 */
+	private static class Measurement
+	{
+		public long calls = 0;
+		public long nanos = 0;
+		public long bytes = 0;
+		public long checksum = 0;
+	}
+
+	/**
+	 * A headless simulation on a map generated from a fixed external seed, which has been run until the
+	 * vehicles are in representative positions, along with a fixed set of random points over the map.
+	 */
+	private static class Fixture
+	{
+		public final COModel sim;
+		public final Bag vehicles = new Bag(); // Active UGVs and DumbCars
+		public final Bag ugvs = new Bag(); // Active UGVs
+		public final Double2D[] points = new Double2D[NO_POINTS];
+
+		/**
+		 * Constructor.  Generate the map for the supplied number, and step the simulation.
+		 * @param mapNo (int - number of the map, used to derive the seeds)
+		 * @param settleSteps (int - number of steps to run before taking the vehicle positions)
+		 */
+		public Fixture(int mapNo, int settleSteps)
+		{
+			// Fixed seeds, as in StepAllocationBenchmark, so that the same maps are measured every time
+			sim = new COModel(mapNo, Constants.WorldXVal, Constants.WorldYVal, false, 0, mapNo, true);
+			COModelBuilder sBuilder = new COModelBuilder(sim);
+			sim.reset();
+			sim.setExternalSeed(mapNo * 7919);
+			sBuilder.generateSimulation();
+			sim.setHeadless(true);
+			sim.start();
+
+			boolean running = true;
+			for (int s = 0; s < settleSteps && running == true; s++) {
+				running = sim.schedule.step(sim);
+			}
+
+			if (running == true)
+			{
+				for (int i = 0; i < sim.toSchedule.size(); i++)
+				{
+					Car car = (Car) sim.toSchedule.get(i);
+					if (car.isActive == true && car.getLocation() != null)
+					{
+						vehicles.add(car);
+						if (car instanceof UGV) {
+							ugvs.add(car);
+						}
+					}
+				}
+			}
+
+			MersenneTwisterFast random = new MersenneTwisterFast(mapNo);
+			for (int p = 0; p < NO_POINTS; p++) {
+				points[p] = new Double2D(random.nextDouble() * Constants.WorldXVal, random.nextDouble() * Constants.WorldYVal);
+			}
+		}
+
+		public Car getVehicle(int i) { return (Car) vehicles.get(i % vehicles.size()); }
+		public UGV getUGV(int i) { return (UGV) ugvs.get(i % ugvs.size()); }
+		public Double2D getPoint(int i) { return points[i % points.length]; }
+	}
+}
@@ -0,0 +1,138 @@
+package modeling;
+
+/**
+ * @author hh940
+ *
+ * Counts of the work done by the ray-casting sensor methods of the vehicles during a run, so that maps on which
+ * the sensors are pathologically expensive (e.g. because of long, straight rays over large junctions, or many
+ * roads or cars to check) can be identified, and excluded or down-sampled.  The amount of work done by a sensor
+ * depends on the map: each ray stops early when it leaves the road, and the sweeps check every road, car or
+ * obstacle in turn.  For each sensor method and vehicle type, the following are counted:
+ *
+ *   CALLS - calls of the sensor method (i.e. one per road, car or obstacle checked by a sweep)
+ *   RAYS - rays cast, i.e. bearings searched
+ *   SAMPLES - test locations evaluated along the rays
+ *   SHAPE_TESTS - tests of a test location against the shape of a vehicle, obstacle or road marking
+ *   ROAD_TESTS - tests of whether a test location is still on the road surface
+ *
+ * Only the work actually done is counted: a sweep which is answered from the PerceptionSnapshot is not counted
+ * again.  The counters are cleared at the start of each run (COModel.start), and the totals are written to the
+ * SensorCounters file (one line per run, alongside the AccidentSummary file, whose layout is unchanged), and the
+ * full breakdown to the AccidentLog, at the end of the run (COModel.finish).
+ *
+ * As with the StepProfiler, the counters must only be updated by the thread which steps the simulation (the
+ * DumbCars do not use these sensors).
+ */
+public class SensorCounters {
+
+	/**
+	 * The sensor methods which are counted (the methods of Car and UGV with the same names).
+	 */
+	public static enum Sensor {ROAD_MARKINGS, MOVING_OBSTACLES, STATIC_OBSTACLES, MOVING_OBSTACLES_CIRCLE};
+
+	/**
+	 * The types of vehicle which the work is counted for.
+	 */
+	public static enum Vehicle {UGV, DUMBCAR};
+
+	/**
+	 * The measures of work which are counted.
+	 */
+	public static enum Counter {CALLS, RAYS, SAMPLES, SHAPE_TESTS, ROAD_TESTS};
+
+	private final long[][][] counts = new long[Sensor.values().length][Vehicle.values().length][Counter.values().length];
+
+	/**
+	 * Clear the counters, ready for a new run.
+	 */
+	public void reset()
+	{
+		for (int s = 0; s < counts.length; s++) {
+			for (int v = 0; v < counts[s].length; v++) {
+				for (int c = 0; c < counts[s][v].length; c++) {
+					counts[s][v][c] = 0;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the work done by one call of a sensor method.
+	 * @param sensor (Sensor - the sensor method)
+	 * @param vehicle (Vehicle - the type of the vehicle which called it)
+	 * @param noRays (long - number of rays cast)
+	 * @param noSamples (long - number of test locations evaluated)
+	 * @param noShapeTests (long - number of tests against the shape of a vehicle, obstacle or road marking)
+	 * @param noRoadTests (long - number of tests for the road surface)
+	 */
+	public void add(Sensor sensor, Vehicle vehicle, long noRays, long noSamples, long noShapeTests, long noRoadTests)
+	{
+		long[] c = counts[sensor.ordinal()][vehicle.ordinal()];
+		c[Counter.CALLS.ordinal()]++;
+		c[Counter.RAYS.ordinal()] += noRays;
+		c[Counter.SAMPLES.ordinal()] += noSamples;
+		c[Counter.SHAPE_TESTS.ordinal()] += noShapeTests;
+		c[Counter.ROAD_TESTS.ordinal()] += noRoadTests;
+	}
+
+	/**
+	 * Return the count for the supplied sensor method, vehicle type and measure during this run.
+	 * @param sensor (Sensor - the sensor method)
+	 * @param vehicle (Vehicle - the type of vehicle)
+	 * @param counter (Counter - the measure of work)
+	 * @return long (the count)
+	 */
+	public long get(Sensor sensor, Vehicle vehicle, Counter counter)
+	{
+		return counts[sensor.ordinal()][vehicle.ordinal()][counter.ordinal()];
+	}
+
+	/**
+	 * Return the count for the supplied measure, over all the sensor methods and vehicle types, during this run.
+	 * @param counter (Counter - the measure of work)
+	 * @return long (the total count)
+	 */
+	public long getTotal(Counter counter)
+	{
+		long retVal = 0;
+
+		for (int s = 0; s < counts.length; s++) {
+			for (int v = 0; v < counts[s].length; v++) {
+				retVal += counts[s][v][counter.ordinal()];
+			}
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Return the counts for each sensor method and vehicle type which has been used during this run, in the
+	 * form "ROAD_MARKINGS/UGV: CALLS=..., RAYS=..., ...; ...".
+	 * @return String (the counts, or "none" if no sensor has been used)
+	 */
+	public String getSummary()
+	{
+		String retVal = "";
+
+		for (int s = 0; s < counts.length; s++)
+		{
+			for (int v = 0; v < counts[s].length; v++)
+			{
+				if (counts[s][v][Counter.CALLS.ordinal()] == 0) {
+					continue;
+				}
+
+				if (retVal.length() > 0) {
+					retVal += "; ";
+				}
+
+				retVal += Sensor.values()[s] + "/" + Vehicle.values()[v] + ": ";
+				for (int c = 0; c < counts[s][v].length; c++) {
+					retVal += ((c > 0) ? ", " : "") + Counter.values()[c] + "=" + counts[s][v][c];
+				}
+			}
+		}
+
+		return (retVal.length() == 0) ? "none" : retVal;
+	}
+}
@@ -0,0 +1,219 @@
+package modeling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author hh940
+ *
+ * JDK Flight Recorder events for the simulation lifecycle (map generation, COModel.start and COModel.finish)
+ * and for the events within a run which explain its cost (accidents, junction occupancy timeouts, fault
+ * activations and the sensor sweeps), so that a slow run can be matched up with what the simulation was doing,
+ * alongside the CPU and allocation samples, in JDK Mission Control.
+ *
+ * The events are disabled unless they are switched on by the recording settings, so they cost next to nothing
+ * in a normal run: each call site creates the event and tests isEnabled before filling it in, and the JIT
+ * removes the allocation when the event is disabled.  The SimulationEvents.jfc file (alongside this class)
+ * switches them all on, and can be combined with one of the standard JDK settings, e.g.
+ *
+ *   java -XX:StartFlightRecording:settings=profile,settings=SimulationEvents.jfc,filename=run.jfr ...
+ *
+ * Sensor sweeps happen hundreds of times a step, so only one in every SWEEP_SAMPLE_INTERVAL sweeps of each
+ * vehicle is recorded (see Car.startSweepEvent), and the profile also sets a duration threshold for them.
+ * Similarly, some faults are activated for every ray of a sweep, so a fault activation is only recorded the
+ * first time the fault is activated in each step, along with the number of activations so far.
+ * Requires a JDK which includes jdk.jfr (11 or later, or 8u262 or later).
+ */
+public class SimulationEvents {
+
+	public static final int SWEEP_SAMPLE_INTERVAL = 100; // Record one sweep in this many, for each vehicle
+
+	/**
+	 * Generation of a map by COModelBuilder.generateSimulation.
+	 */
+	@Name("scovsgen.MapGeneration")
+	@Label("Map Generation")
+	@Category({"SCovSGen", "Lifecycle"})
+	@Description("Generation of the road network and entities for a map")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class MapGeneration extends Event
+	{
+		@Label("External Seed")
+		public long externalSeed;
+
+		@Label("Junctions")
+		public int noJunctions;
+
+		@Label("Roads")
+		public int noRoads;
+
+		@Label("Obstacles")
+		public int noObstacles;
+
+		@Label("Cars")
+		public int noCars;
+
+		@Label("Candidate Locations")
+		@Description("Number of candidate locations tried by the rejection loops")
+		public long noCandidates;
+	}
+
+	/**
+	 * COModel.start, which loads and schedules the entities and sets up the faults for a run.
+	 */
+	@Name("scovsgen.RunStart")
+	@Label("Run Start")
+	@Category({"SCovSGen", "Lifecycle"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class RunStart extends Event
+	{
+		@Label("Seed")
+		public long seed;
+
+		@Label("External Seed")
+		public long externalSeed;
+
+		@Label("Active Faults")
+		public int noFaults;
+	}
+
+	/**
+	 * COModel.finish, which writes out the results of a run.
+	 */
+	@Name("scovsgen.RunFinish")
+	@Label("Run Finish")
+	@Category({"SCovSGen", "Lifecycle"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class RunFinish extends Event
+	{
+		@Label("Seed")
+		public long seed;
+
+		@Label("External Seed")
+		public long externalSeed;
+
+		@Label("Steps")
+		public long steps;
+
+		@Label("Accidents")
+		public int noAccidents;
+	}
+
+	/**
+	 * An accident logged by the AccidentDetector (including the termination of a run by the timeout).
+	 */
+	@Name("scovsgen.Accident")
+	@Label("Accident")
+	@Category({"SCovSGen", "Run"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class Accident extends Event
+	{
+		@Label("Type")
+		public String type;
+
+		@Label("Car")
+		public int carID;
+
+		@Label("Step")
+		public long step;
+
+		@Label("X")
+		public double x;
+
+		@Label("Y")
+		public double y;
+
+		@Label("Details")
+		public String details;
+	}
+
+	/**
+	 * A junction whose occupancy has been cleared because the vehicle occupying it did not leave in time.
+	 */
+	@Name("scovsgen.JunctionTimeout")
+	@Label("Junction Occupancy Timeout")
+	@Category({"SCovSGen", "Run"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class JunctionTimeout extends Event
+	{
+		@Label("Junction")
+		public int junctionID;
+
+		@Label("Occupier")
+		@Description("Vehicle which was occupying the junction")
+		public long occupierID;
+
+		@Label("Vehicle")
+		@Description("Vehicle which is entering the junction")
+		public int vehicleID;
+
+		@Label("Vehicle Type")
+		public String vehicleType;
+
+		@Label("Occupied Steps")
+		public long occupiedSteps;
+
+		@Label("Step")
+		public long step;
+	}
+
+	/**
+	 * The first activation of a fault (COModel.setFault), i.e. a call of the code which the fault has altered, in
+	 * a step.
+	 */
+	@Name("scovsgen.FaultActivation")
+	@Label("Fault Activation")
+	@Category({"SCovSGen", "Run"})
+	@Enabled(false)
+	@StackTrace(false)
+	public static class FaultActivation extends Event
+	{
+		@Label("Fault")
+		public int fault;
+
+		@Label("Total Calls")
+		@Description("Number of activations of the fault so far in the run")
+		public long totalCalls;
+
+		@Label("Step")
+		public long step;
+	}
+
+	/**
+	 * A (sampled) sensor sweep by a vehicle, with the number of rays cast by the sweep.
+	 */
+	@Name("scovsgen.SensorSweep")
+	@Label("Sensor Sweep")
+	@Category({"SCovSGen", "Sensors"})
+	@Description("One in every " + SWEEP_SAMPLE_INTERVAL + " sensor sweeps of each vehicle")
+	@Enabled(false)
+	@StackTrace(false)
+	public static class SensorSweep extends Event
+	{
+		@Label("Sensor")
+		public String sensor;
+
+		@Label("Vehicle")
+		public int vehicleID;
+
+		@Label("Vehicle Type")
+		public String vehicleType;
+
+		@Label("Rays")
+		@Description("Rays cast by the sweep, including those of any sweep it triggers")
+		public long rays;
+
+		@Label("Step")
+		public long step;
+	}
+}
@@ -0,0 +1,151 @@
+package modeling;
+
+/**
+ * @author hh940
+ *
+ * Profiler which measures the wall time spent in each phase of the simulation step, so that it can be seen
+ * which part of the simulation dominates on which kind of map (e.g. junction-heavy or traffic-heavy maps).
+ * Switched on and off with COModel.setProfiling; when it is off, each call to enter or exit returns straight
+ * away, so the instrumentation can be left in place.
+ *
+ * The code of each phase is bracketed by calls to enter and exit.  The phases are nested (e.g. a UGV step
+ * includes its sensor sweeps, its junction handling and its logging), and the time between the calls is
+ * charged to the innermost phase only, so the times of the phases add up to the time of the step: UGV_DECISION
+ * is the time the UGV spends in its step other than in the sensor sweeps (UGV_PERCEPTION, the DumbCars do not
+ * use the sweeps), junction exit and occupancy handling (JUNCTION) and writing to the log files (LOGGING).
+ * The time of each invocation of a phase is added to a LatencyHistogram for the phase, which is cleared at the
+ * start of each run; the histograms are written out with the AccidentSummary record at the end of the run (see
+ * AccidentDetector.addFooter).
+ *
+ * The profiler must only be used by the thread which steps the simulation (the sensing threads of the
+ * DumbCarStepper are included in the DUMBCAR_STEP time of the stepper itself).
+ */
+public class StepProfiler {
+
+	/**
+	 * The phases of the simulation step which are measured.
+	 */
+	public static enum Phase {UGV_PERCEPTION, UGV_DECISION, DUMBCAR_STEP, ACCIDENT_DETECTOR, JUNCTION, LOGGING};
+
+	private static final int MAX_DEPTH = 16;
+
+	private boolean enabled = false;
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Phase.values().length];
+
+	// The phases which have been entered but not exited, and the time charged to each of them so far
+	private final Phase[] stack = new Phase[MAX_DEPTH];
+	private final long[] stackNanos = new long[MAX_DEPTH];
+	private int depth = 0;
+	private long lastTime = 0; // Time of the last call to enter or exit
+
+	/**
+	 * Constructor.  The profiler is disabled until setEnabled is called.
+	 */
+	public StepProfiler()
+	{
+		for (int p = 0; p < histograms.length; p++) {
+			histograms[p] = new LatencyHistogram();
+		}
+	}
+
+	public boolean isEnabled() { return enabled; }
+
+	/**
+	 * Switch the profiler on or off.  Any phases which have been entered are forgotten, so a phase which is
+	 * in progress when the profiler is switched on is not measured.
+	 * @param inEnabled (boolean - true to measure the phases)
+	 */
+	public void setEnabled(boolean inEnabled)
+	{
+		enabled = inEnabled;
+		depth = 0;
+	}
+
+	/**
+	 * Clear the histograms, ready for a new run.
+	 */
+	public void reset()
+	{
+		for (int p = 0; p < histograms.length; p++) {
+			histograms[p].clear();
+		}
+		depth = 0;
+	}
+
+	/**
+	 * Called at the start of a phase.  The time since the last call is charged to the enclosing phase.
+	 * @param phase (Phase - the phase which is starting)
+	 */
+	public void enter(Phase phase)
+	{
+		if (enabled == false) {
+			return;
+		}
+
+		long now = System.nanoTime();
+
+		if (depth > 0) {
+			stackNanos[depth - 1] += now - lastTime;
+		}
+
+		if (depth == MAX_DEPTH) {
+			throw new RuntimeException("StepProfiler: phases nested too deeply when entering " + phase + ".");
+		}
+
+		stack[depth] = phase;
+		stackNanos[depth] = 0;
+		depth++;
+		lastTime = now;
+	}
+
+	/**
+	 * Called at the end of a phase.  The time charged to the phase is added to its histogram.
+	 * @param phase (Phase - the phase which is ending, must be the last one entered)
+	 */
+	public void exit(Phase phase)
+	{
+		if (enabled == false || depth == 0) {
+			return; // Not profiling, or the profiler was switched on during this phase
+		}
+
+		if (stack[depth - 1] != phase) {
+			throw new RuntimeException("StepProfiler: exit from " + phase + " when the current phase is " + stack[depth - 1] + ".");
+		}
+
+		long now = System.nanoTime();
+		depth--;
+		histograms[phase.ordinal()].record(stackNanos[depth] + now - lastTime);
+		lastTime = now;
+	}
+
+	/**
+	 * Return the histogram of the times of the invocations of the supplied phase during this run.
+	 * @param phase (Phase - the phase required)
+	 * @return LatencyHistogram (the histogram for the phase)
+	 */
+	public LatencyHistogram getHistogram(Phase phase)
+	{
+		return histograms[phase.ordinal()];
+	}
+
+	/**
+	 * Return a summary of the histograms, with one line for each phase: the number of invocations, the total
+	 * and mean times, and the 50th, 90th, 99th percentiles and maximum time of an invocation.
+	 * @return String (the summary, one line per phase)
+	 */
+	public String getSummary()
+	{
+		String retVal = "Phase, #Calls, Total(ms), Mean(us), P50(us), P90(us), P99(us), Max(us)";
+
+		for (int p = 0; p < histograms.length; p++)
+		{
+			LatencyHistogram h = histograms[p];
+			retVal += "\n" + Phase.values()[p] + ", " + h.getNoValues() + ", " + String.format("%.3f", h.getTotal() / 1e6) + ", " +
+					String.format("%.3f", h.getMean() / 1e3) + ", " + String.format("%.3f", h.getPercentile(0.5) / 1e3) + ", " +
+					String.format("%.3f", h.getPercentile(0.9) / 1e3) + ", " + String.format("%.3f", h.getPercentile(0.99) / 1e3) + ", " +
+					String.format("%.3f", h.getMax() / 1e3);
+		}
+
+		return retVal;
+	}
+}
@@ -2,7 +2,7 @@ package modeling;
 
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 
 import modeling.COModel.jctExitDirInfo;
@@ -99,6 +99,16 @@ public class UGV extends Car {
 		// Set outside of the main loop as is used to call the dealWithTermination code below
 		sim = (COModel) state;
 		
+		sim.getProfiler().enter(StepProfiler.Phase.UGV_DECISION);
+		stepUGV();
+		sim.getProfiler().exit(StepProfiler.Phase.UGV_DECISION);
+	}
+	
+	/**
+	 * Carry out the step of the UGV (see step).
+	 */
+	private void stepUGV()
+	{
 		if(this.isActive == true)
 		{
 			resetSpeedParams(); // Reset these for this step
@@ -111,34 +121,28 @@ public class UGV extends Car {
 			// Store the previous location now, before we do anything with it
 			storePrevLoc(me);
 			
+			// Start a new perception snapshot; each sensor sweep is performed the first time it is needed
+			// during this step, and any repeated requests for the same sweep are answered from the snapshot
+			startPerception(sim);
+			
 			double moveV; // Vertical component of the cars movement
 			double moveH; // Horizontal component of the cars movement
 			
-			// Get location of target
-			Bag everything = environment.getAllObjects(); // This will get all of the objects in the world, then start filtering :)
-			
 			this.setStats(sim.getCarMaxSpeed(), sim.getCarMaxAcceleration(), sim.getCarMaxDecceleration(), sim.getCarMaxTurning());
 	        
-			Entity e;		
 			Entity eTarget = new Entity(-1, TOTHER); // This id for the target is illegal
 							
-			// Find the target from the bag of all entities
-			for(int i = 0; i < everything.size(); i++)
+			// Find the target from the entities in the environment (looked up by ID)
+			Entity e = sim.getEnvironmentEntity(this.getTargetID());
+			if (e != null)
 			{
-				e = (Entity) everything.get(i);			
-				if (e.getID() == this.getTargetID())
-				{
-					eTarget = e;
-				}
+				eTarget = e;
+			}
 				
-				// If the final target has not been set yet, extract the info from here too
-				if (finalTarget.getType() == TOTHER) 
-				{
-					if (e.getType() == TTARGET)
-					{
-						finalTarget = e;
-					}
-				}
+			// If the final target has not been set yet, extract the info from the environment too
+			if (finalTarget.getType() == TOTHER && sim.getEnvironmentTarget() != null) 
+			{
+				finalTarget = sim.getEnvironmentTarget();
 			}
 			
 			// Check to see if we have recently started to leave a junction, and are just
@@ -146,10 +150,10 @@ public class UGV extends Car {
 			if (getJctID() > 0)
 			{
 				// Check that we have started to leave the junction (i.e. that front of UGV has left junction)
-				if (sim.junctionAtPoint(me, sim.junctions) == 0 || sim.junctionAtPoint(me, sim.junctions) != this.getJctID())
+				if (getLocationTracker().getJunction(sim, me) == 0 || getLocationTracker().getJunction(sim, me) != this.getJctID())
 				{
 					// See if we have entirely left the junction
-					if (sim.junctionAtArea(new Area(this.getShape()), sim.junctions) <= 0) // ...or in a different jct
+					if (sim.junctionAtArea(this.getShape(), sim.junctions) <= 0) // ...or in a different jct
 					{
 						// We've left the junction, so reset the junction occupancy so someone else can enter
 						sim.unOccupyJunction(getJctID(), sim.junctions, this.getID());
@@ -181,7 +185,13 @@ public class UGV extends Car {
 				// Moving obstacles.  If any overlap is detected, the vehicle should stop immediately.  To try 
 				// and simulate sensing appropriately, we will check outwards in a circle from the centre of the
 				// UGV to a range of 3m from the centre.
-				if (checkAllMovingObsCircle(sim, sim.cars, sensitivityForRoadTracking) == true)
+				sim.getProfiler().enter(StepProfiler.Phase.UGV_PERCEPTION);
+				SimulationEvents.SensorSweep event = startSweepEvent();
+				boolean movingObsClose = checkAllMovingObsCircle(sim, sim.cars, sensitivityForRoadTracking);
+				endSweepEvent(event, sim, SensorCounters.Sensor.MOVING_OBSTACLES_CIRCLE);
+				sim.getProfiler().exit(StepProfiler.Phase.UGV_PERCEPTION);
+				
+				if (movingObsClose == true)
 				{
 					emergencyStop(); // Actually need to set speed to zero to avoid crashes registering even 'tho we're not going to move
 					return; // No need to continue with Step, we're just going to stay still!
@@ -196,8 +206,15 @@ public class UGV extends Car {
 			// don't need to check the junctions as it's immaterial until we have finished the turn.
 			if (eTarget.getType() != TUTURNWP)
 			{
-				for(int i = 0; i < sim.junctions.size(); i++) 
+				// Only the junctions near the UGV can contain it, or have an approach which contains it (see JunctionIndex),
+				// but all of the junctions are looped through when Fault #7 is active
+				int[] jctCandidates = sim.getJunctionIndex().getCandidates(me);
+				int noJctsToCheck = (sim.getFault(7) == true) ? sim.junctions.size() : jctCandidates.length;
+				
+				for(int c = 0; c < noJctsToCheck; c++) 
 				{
+					int i = (sim.getFault(7) == true) ? c : jctCandidates[c];
+					
 					// New Fault #7 - Exit the loop half-way through
 					if (sim.getFault(7) == true) {
 						if (i == (sim.junctions.size()/2)) {
@@ -211,7 +228,9 @@ public class UGV extends Car {
 								
 						// Vehicle currently within the junction, ensure that we are checking whether we need a new waypoint to redirect
 						// towards the destination
+						sim.getProfiler().enter(StepProfiler.Phase.JUNCTION);
 						jctExitDirInfo junctionDirInfo = ((Junction) sim.junctions.get(i)).getJunctionExit(finalTarget.getLocation(), this, i, sim);
+						sim.getProfiler().exit(StepProfiler.Phase.JUNCTION);
 						Double2D junctionWP = junctionDirInfo.exitWP;
 						UTurnTargetDir = junctionDirInfo.direction; // Store the direction
 						
@@ -526,7 +545,7 @@ public class UGV extends Car {
 							
 							// 'Eat' the waypoint and get back the 'real' target!
 							setTargetID(((Waypoint) eTarget).getNextPoint());
-							environment.remove(eTarget);
+							sim.removeFromEnvironment(eTarget);
 						}
 					
 					// New Fault #17 - forget to keep turning towards the WPs when we are executing an 
@@ -653,7 +672,7 @@ public class UGV extends Car {
 				moveV = Utility.yMovement(this.getDirection(), sim.getCarMaxSpeed());
 				moveH = Utility.xMovement(this.getDirection(), sim.getCarMaxSpeed());
 				sumForces.zero();
-				sumForces.addIn(new Double2D(moveH, moveV));	
+				sumForces.addIn(moveH, moveV);	
 		        sumForces.addIn(me);
 		        
 		        // Only execute this code if we aren't about to move into a junction
@@ -669,7 +688,7 @@ public class UGV extends Car {
 		        		moveV = Utility.yMovement(desiredLoc.startBearing, sim.getCarMaxSpeed());
 		        		moveH = Utility.xMovement(desiredLoc.startBearing, sim.getCarMaxSpeed());
 		        		sumForces.zero();
-		        		sumForces.addIn(new Double2D(moveH, moveV));	
+		        		sumForces.addIn(moveH, moveV);	
 		        		sumForces.addIn(desiredLoc.startLoc);
 
 		        		// Set the direction of this Car to point to this location
@@ -794,7 +813,7 @@ public class UGV extends Car {
 				{
 					// TODO flag an error as -1 is an illegal id so at this point it can only be that there isn't
 					//an existing target for the car
-					this.isActive = false;
+					deactivate();
 					
 				} else {
 					if (eTarget.getType() == TTARGET)
@@ -803,7 +822,7 @@ public class UGV extends Car {
 						// double inRange, double inAngle, double inSensitivity, double inBearing
 						if (checkSameLane(sim, eTarget.location, UGVViewingRange, UGVViewingAngle, sensitivityForRoadTracking, getDirection()) == true) 
 						{
-							this.isActive = false;
+							deactivate();
 							targetFound = true;
 						}
 						
@@ -811,7 +830,7 @@ public class UGV extends Car {
 					} else if (eTarget.getType() == TWAYPOINT || eTarget.getType() == TUTURNWP) {
 						// Get rid of wp and get new target ID
 						setTargetID(((Waypoint) eTarget).getNextPoint());
-						environment.remove(eTarget);
+						sim.removeFromEnvironment(eTarget);
 					}
 				}			
 			}		
@@ -834,12 +853,13 @@ public class UGV extends Car {
 			moveH = Utility.xMovement(getDirection(), getSpeed());
 			
 			sumForces.zero();
-			sumForces.addIn(new Double2D(moveH, moveV));	
+			sumForces.addIn(moveH, moveV);	
 	        sumForces.addIn(me);
-			sim.environment.setObjectLocation(this, new Double2D(sumForces));
-			this.setLocation( new Double2D(sumForces));
+			Double2D newLocation = new Double2D(sumForces); // Double2D is immutable, so one copy can be shared
+			sim.environment.setObjectLocation(this, newLocation);
+			this.setLocation(newLocation);
 						
-			location = new Double2D(sumForces); // TODO - Suspect this should be removed as probably just repeats the command above	
+			location = newLocation; // TODO - Suspect this should be removed as probably just repeats the command above	
 		}
 		
 		// Check to see if there are actually any agents left, or should we stop
@@ -1053,6 +1073,35 @@ public class UGV extends Car {
 	 * @return boolean (true if offset location will leave the road surface)
 	 */
 	private boolean nearlyOffRoad(Bag roads, Double2D location, double bearing)
+	{
+		if (roads != sim.roads) {
+			return checkNearlyOffRoad(roads, location, bearing);
+		}
+		
+		PerceptionSnapshot snapshot = getPerception(sim);
+		double[] key = {location.x, location.y, bearing};
+		PerceptionSnapshot.Reading reading = snapshot.getReading(sim, PerceptionSnapshot.Sensor.NEARLY_OFF_ROAD, key);
+		
+		if (reading == null)
+		{
+			long[] faultsBefore = PerceptionSnapshot.getFaultCounts(sim);
+			sim.getProfiler().enter(StepProfiler.Phase.UGV_PERCEPTION);
+			boolean result = checkNearlyOffRoad(roads, location, bearing);
+			sim.getProfiler().exit(StepProfiler.Phase.UGV_PERCEPTION);
+			reading = snapshot.addReading(sim, PerceptionSnapshot.Sensor.NEARLY_OFF_ROAD, key, faultsBefore, null, result);
+		}
+		
+		return reading.getFlag();
+	}
+	
+	/** 
+	 * Perform the check for nearlyOffRoad (see above for details).
+	 * @param roads (Bag - collection of roads in the simulation environment)
+	 * @param location (Double2D - location to be checked)
+	 * @param bearing (double - direction in which UGV is pointing)
+	 * @return boolean (true if offset location will leave the road surface)
+	 */
+	private boolean checkNearlyOffRoad(Bag roads, Double2D location, double bearing)
 	{
 		Double2D offsetLocation = new Double2D(location.x, location.y);
 		
@@ -1144,7 +1193,7 @@ public class UGV extends Car {
 	}
 	
 	/**
-	 *  Return the coordinates of the nearest/farthest intersection with the supplied obstacle if it is found in the current lane.  
+	 *  Return the coordinates of the nearest and farthest intersections with the supplied obstacle if it is found in the current lane.  
 	 *  Search conducted at a range of up to 25m (default) or a lower supplied value (inRangeLimit).  Search progresses in 
 	 *  a similar way to the roadMarkings search, and looks for the closest/farthest hit on an obstacle within a narrow range: 
 	 *  Constants.UGVObsViewingAngle.  At each angle that is iterated through, the search begins close to the UGV sensor and
@@ -1156,15 +1205,15 @@ public class UGV extends Car {
 	 *  @param sim (COModel - access to the simulation environment)
 	 *  @param bearing (double - the 'centre' direction for the sensor, should generally be the direction of the lane)
 	 *  @param obstacle (Obstacle - the obstacle we wish to check for detection by the sensor)
-	 *  @param getMax (boolean - true to return the farthest obstacle detection, false to return the nearest)
 	 *  @param inRangeLimit (double - the range (distance) at which we want to stop the search, must be < UGVObsViewingRange
 	 *                       or it will be ignored; set to 0 to use the default max range)
-	 *  @return Double2D (return the coordinates of the farthest/nearest obstacle detection)
+	 *  @return Double2D[] (return the coordinates of the nearest [0] and farthest [1] obstacle detections)
 	 */
-	private Double2D checkForObstacle(COModel sim, double bearing, Obstacle obstacle, boolean getMax, double inRangeLimit) {
+	private Double2D[] checkForObstacle(COModel sim, double bearing, Obstacle obstacle, double inRangeLimit) {
 		
 		MutableDouble2D testCoord = new MutableDouble2D(); // The sensor test location
-		Double2D amountAdd = new Double2D(); // Increment to replicate a sensor checking along a vector
+		double xStep; // Increment to replicate a sensor checking along a vector (x component)
+		double yStep; // Increment to replicate a sensor checking along a vector (y component)
 		
 		// If a range limit is supplied, update the internal variables
 		double currentViewingRange = UGVObsViewingRange; // Default limit to viewing range
@@ -1172,13 +1221,11 @@ public class UGV extends Car {
 			currentViewingRange = inRangeLimit; // Custom supplied range limit
 		}
 		
-		Double2D reqCoord = new Double2D(-1,-1);
+		Double2D minCoord = NOT_DETECTED;
+		Double2D maxCoord = NOT_DETECTED;
 		double distance;
-		double reqDistance = UGVObsViewingRange; // as we want to to find an object closer than this...
-		
-		if (getMax == true) {
-			reqDistance = 0; // as we want to find an obstacle further away than this..
-		}
+		double minDistance = UGVObsViewingRange; // as we want to to find an object closer than this...
+		double maxDistance = 0; // as we want to find an obstacle further away than this..
 				
 		// Need to restrict the obstacle checks to those which are in the same lane as
 		// the UGV, so need to know own lane direction in order to restrict in method below
@@ -1201,14 +1248,22 @@ public class UGV extends Car {
 		// TODO Consider whether it would be more efficient (and sensible) to use findNearest here instead - we're only 
 		// using this method to help us work out the location of the centre line so that we can check whether the 
 		// obstacle is in the same lane as us
+		// NOTE: this sweep is the same for every obstacle, so it is only actually performed once per step (see 
+		// Car.locateRoadMarkings_AllRoads).
 		Double2D furthestLaneMarking = locateRoadMarkings_AllRoads(sim.roads, false, sim, Constants.genLineType.NEARSIDE, 
 				                                                   UGVViewingAngle , UGVViewingRange, sensitivityForRoadTracking);
 		
-		double centreOffset = Road.roadWidth/2 - Constants.ROADEDGINGWIDTH - Constants.ROADEDGEOFFSET; // Distance between edge line and centre
+		// Work done by the search (see SensorCounters)
+		long noRays = 0;
+		long noSamples = 0;
+		long noShapeTests = 0;
+		long noRoadTests = 0;
 		
 		// Loop for each angle (sweeping to the full distance range - see internal loop)
 		for(double i = startAngle; i < endAngle; i += resolution)
 		{
+			noRays++;
+			
 			// Reset the location that we start testing from to be the location of the UGV and set the bearing
 			// that we are going to use for this iteration
 			testCoord.setTo(0,0);
@@ -1216,78 +1271,45 @@ public class UGV extends Car {
 			newBearing = Utility.correctAngle(bearing + i); // Set the sensor angle
 			
 			// Construct the x an y increments for each iteration below
-			amountAdd = new Double2D(Utility.xMovement(newBearing, rangeSensitivity), Utility.yMovement(newBearing, rangeSensitivity));
+			xStep = Utility.xMovement(newBearing, rangeSensitivity);
+			yStep = Utility.yMovement(newBearing, rangeSensitivity);
 						
 		    // Loop to full range of sensor vision at current angle
 			// NOTE - j is not actually used, it just ensures the correct number of iterations
 			for(double j = startRange; j < endRange; j += rangeSensitivity){
 												
-				testCoord.addIn(amountAdd);  // move the test location outwards on the chosen bearing
+				testCoord.addIn(xStep, yStep);  // move the test location outwards on the chosen bearing
+				noSamples++;
 				
 				// Ensure that the testCoord location is still on the road surface,
 				// if not, we would expect that any vision algorithm would have noticed this
 				// and stopped searching at this bearing (similar to stopping the search 
 				// when we have found an obstacle (as we can't see through it!)
-				if (sim.roadAtPoint(new Double2D(testCoord), sim.roads) == false) {
+				noRoadTests++;
+				if (sim.roadAtPoint(testCoord.x, testCoord.y, sim.roads) == false) {
 					break; // Don't search any further on this bearing
 				}
 				
 				// Ensure that the test coordinate is in the same lane as the UGV
-				boolean inLane = true;
-				double centre;
-				switch (direction) {
-				
-					case NORTH : {
-						centre = furthestLaneMarking.x + centreOffset;
-						if (testCoord.x > centre || testCoord.x < (centre - Road.roadWidth/2)) {
-							inLane = false;
-						}	
-						break;
-					}
-					case SOUTH : {
-						centre = furthestLaneMarking.x - centreOffset;
-						if (testCoord.x < centre || testCoord.x > (centre + Road.roadWidth/2)) {
-							inLane = false;
-						}
-						break;
-					}
-					case EAST : {
-						centre = furthestLaneMarking.y + centreOffset;
-						if (testCoord.y > centre || testCoord.y < (centre - Road.roadWidth/2)) {
-							inLane = false;
-						}
-						break;
-					}
-					case WEST : {
-						centre = furthestLaneMarking.y - centreOffset;
-						if (testCoord.y < centre || testCoord.y > (centre + Road.roadWidth/2)) {
-							inLane = false;
-						}
-						break;
-					}
-				}
-				
 				// If it is in the same lane...
-				if (inLane == true) {
+				if (inSensedLane(furthestLaneMarking, direction, testCoord.x, testCoord.y) == true) {
 					
 					// See if the test coordinate is inside an obstacle
-					if (((ParkedCar) obstacle).inShape(new Double2D(testCoord.x, testCoord.y)))
+					noShapeTests++;
+					if (obstacle.inShape(testCoord.x, testCoord.y))
 					{
 						// Calculate the distance (from the sensor) at which the testCoord has intersected
 						distance = location.distance(testCoord.x, testCoord.y);
 
-						// See whether we have improved on the max/min distance that we are looking for
+						// See whether we have improved on the max/min distances that we are looking for
 						// and store a new 'current best value' if we have
-						if (getMax == true) {
-							if (distance > reqDistance) {
-								reqDistance = distance;
-								reqCoord = new Double2D(testCoord.x, testCoord.y);
-							}						
-						} else {
-							if (distance < reqDistance) {
-								reqDistance = distance;
-								reqCoord = new Double2D(testCoord.x, testCoord.y);
-							}
+						if (distance > maxDistance) {
+							maxDistance = distance;
+							maxCoord = new Double2D(testCoord.x, testCoord.y);
+						}						
+						if (distance < minDistance) {
+							minDistance = distance;
+							minCoord = new Double2D(testCoord.x, testCoord.y);
 						}
 
 						// Exit the loop as we don't need to search any further on this bearing as we've found an obstacle
@@ -1297,7 +1319,9 @@ public class UGV extends Car {
 			}
 		}
 		
-		return reqCoord;
+		addSensorWork(sim, SensorCounters.Sensor.STATIC_OBSTACLES, noRays, noSamples, noShapeTests, noRoadTests);
+		
+		return new Double2D[] {minCoord, maxCoord};
 	}
 
 	/**
@@ -1314,19 +1338,46 @@ public class UGV extends Car {
 	 *                       or it will be ignored; set to 0 to use the default max range)
 	 * @return Double2D (the coordinates of the farthest/nearest intersection with the obstacle)
 	 */
-	private Double2D checkAllObstacles(COModel sim, double bearing, boolean getMax, double inLimitRange)
+	protected Double2D checkAllObstacles(COModel sim, double bearing, boolean getMax, double inLimitRange)
 	{
-		// Init to the values we would want for finding the minimum distance to the obstacle
-		double reqDistance = UGVObsViewingRange + 1; // want to find values smaller than this
-		double currentDistance = UGVObsViewingRange + 1; // want to find values smaller than this
-		Double2D currentDistanceCoord; 
-		Double2D reqCoord = new Double2D(-1,-1);
-		
-		if (getMax == true) {
-			reqDistance = 0; // want to find values bigger than this
-			currentDistance = 0; // want to find values bigger than this
+		// The nearest and farthest intersections are both found by the same sweep, so only sweep once per step
+		PerceptionSnapshot snapshot = getPerception(sim);
+		double[] key = {bearing, inLimitRange};
+		PerceptionSnapshot.Reading reading = snapshot.getReading(sim, PerceptionSnapshot.Sensor.STATIC_OBSTACLES, key);
+		
+		if (reading == null)
+		{
+			long[] faultsBefore = PerceptionSnapshot.getFaultCounts(sim);
+			sim.getProfiler().enter(StepProfiler.Phase.UGV_PERCEPTION);
+			SimulationEvents.SensorSweep event = startSweepEvent();
+			Double2D[] result = sweepAllObstacles(sim, bearing, inLimitRange);
+			endSweepEvent(event, sim, SensorCounters.Sensor.STATIC_OBSTACLES);
+			sim.getProfiler().exit(StepProfiler.Phase.UGV_PERCEPTION);
+			reading = snapshot.addReading(sim, PerceptionSnapshot.Sensor.STATIC_OBSTACLES, key, faultsBefore, result, false);
 		}
 		
+		return reading.getPoint(getMax == true ? 1 : 0);
+	}
+	
+	/**
+	 * Perform the obstacle sweep for checkAllObstacles (see above for details), finding both the nearest and
+	 * the farthest intersections.
+	 * @param sim (COModel - access to the simulation environment)
+	 * @param bearing (double - the 'centre' direction for the sensor, should generally be the direction of the lane)
+	 * @param inLimitRange (double - double - the range (distance) at which we want to stop the search, must be < UGVObsViewingRange
+	 *                       or it will be ignored; set to 0 to use the default max range)
+	 * @return Double2D[] (the coordinates of the nearest [0] and farthest [1] intersections with any obstacle)
+	 */
+	private Double2D[] sweepAllObstacles(COModel sim, double bearing, double inLimitRange)
+	{
+		// Init to the values we would want for finding the minimum and maximum distances to the obstacle
+		double minDistance = UGVObsViewingRange + 1; // want to find values smaller than this
+		double maxDistance = 0; // want to find values bigger than this
+		double currentDistance; 
+		Double2D[] currentDistanceCoords; 
+		Double2D minCoord = NOT_DETECTED;
+		Double2D maxCoord = NOT_DETECTED;
+		
 		// It's not really acceptable to 'query the road' to find out what its ID is,
 		// and then query the Obstacle to find out which road it is on.  Instead we just restrict our search for 
 		// obstacles within our line of sight so that the search terminates as soon as the search point
@@ -1337,37 +1388,32 @@ public class UGV extends Car {
 		// Look through all the obstacles and look for intersection
 		for(int i = 0; i < sim.obstacles.size(); i++)
 		{
-			currentDistanceCoord = checkForObstacle(sim, bearing, (Obstacle) sim.obstacles.get(i), getMax, inLimitRange); 
+			currentDistanceCoords = checkForObstacle(sim, bearing, (Obstacle) sim.obstacles.get(i), inLimitRange); 
 			
 			// If we have got a valid return value (i.e. an obstacle was found) the calculate the distance to that
-			// obstacle
-			if (currentDistanceCoord.x > -1) {
-				currentDistance = location.distance(currentDistanceCoord.x, currentDistanceCoord.y);
-
-				// If we are looking for the maximum distance, and the current one is greater than the one we 
-				// have found so far, update the stored distance and coords
-				if (getMax == true) {
-					if ( currentDistance > reqDistance )
-					{
-						reqDistance = currentDistance;
-						reqCoord = currentDistanceCoord;
-					}					
-				
-				// If we are looking for the minimum distance, and the current one is shorter than the one we 
-				// have found so far, update the stored distance and coords
-				} else {
-					if ( currentDistance < reqDistance )
-					{
-						reqDistance = currentDistance;
-						reqCoord = currentDistanceCoord;
-					}
+			// obstacle, and if it is nearer/farther than the one we have found so far, update the stored distance and coords
+			if (currentDistanceCoords[0].x > -1) {
+				currentDistance = location.distance(currentDistanceCoords[0].x, currentDistanceCoords[0].y);
+				if ( currentDistance < minDistance )
+				{
+					minDistance = currentDistance;
+					minCoord = currentDistanceCoords[0];
+				}
+			}
+			
+			if (currentDistanceCoords[1].x > -1) {
+				currentDistance = location.distance(currentDistanceCoords[1].x, currentDistanceCoords[1].y);
+				if ( currentDistance > maxDistance )
+				{
+					maxDistance = currentDistance;
+					maxCoord = currentDistanceCoords[1];
 				}
 			}
 		}
 		
-		return reqCoord; // TODO Need to do a check on return value as if this returns a value greater
-						 // than the maximum sensor range (for getMin) or 0 for (getMax) then it denotes 
-						 // *no obstacle*
+		return new Double2D[] {minCoord, maxCoord}; // TODO Need to do a check on return value as if this returns a value greater
+						 							// than the maximum sensor range (for getMin) or 0 for (getMax) then it denotes 
+						 							// *no obstacle*
 	}
 	
 	/** 
@@ -1425,18 +1471,13 @@ public class UGV extends Car {
 	 */
 	public boolean isUTurning() {
 		
-		Bag everything = sim.environment.getAllObjects();
-		Entity e;
 		Entity eTarget = new Entity(-1, TOTHER); // This id for the target is illegal, to get ids one should use COModel.getNewID()
 						
-		// Find the target from the bag of all entities
-		for(int i = 0; i < everything.size(); i++)
+		// Find the target from the entities in the environment (looked up by ID)
+		Entity e = sim.getEnvironmentEntity(this.getTargetID());
+		if (e != null)
 		{
-			e = (Entity) everything.get(i);			
-			if (e.getID() == this.getTargetID())
-			{
-				eTarget =  e;
-			}
+			eTarget = e;
 		}
 		
 		if (eTarget.getType() == TUTURNWP ) {
@@ -1456,13 +1497,17 @@ public class UGV extends Car {
 		double widthOffset = Constants.UGV_WIDTH/2;
 			
 		// Return a shape aligned with the oriented vehicles
-		Rectangle2D.Double carRectangle = new Rectangle2D.Double();
+		Rectangle2D.Double carRectangle;
 		
 		// Assume the basic shape is as it would appear when pointed along the x-axis, so this means some swapping around of width/length
 		// returns an object with the 'location' at the centre-front
 		carRectangle = new Rectangle2D.Double(location.x - Constants.UGV_WIDTH, location.y - widthOffset, Constants.UGV_WIDTH, Constants.UGV_WIDTH);		
 		AffineTransform rotateTransform = AffineTransform.getRotateInstance(((Car) this).orientation2D(), location.x, location.y);
-		Shape carShape = rotateTransform.createTransformedShape(carRectangle);
+		
+		// Same as rotateTransform.createTransformedShape(carRectangle), but only sized for the 6 segments of a rectangle
+		// (see DumbCar.buildShape) as this is called by several of the checks on each step
+		Path2D.Double carShape = new Path2D.Double(Path2D.WIND_NON_ZERO, 6);
+		carShape.append(carRectangle.getPathIterator(rotateTransform), false);
 		
 		return carShape;
 	}	
@@ -1505,6 +1550,17 @@ public class UGV extends Car {
 		return carShape.contains(coord.x, coord.y);
 	}
 	
+	/**
+	 * Method which returns the shortest distance between a provided coordinate and the UGV shape,
+	 * without having to construct the shape.
+	 * @param coord (Double2D - location we want to measure from)
+	 * @return double (distance from coord to the UGV shape, 0 if coord is inside the shape)
+	 */
+	public double distanceToShape(Double2D coord)
+	{
+		return Utility.distanceToOrientedBox(coord, location, orientation2D(), Constants.UGV_WIDTH, Constants.UGV_WIDTH);
+	}
+	
 	/**
 	 * Check for any moving obstacles within a 1.5m radius of the centre of the UGV/Car
 	 * TODO Check that this really is a 1.5m radius around the centre, and not using the location
@@ -1520,16 +1576,53 @@ public class UGV extends Car {
 		double range = Constants.UGV_WIDTH/2 + 1; // Approx 1m around the edge of the UGV (closer at corners)
 		boolean obsFound = false;
 		
+		// Work out the 'centre' of the UGV, as the 'location' is actually the front-centre of the UGV.  We
+		// need to know which direction the UGV is pointing in so that we can offset appropriately. NOTE: this
+		// will only be an approximation if the UGV is turning or overtaking.
+		UGV_Direction direction = Utility.getDirection(getDirection());
+		Double2D centreLoc = new Double2D(location.x, location.y);
+		
+		switch (direction) {
+		
+			case NORTH : 
+				centreLoc = new Double2D(location.x, location.y + Constants.OBSTACLE_WIDTH/2);
+				break;
+			case EAST : 
+				centreLoc = new Double2D(location.x - Constants.OBSTACLE_WIDTH/2, location.y);
+				break;
+			case SOUTH : 
+				centreLoc = new Double2D(location.x, location.y - Constants.OBSTACLE_WIDTH/2);
+				break;
+			case WEST : 
+				centreLoc = new Double2D(location.x + Constants.OBSTACLE_WIDTH/2, location.y);
+				break;
+		}	
+		
+		// None of the locations tested by the search can be further than this from the centre (includes a
+		// margin of an extra increment to allow for rounding as the test location is moved outwards)
+		double maxReach = range + (2 * inSensitivity);
+		
 		// Assume sensor is located in the centre of the vehicle
 		Car currentCar;
 		
+		// Only the cars which are close enough to be reached need to be searched for, so use the index for the DumbCars
+		if (inCars == sim.cars) {
+			inCars = sim.getCarIndex().getVehiclesWithinDistance(centreLoc, maxReach + VehicleIndex.MAX_VEHICLE_RADIUS);
+		}
+		
 		// Look through all the moving obstacles (cars) and look for intersection
 		for(int i = 0; i < inCars.size(); i++)
 		{
 			currentCar = (Car) inCars.get(i);
 			if (currentCar.isActive == true && (currentCar.ID != this.ID))
 			{
-				obsFound = checkForMovingObsCircle(sim, currentCar, range, inSensitivity);
+				// If no part of the car is within reach of the search, it can't be found, so there is no need to 
+				// search for it (this gives the same result as the search, but is much cheaper)
+				if (currentCar.distanceToShape(centreLoc) > maxReach) {
+					continue;
+				}
+				
+				obsFound = checkForMovingObsCircle(sim, currentCar, centreLoc, range, inSensitivity);
 
 				if (obsFound == true)
 				{
@@ -1547,78 +1640,62 @@ public class UGV extends Car {
 	 *  UGV itself as it will always return true - exclude on the calling loop (see above)
 	 *  @param sim (COModel - access to the simulation environment)
 	 *  @param inCar (Car - the vehicle that hwe want to check for proximity)
+	 *  @param centreLoc (Double2D - the location of the centre of the UGV)
 	 *  @param inRange (double - the distance to which we want the search to be carried out)
 	 *  @param inSensitivity (double - the resolution of the search i.e. distance increments)
 	 *  @return boolean (true if an obstacle is found in range, false otherwise)
 	 */
-	private boolean checkForMovingObsCircle(COModel sim, Car inCar, double inRange, double inSensitivity) {
+	private boolean checkForMovingObsCircle(COModel sim, Car inCar, Double2D centreLoc, double inRange, double inSensitivity) {
 		
 		// Simple and dirty method which checks the coordinates between 0 and 
 		// the supplied range away from the chosen sensor location in certain increments and see 
 		// if they intersect with the supplied car (moving obs) 
 		MutableDouble2D testCoord = new MutableDouble2D();
-		Double2D amountAdd = new Double2D();
+		double xStep;
+		double yStep;
 				
 		// For this search, we don't care whether the obstacle is in our lane, or whether it is in front of 
 		// us or behind us. 
 		
-		// Work out the 'centre' of the UGV, as the 'location' is actually the front-centre of the UGV.  We
-		// need to know which direction the UGV is pointing in so that we can offset appropriately. NOTE: this
-		// will only be an approximation if the UGV is turning or overtaking.
-		UGV_Direction direction = Utility.getDirection(getDirection());
-		Double2D centreLoc = new Double2D(location.x, location.y);
-		
-		switch (direction) {
-		
-			case NORTH : 
-				centreLoc = new Double2D(location.x, location.y + Constants.OBSTACLE_WIDTH/2);
-				break;
-			case EAST : 
-				centreLoc = new Double2D(location.x - Constants.OBSTACLE_WIDTH/2, location.y);
-				break;
-			case SOUTH : 
-				centreLoc = new Double2D(location.x, location.y - Constants.OBSTACLE_WIDTH/2);
-				break;
-			case WEST : 
-				centreLoc = new Double2D(location.x + Constants.OBSTACLE_WIDTH/2, location.y);
-				break;
-		}	
+		// The car doesn't move during the search, so only construct its shape once
+		Shape carShape = inCar.getShape();
 		
 		// For each angle that the sensor is able to view, turning in realistic increments
 		double resolution = 0.5;
 			
+		// Work done by the search (see SensorCounters)
+		long noRays = 0;
+		long noSamples = 0;
+		
 		// Check all angles from South all the way around
 		for(double i = 0; i < 360; i += resolution)
 		{
+			noRays++;
+			
 			// Reset the location that we start testing from to be the location of CENTRE of the UGV and set 
 			// the bearing that we are going to use for this iteration
 			testCoord.setTo(0,0);
 			testCoord.addIn(centreLoc); // Sensor assumed to be at centre of vehicle for 360 deg scan
 			
 			// Construct the x and y increments for each iteration below
-			amountAdd = new Double2D(Utility.xMovement(i, inSensitivity), Utility.yMovement(i, inSensitivity));
+			xStep = Utility.xMovement(i, inSensitivity);
+			yStep = Utility.yMovement(i, inSensitivity);
 												
 		    // NOTE - j is not actually used, it just ensures the correct number of iterations
 			for(double j = 0; j <= inRange; j += inSensitivity){
 												
-				testCoord.addIn(amountAdd);  // move the test location outwards on the chosen bearing
+				testCoord.addIn(xStep, yStep);  // move the test location outwards on the chosen bearing
+				noSamples++;
 											
-				boolean isInShape = false;
-				
-				if (inCar.type == DUMBCAR) 
-				{
-					isInShape = ((DumbCar) inCar).inShape(new Double2D(testCoord.x, testCoord.y));
-				} else { // must be a UGV
-					isInShape = ((UGV) inCar).inShape(new Double2D(testCoord.x, testCoord.y));
-				}
-										
-				if (isInShape == true)
+				if (carShape.contains(testCoord.x, testCoord.y) == true)
 				{
+					addSensorWork(sim, SensorCounters.Sensor.MOVING_OBSTACLES_CIRCLE, noRays, noSamples, noSamples, 0);
 					return true; // Can exit as we have found an intersection
 				}
 			}
 		}
 		
+		addSensorWork(sim, SensorCounters.Sensor.MOVING_OBSTACLES_CIRCLE, noRays, noSamples, noSamples, 0);
 		return false;
 	}
 }
@@ -6,6 +6,8 @@ package modeling;
 import java.awt.geom.Area;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.Calendar;
 
 import modeling.Constants.UGV_Direction;
@@ -20,6 +22,20 @@ import sim.util.Double2D;
  */
 public class Utility {
 
+	// The sensor sweeps only ever look along bearings which are multiples of 0.5 degrees, so the movement
+	// for a speed of 1 along each of these bearings (0, 0.5, 1, ... 360) is calculated in advance
+	private static final int BEARINGS_PER_DEGREE = 2;
+	private static final double[] X_MOVEMENT_TABLE = new double[(360 * BEARINGS_PER_DEGREE) + 1];
+	private static final double[] Y_MOVEMENT_TABLE = new double[(360 * BEARINGS_PER_DEGREE) + 1];
+	
+	static {
+		for (int i = 0; i < X_MOVEMENT_TABLE.length; i++)
+		{
+			X_MOVEMENT_TABLE[i] = calcXMovement(((double) i) / BEARINGS_PER_DEGREE, 1);
+			Y_MOVEMENT_TABLE[i] = calcYMovement(((double) i) / BEARINGS_PER_DEGREE, 1);
+		}
+	}
+
 	/**
 	 * Constructor - unnecessary as we only use the static methods.
 	 */
@@ -35,9 +51,22 @@ public class Utility {
 	 * @return boolean (return true if testPt is contained within testRect)
 	 */
 	public static boolean betterContains(Rectangle2D.Double testRect, Double2D testPt)
+	{
+		return betterContains(testRect, testPt.x, testPt.y);
+	}
+	
+	/**
+	 * Version of betterContains which takes the coordinates of the point separately, so that the sensor
+	 * sweeps can test each sample point without allocating a Double2D for it.
+	 * @param testRect (Rectangle2D.Double - the rectangle we are testing for containing the point)
+	 * @param x (double - x coordinate of the point we are testing for intersection with the rectangle)
+	 * @param y (double - y coordinate of the point we are testing for intersection with the rectangle)
+	 * @return boolean (return true if (x,y) is contained within testRect)
+	 */
+	public static boolean betterContains(Rectangle2D.Double testRect, double x, double y)
 	{
 		// Simple case
-		if (testRect.contains(testPt.x, testPt.y) == true)
+		if (testRect.contains(x, y) == true)
 		{
 			return true;
 		}
@@ -47,7 +76,7 @@ public class Utility {
 		double yE1 = testRect.y;
 		double yE2 = testRect.y + testRect.height;
 		
-		if (testPt.x == xE && testPt.y >= yE1 && testPt.y <= yE2)
+		if (x == xE && y >= yE1 && y <= yE2)
 		{
 			return true;
 		}
@@ -57,7 +86,7 @@ public class Utility {
 		double xS2 = xE;
 		double yS = yE2;
 		
-		if (testPt.y == yS && testPt.x >= xS1 && testPt.x <= xS2)
+		if (y == yS && x >= xS1 && x <= xS2)
 		{
 			return true;
 		}		
@@ -74,11 +103,13 @@ public class Utility {
 	 */
 	public static UGV_Direction getDirection(double bearing)
 	{
-		if (correctAngle(bearing) >= 315 || correctAngle(bearing) < 45)	{
+		double corrected = correctAngle(bearing);
+		
+		if (corrected >= 315 || corrected < 45)	{
 			return UGV_Direction.SOUTH;
-		} else if (correctAngle(bearing) < 135) {
+		} else if (corrected < 135) {
 			return UGV_Direction.EAST;
-		} else if (correctAngle(bearing) < 225) {
+		} else if (corrected < 225) {
 			return UGV_Direction.NORTH;
 		} else { // must be between 225 and 315 
 			return UGV_Direction.WEST;
@@ -94,11 +125,13 @@ public class Utility {
 	 */
 	public static int getDirectionDeg(double bearing)
 	{
-		if (correctAngle(bearing) >= 315 || correctAngle(bearing) < 45)	{
+		double corrected = correctAngle(bearing);
+		
+		if (corrected >= 315 || corrected < 45)	{
 			return 0;
-		} else if (correctAngle(bearing) < 135) {
+		} else if (corrected < 135) {
 			return 90;
-		} else if (correctAngle(bearing) < 225) {
+		} else if (corrected < 225) {
 			return 180;
 		} else { // must be between 225 and 315 
 			return 270;
@@ -115,11 +148,13 @@ public class Utility {
 	 */
 	public static int getDirectionInt(double bearing)
 	{
-		if (correctAngle(bearing) >= 315 || correctAngle(bearing) < 45)	{
+		double corrected = correctAngle(bearing);
+		
+		if (corrected >= 315 || corrected < 45)	{
 			return 2; // South
-		} else if (correctAngle(bearing) < 135) {
+		} else if (corrected < 135) {
 			return 1; // East
-		} else if (correctAngle(bearing) < 225) {
+		} else if (corrected < 225) {
 			return 1; // North
 		} else { // must be between 225 and 315 
 			return 2; // West
@@ -227,6 +262,34 @@ public class Utility {
 		return angle;
 	}
 
+	/**
+	 * Calculate the shortest distance from the supplied point to a rectangle which has been rotated about the
+	 * centre of its front edge, as for the Shapes of the vehicles (see DumbCar.getShape).  Returns zero if the
+	 * point is inside the rectangle.
+	 * @param point (Double2D - the point to measure from)
+	 * @param front (Double2D - the centre of the front edge of the rectangle)
+	 * @param orientation2D (double - the orientation2D of the rectangle i.e. angle of rotation about front)
+	 * @param length (double - length of the rectangle, extending back from the front edge)
+	 * @param width (double - width of the rectangle)
+	 * @return double (the distance between the point and the nearest point on the rectangle)
+	 */
+	public static double distanceToOrientedBox(Double2D point, Double2D front, double orientation2D, double length, double width)
+	{
+		// Rotate the point into the frame of the rectangle, where the rectangle occupies [-length, 0] in x,
+		// and [-width/2, width/2] in y
+		double cos = Math.cos(orientation2D);
+		double sin = Math.sin(orientation2D);
+		double dx = point.x - front.x;
+		double dy = point.y - front.y;
+		double localX = (dx * cos) + (dy * sin);
+		double localY = (dy * cos) - (dx * sin);
+		
+		double outsideX = Math.max(Math.max(-length - localX, localX), 0);
+		double outsideY = Math.max(Math.abs(localY) - width/2, 0);
+		
+		return Math.sqrt((outsideX * outsideX) + (outsideY * outsideY));
+	}
+	
     /**
      * A function which based on the direction the car is facing and the speed it
 	 * is travelling at returns a value for how much the x position should change in one step. 
@@ -236,6 +299,22 @@ public class Utility {
      * @return double (the change in x coordinate of the car in the world)
      */
 	public static double xMovement(double angle, double speed) 
+	{
+		int idx = getMovementTableIdx(angle);
+		if (idx >= 0) {
+			return speed * X_MOVEMENT_TABLE[idx];
+		}
+		
+		return calcXMovement(angle, speed);
+	}
+	
+	/**
+	 * Calculate the x movement for xMovement (see above) without using the table.
+	 * @param angle (double - direction in which the car is pointing)
+	 * @param speed (double - the speed of the vehicle)
+	 * @return double (the change in x coordinate of the car in the world)
+	 */
+	private static double calcXMovement(double angle, double speed) 
 	{
 		double xChange;
 		
@@ -259,6 +338,22 @@ public class Utility {
 	 * @return double (the change in y coordinate of the car in the world)
 	 */
 	public static double yMovement(double angle, double speed)
+	{
+		int idx = getMovementTableIdx(angle);
+		if (idx >= 0) {
+			return speed * Y_MOVEMENT_TABLE[idx];
+		}
+		
+		return calcYMovement(angle, speed);
+	}
+	
+	/**
+	 * Calculate the y movement for yMovement (see above) without using the table.
+	 * @param angle (double - direction in which the car is pointing)
+	 * @param speed (double - the speed of the vehicle)
+	 * @return double (the change in y coordinate of the car in the world)
+	 */
+	private static double calcYMovement(double angle, double speed)
 	{
 		double yChange;
 		if (angle <= 90) 
@@ -274,6 +369,26 @@ public class Utility {
 		return yChange;
     }
 	
+	/**
+	 * Return the index into the movement tables for the supplied angle, or -1 if the angle is not one of
+	 * the tabulated bearings (in which case the movement must be calculated).  The tables hold the movement
+	 * for a speed of 1, and as negating a number is exact, speed * table entry is bit-for-bit the same as the 
+	 * calculation.  -0.0 is excluded as its sine differs in sign from that of 0.0.
+	 * @param angle (double - direction in which the car is pointing)
+	 * @return int (index into the movement tables, or -1)
+	 */
+	private static int getMovementTableIdx(double angle)
+	{
+		double scaledAngle = angle * BEARINGS_PER_DEGREE;
+		int idx = (int) scaledAngle;
+		
+		if (idx == scaledAngle && idx >= 0 && idx < X_MOVEMENT_TABLE.length && Double.doubleToRawLongBits(angle) != Double.doubleToRawLongBits(-0.0)) {
+			return idx;
+		}
+		
+		return -1;
+	}
+	
 	/**
 	 * This method converts the current time to a string for use in the log files, etc.
 	 * TODO: this method might benefit from some refinement and testing, it's possible that
@@ -322,4 +437,24 @@ public class Utility {
 		
 		return timeString;
 	}
+	
+	/**
+	 * Return a PrintStream which discards everything printed to it, for use in place of the output
+	 * files when a simulation should not write any (see COModel constructor).
+	 * @return PrintStream (a stream which writes nothing)
+	 */
+	public static PrintStream getNullPrintStream()
+	{
+		return new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+				// Discard
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) {
+				// Discard
+			}
+		});
+	}
 }
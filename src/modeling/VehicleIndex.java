@@ -0,0 +1,252 @@
+package modeling;
+
+import java.util.Arrays;
+
+import modeling.Constants.UGV_Direction;
+import sim.util.Bag;
+import sim.util.Double2D;
+
+/**
+ * @author hh940
+ *
+ * Spatial index of a collection of vehicles (e.g. the DumbCars in COModel.cars), which allows the vehicles
+ * near a location to be found without checking every vehicle.  The map is divided into square cells, and
+ * each cell stores the vehicles whose location falls inside it.  Vehicles which are (or have ended up) off
+ * the map are stored in the nearest cell on the edge of the map.
+ *
+ * The index is kept up to date as the vehicles move: Car.setLocation tells the index about the new location
+ * of the vehicle, so queries always reflect the locations at the time of the query, even part-way through
+ * a step.  The results of queries are returned in the same order as the Bag of vehicles that the index was
+ * built from, so a loop through the results behaves in the same way as a loop through the whole Bag which
+ * skips the vehicles that are too far away.
+ */
+public class VehicleIndex {
+
+	private static final double CELL_SIZE = 10;
+
+	// Every point of the Shape of a vehicle is within this distance of its location (the front-centre of
+	// the vehicle), see DumbCar.getShape and UGV.getShape
+	public static final double MAX_VEHICLE_RADIUS = Math.sqrt((Constants.OBSTACLE_LENGTH * Constants.OBSTACLE_LENGTH) +
+			(Constants.OBSTACLE_WIDTH * Constants.OBSTACLE_WIDTH / 4));
+
+	private final Car[] vehicles;
+	private final int[] vehicleCells; // index of the cell containing each vehicle, -1 if not located yet
+	private final int[][] cellVehicles; // indexed [cell], lists indices into vehicles, null until a vehicle enters the cell
+	private final int[] cellCounts;
+	private final int noCellsX;
+	private final int noCellsY;
+
+	/**
+	 * Constructor.  Build the index for the supplied vehicles, and register the index with each vehicle
+	 * so that it is told when the vehicle moves.
+	 * @param inVehicles (Bag - the vehicles to index)
+	 * @param worldX (double - width of the map)
+	 * @param worldY (double - height of the map)
+	 */
+	public VehicleIndex(Bag inVehicles, double worldX, double worldY)
+	{
+		vehicles = new Car[inVehicles.size()];
+		vehicleCells = new int[inVehicles.size()];
+		noCellsX = (int) Math.floor(worldX / CELL_SIZE) + 1;
+		noCellsY = (int) Math.floor(worldY / CELL_SIZE) + 1;
+		cellVehicles = new int[noCellsX * noCellsY][];
+		cellCounts = new int[noCellsX * noCellsY];
+
+		for (int v = 0; v < vehicles.length; v++)
+		{
+			vehicles[v] = (Car) inVehicles.get(v);
+			vehicleCells[v] = -1;
+			vehicles[v].setVehicleIndex(this, v);
+			update(v);
+		}
+	}
+
+	/**
+	 * Return the number of vehicles which are included in the index.
+	 * @return int (number of vehicles in the index)
+	 */
+	public int getNoVehicles() { return vehicles.length; }
+
+	/**
+	 * Move the vehicle with the supplied index to the cell containing its current location (called from
+	 * Car.setLocation).
+	 * @param idx (int - index of the vehicle, as supplied to Car.setVehicleIndex)
+	 */
+	public void update(int idx)
+	{
+		Double2D location = vehicles[idx].getLocation();
+		int newCell = (location == null) ? -1 : getCell(location.x, location.y);
+		int oldCell = vehicleCells[idx];
+
+		if (newCell == oldCell) {
+			return;
+		}
+
+		// Remove from the old cell by swapping with the last entry (the order within a cell doesn't matter)
+		if (oldCell >= 0)
+		{
+			int[] entries = cellVehicles[oldCell];
+			for (int e = 0; e < cellCounts[oldCell]; e++)
+			{
+				if (entries[e] == idx)
+				{
+					entries[e] = entries[cellCounts[oldCell] - 1];
+					cellCounts[oldCell]--;
+					break;
+				}
+			}
+		}
+
+		if (newCell >= 0)
+		{
+			if (cellVehicles[newCell] == null) {
+				cellVehicles[newCell] = new int[4]; // The index is rebuilt whenever a car is removed, so only allocate the cells in use
+			} else if (cellCounts[newCell] == cellVehicles[newCell].length) {
+				cellVehicles[newCell] = Arrays.copyOf(cellVehicles[newCell], cellVehicles[newCell].length * 2);
+			}
+
+			cellVehicles[newCell][cellCounts[newCell]++] = idx;
+		}
+
+		vehicleCells[idx] = newCell;
+	}
+
+	/**
+	 * Return all of the vehicles whose location is within the supplied distance of the supplied point, in
+	 * the same order as the Bag that the index was built from.
+	 * @param point (Double2D - the centre of the search)
+	 * @param distance (double - the search radius)
+	 * @return Bag (the vehicles within range of the point)
+	 */
+	public Bag getVehiclesWithinDistance(Double2D point, double distance)
+	{
+		int minCellX = getCellX(point.x - distance);
+		int maxCellX = getCellX(point.x + distance);
+		int minCellY = getCellY(point.y - distance);
+		int maxCellY = getCellY(point.y + distance);
+
+		int[] found = new int[8];
+		int noFound = 0;
+
+		for (int i = minCellX; i <= maxCellX; i++)
+		{
+			for (int j = minCellY; j <= maxCellY; j++)
+			{
+				int cell = (i * noCellsY) + j;
+				for (int e = 0; e < cellCounts[cell]; e++)
+				{
+					int idx = cellVehicles[cell][e];
+					if (point.distance(vehicles[idx].getLocation()) <= distance)
+					{
+						if (noFound == found.length) {
+							found = Arrays.copyOf(found, found.length * 2);
+						}
+						found[noFound++] = idx;
+					}
+				}
+			}
+		}
+
+		// Return the vehicles in the order of the original Bag
+		Arrays.sort(found, 0, noFound);
+
+		Bag retVal = new Bag(noFound);
+		for (int f = 0; f < noFound; f++) {
+			retVal.add(vehicles[found[f]]);
+		}
+
+		return retVal;
+	}
+
+	/**
+	 * Return the nearest vehicle ahead of the supplied vehicle, in the same lane i.e. whose location is in
+	 * front of the vehicle (in the compass direction of the vehicle), within the supplied range, and which is
+	 * displaced sideways from the vehicle by less than laneHalfWidth.  Where two vehicles are at the same
+	 * distance, the one which is first in the original Bag is returned.
+	 * @param car (Car - the vehicle that is looking ahead, it will not be returned itself)
+	 * @param range (double - how far ahead to look)
+	 * @param laneHalfWidth (double - maximum sideways displacement for a vehicle to be in the same lane)
+	 * @return Car (the nearest vehicle ahead in the lane, or null if there isn't one in range)
+	 */
+	public Car getNearestAheadInLane(Car car, double range, double laneHalfWidth)
+	{
+		Double2D location = car.getLocation();
+		UGV_Direction direction = Utility.getDirection(car.getDirection());
+		Bag candidates = getVehiclesWithinDistance(location, range);
+
+		Car nearest = null;
+		double nearestDistance = range;
+
+		for (int c = 0; c < candidates.size(); c++)
+		{
+			Car other = (Car) candidates.get(c);
+			if (other == car) {
+				continue;
+			}
+
+			// Work out how far ahead of, and to the side of, the vehicle the other one is
+			Double2D otherLoc = other.getLocation();
+			double ahead = 0;
+			double sideways = 0;
+
+			switch (direction) {
+				case NORTH :
+					ahead = location.y - otherLoc.y;
+					sideways = otherLoc.x - location.x;
+					break;
+				case SOUTH :
+					ahead = otherLoc.y - location.y;
+					sideways = otherLoc.x - location.x;
+					break;
+				case EAST :
+					ahead = otherLoc.x - location.x;
+					sideways = otherLoc.y - location.y;
+					break;
+				case WEST :
+					ahead = location.x - otherLoc.x;
+					sideways = otherLoc.y - location.y;
+					break;
+			}
+
+			double distance = location.distance(otherLoc);
+			if (ahead >= 0 && Math.abs(sideways) < laneHalfWidth && distance < nearestDistance)
+			{
+				nearest = other;
+				nearestDistance = distance;
+			}
+		}
+
+		return nearest;
+	}
+
+	/**
+	 * Return the index of the cell containing the supplied location, limited to the grid.
+	 * @param x (double - x coordinate)
+	 * @param y (double - y coordinate)
+	 * @return int (index of the cell)
+	 */
+	private int getCell(double x, double y)
+	{
+		return (getCellX(x) * noCellsY) + getCellY(y);
+	}
+
+	/**
+	 * Return the index of the column of cells containing the supplied x coordinate, limited to the grid.
+	 * @param x (double - x coordinate)
+	 * @return int (index of cell column)
+	 */
+	private int getCellX(double x)
+	{
+		return Math.max(0, Math.min(noCellsX-1, (int) Math.floor(x / CELL_SIZE)));
+	}
+
+	/**
+	 * Return the index of the row of cells containing the supplied y coordinate, limited to the grid.
+	 * @param y (double - y coordinate)
+	 * @return int (index of cell row)
+	 */
+	private int getCellY(double y)
+	{
+		return Math.max(0, Math.min(noCellsY-1, (int) Math.floor(y / CELL_SIZE)));
+	}
+}
@@ -8,6 +8,7 @@ public class Waypoint extends Entity
 	private static final long serialVersionUID = 1L;
 	
 	private int nextPoint; // the id of the point to go to after this waypoint
+	private Car owner = null; // the vehicle which created this waypoint (see Car.createWaypoint)
 	
 	/** 
 	 * Constructor for Waypoint
@@ -38,4 +39,7 @@ public class Waypoint extends Entity
 	 * @return int (the id of the next point for the car to travel to)
 	 */
 	public int getNextPoint() {return nextPoint;}
+	
+	public Car getOwner() {return owner;}
+	public void setOwner(Car inOwner) {owner = inOwner;}
 }
@@ -0,0 +1,231 @@
+package simcontroller;
+
+import ec.util.MersenneTwisterFast;
+import modeling.COModel;
+import modeling.COModelBuilder;
+import modeling.COModelWithoutRun;
+import modeling.Constants;
+import modeling.Constants.coverageCriteriaInfo;
+
+/**
+ * @author hh940
+ *
+ * Script file to measure the cost of map generation and of the search-based generation of map sets, which
+ * have very different performance profiles from the simulation itself (see StepAllocationBenchmark and
+ * ThroughputBenchmark), so that improvements to the generator and the search can be evaluated.  No output
+ * files are written: the models are all created without their log files (see COModel constructor).
+ *
+ * The first part generates the maps for a fixed set of external seeds (after generating the same maps to warm
+ * up the JIT), and reports the number of maps generated per second, the average time taken by each of the
+ * Hget* map metrics, and the average number of candidate locations tried by each of the rejection loops in
+ * COModelBuilder.generateSimulation (junctions, obstacles, target, UGV and cars) per map, along with the number
+ * of entities which were actually added.
+ *
+ * The second part runs the coverage search of SearchBasedMapGeneration.generateExternalSeeds (the same
+ * evaluation of each candidate seed, and the same coverage rules), but with the candidate seeds drawn from a
+ * fixed random sequence so that the search is repeatable, and reports the number of candidate seeds evaluated
+ * per second, and the time (and number of candidates) taken to reach each 10% of situation coverage.
+ *
+ * Usage: MapGenerationBenchmark [noMaps] [searchIterationLimit] [searchSeed]
+ */
+public class MapGenerationBenchmark {
+
+	private static final int DEFAULT_NO_MAPS = 200;
+	private static final int DEFAULT_SEARCH_LIMIT = 2000;
+	private static final long DEFAULT_SEARCH_SEED = 1;
+	private static final int NO_MILESTONES = 10; // Report the time to each 10% of coverage
+
+	public static void main(String[] args) {
+
+		int noMaps = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NO_MAPS;
+		int searchLimit = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SEARCH_LIMIT;
+		long searchSeed = (args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_SEARCH_SEED;
+
+		benchmarkGeneration(noMaps, false); // Warm up
+		benchmarkGeneration(noMaps, true);
+		benchmarkSearch(searchLimit, searchSeed);
+	}
+
+	/**
+	 * Generate the maps for external seeds 1..noMaps (multiplied by a prime to spread them out), measure the
+	 * Hget* metrics on each, and optionally report the results.
+	 * @param noMaps (int - number of maps to generate)
+	 * @param report (boolean - true to print the results, false if this is the warm-up)
+	 */
+	private static void benchmarkGeneration(int noMaps, boolean report)
+	{
+		Metric[] metrics = buildMetrics();
+		long[] metricNanos = new long[metrics.length];
+		double checksum = 0;
+
+		long generationNanos = 0;
+		long noJunctionTries = 0;
+		long noObstacleTries = 0;
+		long noTargetTries = 0;
+		long noUGVTries = 0;
+		long noCarTries = 0;
+		long noJunctions = 0;
+		long noObstacles = 0;
+		long noCars = 0;
+
+		for (int m = 1; m <= noMaps; m++)
+		{
+			COModel sim = new COModel(m, Constants.WorldXVal, Constants.WorldYVal, false, 0, 99, true, false);
+			COModelBuilder sBuilder = new COModelBuilder(sim);
+			sim.reset();
+			sim.setExternalSeed(m * 7919);
+
+			long start = System.nanoTime();
+			sBuilder.generateSimulation();
+			generationNanos += System.nanoTime() - start;
+
+			for (int i = 0; i < metrics.length; i++)
+			{
+				start = System.nanoTime();
+				checksum += metrics[i].measure(sim);
+				metricNanos[i] += System.nanoTime() - start;
+			}
+
+			noJunctionTries += sBuilder.getNoJunctionTries();
+			noObstacleTries += sBuilder.getNoObstacleTries();
+			noTargetTries += sBuilder.getNoTargetTries();
+			noUGVTries += sBuilder.getNoUGVTries();
+			noCarTries += sBuilder.getNoCarTries();
+			noJunctions += sim.getNoJunctions();
+			noObstacles += sim.obstacles.size();
+			noCars += sim.cars.size();
+
+			sim.finish();
+		}
+
+		if (report == false) {
+			return;
+		}
+
+		System.out.println("Map generation: " + noMaps + " maps, " + format(noMaps / (generationNanos / 1e9)) + " maps/s.");
+
+		for (int i = 0; i < metrics.length; i++) {
+			System.out.println("  " + metrics[i].getName() + ": " + format(metricNanos[i] / 1e3 / noMaps) + " us per map.");
+		}
+
+		System.out.println("Candidate locations tried per map (entities added per map):");
+		System.out.println("  Junctions: " + format((double) noJunctionTries / noMaps) + " (" + format((double) noJunctions / noMaps) + ")");
+		System.out.println("  Obstacles: " + format((double) noObstacleTries / noMaps) + " (" + format((double) noObstacles / noMaps) + ")");
+		System.out.println("  Target: " + format((double) noTargetTries / noMaps) + " (1)");
+		System.out.println("  UGV: " + format((double) noUGVTries / noMaps) + " (1)");
+		System.out.println("  Cars: " + format((double) noCarTries / noMaps) + " (" + format((double) noCars / noMaps) + ")");
+		System.out.println("Checksum: " + checksum);
+	}
+
+	/**
+	 * Run the coverage search until it reaches 100% coverage or the iteration limit, reporting the rate at
+	 * which candidate seeds are evaluated, and the time taken to reach each 10% of coverage.
+	 * @param iterationLimit (int - maximum number of candidate seeds to evaluate)
+	 * @param searchSeed (long - seed for the sequence of candidate seeds)
+	 */
+	private static void benchmarkSearch(int iterationLimit, long searchSeed)
+	{
+		MersenneTwisterFast random = new MersenneTwisterFast(searchSeed);
+		int coverageBoxes[][][] = new int[Constants.NO_CATEGORIES][Constants.NO_CATEGORIES][Constants.NO_CATEGORIES];
+		int boxesCovered = 0;
+		int nextMilestone = 1;
+		long noIterations = 0;
+
+		long start = System.nanoTime();
+
+		while (noIterations < iterationLimit && boxesCovered < Constants.NO_BOXES)
+		{
+			long externalSeed = random.nextInt();
+
+			COModelWithoutRun mod = new COModelWithoutRun(0, 99, 0, false);
+			coverageCriteriaInfo res = mod.getCoverageCriteria(externalSeed, noIterations);
+
+			int c1 = Math.max(0, SearchBasedMapGeneration.categorize(res.distTargetToObs, 1));
+			int c2 = Math.max(0, SearchBasedMapGeneration.categorize(res.distUGVToTarget, 2));
+			int c3 = Math.max(0, SearchBasedMapGeneration.categorize(res.distPrevJctToTarget, 3));
+
+			if (coverageBoxes[c1][c2][c3] < Constants.REQ_COV_COUNT)
+			{
+				coverageBoxes[c1][c2][c3]++;
+				if (coverageBoxes[c1][c2][c3] == Constants.REQ_COV_COUNT) {
+					boxesCovered++;
+				}
+			}
+
+			noIterations++;
+
+			// Report each milestone as it is passed
+			while (nextMilestone <= NO_MILESTONES && boxesCovered * NO_MILESTONES >= nextMilestone * Constants.NO_BOXES)
+			{
+				System.out.println("  " + (nextMilestone * 100 / NO_MILESTONES) + "% coverage after " + noIterations +
+						" candidates, " + format((System.nanoTime() - start) / 1e9) + " s.");
+				nextMilestone++;
+			}
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println("Coverage search: " + noIterations + " candidates, " + format(noIterations / seconds) + " candidates/s, coverage " +
+				boxesCovered + "/" + Constants.NO_BOXES + " after " + format(seconds) + " s.");
+	}
+
+	/**
+	 * Build the list of map metrics to measure.
+	 * @return Metric[] (the metrics, in the order they are to be reported)
+	 */
+	private static Metric[] buildMetrics()
+	{
+		return new Metric[] {
+			new Metric("HgetMinJctSeparation") {
+				public double measure(COModel sim) { return sim.HgetMinJctSeparation(); }
+			},
+			new Metric("HgetUGVTargetSeparation") {
+				public double measure(COModel sim) { return sim.HgetUGVTargetSeparation(); }
+			},
+			new Metric("HgetMinTargetObsSeparation") {
+				public double measure(COModel sim) { return sim.HgetMinTargetObsSeparation(); }
+			},
+			new Metric("HgetMinTargetKerbSeparation") {
+				public double measure(COModel sim) { return sim.HgetMinTargetKerbSeparation(); }
+			},
+			new Metric("HgetMinTargetCentreSeparation") {
+				public double measure(COModel sim) { return sim.HgetMinTargetCentreSeparation(); }
+			},
+			new Metric("HgetCriticalObsSeparation") {
+				public double measure(COModel sim) { return sim.HgetCriticalObsSeparation(); }
+			},
+			new Metric("HgetUGVTargetRoadSeparation") {
+				public double measure(COModel sim) { return sim.HgetUGVTargetRoadSeparation(); }
+			},
+			new Metric("HgetIRJunctionSep") {
+				public double measure(COModel sim) { return sim.HgetIRJunctionSep().length(); }
+			},
+			new Metric("HgetTargetSeparations") {
+				public double measure(COModel sim) { return sim.HgetTargetSeparations(sim.getTargetLoc()).fromPrevJct; }
+			}
+		};
+	}
+
+	private static String format(double value) { return String.format("%.1f", value); }
+
+	/**
+	 * A map metric to be measured.
+	 */
+	private static abstract class Metric
+	{
+		private final String name;
+
+		public Metric(String inName)
+		{
+			name = inName;
+		}
+
+		public String getName() { return name; }
+
+		/**
+		 * Calculate the metric on the supplied map.
+		 * @param sim (COModel - the map)
+		 * @return double (a value which depends on the result, for the checksum)
+		 */
+		public abstract double measure(COModel sim);
+	}
+}
@@ -0,0 +1,101 @@
+package simcontroller;
+
+import java.lang.management.ManagementFactory;
+
+import modeling.COModel;
+import modeling.COModelBuilder;
+import modeling.Constants;
+
+/**
+ * @author hh940
+ *
+ * Script file to check that a steady-state simulation step stays within its allocation budget.  The sensor
+ * sweeps test thousands of sample points on every step, so any per-point allocation (e.g. a Double2D or
+ * Rectangle2D for each test location) shows up here as a large increase in the bytes allocated per step.
+ *
+ * A headless simulation is run on a set of fixed maps; after a warm-up period (so that the JIT and the lazily
+ * built structures such as the road and vehicle indices have settled down) the bytes allocated by this thread
+ * are measured over a number of steps, and divided by the number of UGV steps.  As the whole schedule step is
+ * measured, the figure also includes the DumbCars and the AccidentDetector, so it is an upper bound on the
+ * allocation of a UGV step (most of what remains is the footprint Shape that each DumbCar rebuilds after it
+ * moves, and the new locations of the vehicles, rather than the sensors).  The default budget is only a few KB
+ * above the figure for the default maps, so a single Area (or similar) per vehicle per step, or any per-point
+ * allocation in the sensor sweeps, will exceed it.  A RuntimeException is thrown if the average exceeds the budget.
+ *
+ * Usage: StepAllocationBenchmark [budgetBytesPerUGVStep] [noMaps] [warmupSteps] [measuredSteps]
+ */
+public class StepAllocationBenchmark {
+
+	private static final long DEFAULT_BUDGET = 20 * 1024; // bytes per UGV step (about 15KB is allocated on the default maps)
+	private static final int DEFAULT_NO_MAPS = 6;
+	private static final int DEFAULT_WARMUP_STEPS = 100;
+	private static final int DEFAULT_MEASURED_STEPS = 200;
+
+	public static void main(String[] args) {
+
+		long budget = (args.length > 0) ? Long.parseLong(args[0]) : DEFAULT_BUDGET;
+		int noMaps = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_NO_MAPS;
+		int warmupSteps = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_WARMUP_STEPS;
+		int measuredSteps = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_MEASURED_STEPS;
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (threadBean.isThreadAllocatedMemorySupported() == false) {
+			throw new RuntimeException("StepAllocationBenchmark: this JVM cannot measure thread allocation.");
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		long totalBytes = 0;
+		long totalUGVSteps = 0;
+
+		for (int m = 1; m <= noMaps; m++)
+		{
+			// Fixed seeds so that the same maps and runs are measured every time
+			COModel sim = new COModel(m, Constants.WorldXVal, Constants.WorldYVal, false, 0, m, true);
+			COModelBuilder sBuilder = new COModelBuilder(sim);
+			sim.reset();
+			sim.setExternalSeed(m * 7919);
+			sBuilder.generateSimulation();
+			sim.setHeadless(true);
+			sim.start();
+
+			boolean running = true;
+			for (int s = 0; s < warmupSteps && running == true; s++) {
+				running = sim.schedule.step(sim);
+			}
+
+			long mapBytes = 0;
+			long mapUGVSteps = 0;
+			for (int s = 0; s < measuredSteps && running == true; s++)
+			{
+				int noUGVs = sim.ugvs.size();
+				long before = threadBean.getThreadAllocatedBytes(threadId);
+				running = sim.schedule.step(sim);
+				mapBytes += threadBean.getThreadAllocatedBytes(threadId) - before;
+				mapUGVSteps += noUGVs;
+			}
+
+			sim.finish();
+
+			if (mapUGVSteps > 0) {
+				System.out.println("Map " + m + ": " + (mapBytes / mapUGVSteps) + " bytes per UGV step over " + mapUGVSteps + " UGV steps.");
+			} else {
+				System.out.println("Map " + m + ": the simulation finished during the warm-up, nothing measured.");
+			}
+
+			totalBytes += mapBytes;
+			totalUGVSteps += mapUGVSteps;
+		}
+
+		if (totalUGVSteps == 0) {
+			throw new RuntimeException("StepAllocationBenchmark: no steps were measured.");
+		}
+
+		long average = totalBytes / totalUGVSteps;
+		System.out.println("Average: " + average + " bytes per UGV step (budget " + budget + ").");
+
+		if (average > budget) {
+			throw new RuntimeException("StepAllocationBenchmark: allocation per UGV step (" + average + " bytes) exceeds the budget of " + budget + " bytes.");
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package simcontroller;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+import java.util.Properties;
+
+import modeling.COModelWithoutUI;
+
+/**
+ * @author hh940
+ *
+ * Script file to measure the cost of complete simulation runs, so that the cost of a campaign can be planned,
+ * and so that a change which slows the simulation down is found straight away rather than at the end of the
+ * next campaign.
+ *
+ * A fixed panel of runs, each defined by an external seed (the map), an internal seed (the run-time behaviour)
+ * and a fault (see PANEL), is run through COModelWithoutUI until each run terminates.  For each run, and for
+ * the panel as a whole, the number of steps per second, the equivalent number of runs per hour, the peak heap
+ * usage and the number of bytes allocated are reported.  The panel is run once beforehand to warm up the JIT,
+ * and then a number of times (repeats), and the fastest time for each run is used to reduce the effect of noise
+ * from the rest of the machine.
+ *
+ * The results for the whole panel can be recorded in a baseline file (with -record), and are otherwise compared
+ * with the baseline: if the throughput (steps per second) has fallen by more than the threshold percentage, a
+ * RuntimeException is thrown, so that a script running the benchmark fails.  If the panel did not execute the
+ * same number of steps as when the baseline was recorded, the behaviour of the simulation has changed, so this
+ * is reported, and the baseline should be re-recorded once the change has been checked.
+ *
+ * Usage: ThroughputBenchmark [baselineFile] [thresholdPercent] [repeats] [-record]
+ */
+public class ThroughputBenchmark {
+
+	private static final String DEFAULT_BASELINE_FILE = "throughputBaseline.properties";
+	private static final double DEFAULT_THRESHOLD = 10; // % fall in steps per second
+	private static final int DEFAULT_REPEATS = 3;
+
+	// The panel of runs: {external seed, internal seed, fault}, where the fault is the index of the single fault
+	// to activate, or -1 for a run without faults
+	private static final long[][] PANEL = {
+		{7919, 1, -1},
+		{15838, 2, -1},
+		{23757, 3, -1},
+		{31676, 4, -1},
+		{39595, 5, 0},
+		{47514, 6, 3},
+		{55433, 7, 7},
+		{63352, 8, 12}
+	};
+
+	private static com.sun.management.ThreadMXBean threadBean;
+	private static long threadId;
+
+	public static void main(String[] args) {
+
+		String baselineName = DEFAULT_BASELINE_FILE;
+		double threshold = DEFAULT_THRESHOLD;
+		int repeats = DEFAULT_REPEATS;
+		boolean record = false;
+		int noArgs = 0;
+
+		for (int a = 0; a < args.length; a++)
+		{
+			if (args[a].equals("-record")) {
+				record = true;
+			} else if (noArgs == 0) {
+				baselineName = args[a];
+				noArgs++;
+			} else if (noArgs == 1) {
+				threshold = Double.parseDouble(args[a]);
+				noArgs++;
+			} else {
+				repeats = Math.max(1, Integer.parseInt(args[a]));
+			}
+		}
+
+		threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		if (threadBean.isThreadAllocatedMemorySupported() == false) {
+			throw new RuntimeException("ThroughputBenchmark: this JVM cannot measure thread allocation.");
+		}
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+		threadId = Thread.currentThread().getId();
+
+		// Warm up the JIT on the same panel
+		for (int r = 0; r < PANEL.length; r++) {
+			runOne(PANEL[r]);
+		}
+
+		long totalSteps = 0;
+		long totalNanos = 0;
+		long totalBytes = 0;
+		long maxPeakHeap = 0;
+
+		RunResult[] best = new RunResult[PANEL.length];
+		for (int i = 0; i < repeats; i++)
+		{
+			for (int r = 0; r < PANEL.length; r++)
+			{
+				RunResult result = runOne(PANEL[r]);
+				if (best[r] == null || result.nanos < best[r].nanos) {
+					best[r] = result;
+				}
+			}
+		}
+
+		for (int r = 0; r < PANEL.length; r++)
+		{
+			RunResult result = best[r];
+
+			System.out.println("Run " + r + " (external seed " + PANEL[r][0] + ", internal seed " + PANEL[r][1] + ", fault " +
+					PANEL[r][2] + "): " + result.steps + " steps, " + format(stepsPerSecond(result.steps, result.nanos)) +
+					" steps/s, " + format(runsPerHour(1, result.nanos)) + " runs/h, peak heap " + (result.peakHeap / (1024 * 1024)) +
+					" MB, allocated " + (result.bytes / (1024 * 1024)) + " MB.");
+
+			totalSteps += result.steps;
+			totalNanos += result.nanos;
+			totalBytes += result.bytes;
+			maxPeakHeap = Math.max(maxPeakHeap, result.peakHeap);
+		}
+
+		double stepsPerSecond = stepsPerSecond(totalSteps, totalNanos);
+		System.out.println("Panel: " + totalSteps + " steps, " + format(stepsPerSecond) + " steps/s, " +
+				format(runsPerHour(PANEL.length, totalNanos)) + " runs/h, peak heap " + (maxPeakHeap / (1024 * 1024)) +
+				" MB, allocated " + (totalBytes / PANEL.length / (1024 * 1024)) + " MB per run.");
+
+		File baselineFile = new File(baselineName);
+		Properties baseline = new Properties();
+
+		if (record == true)
+		{
+			baseline.setProperty("steps", Long.toString(totalSteps));
+			baseline.setProperty("stepsPerSecond", Double.toString(stepsPerSecond));
+			baseline.setProperty("runsPerHour", Double.toString(runsPerHour(PANEL.length, totalNanos)));
+			baseline.setProperty("allocatedBytesPerRun", Long.toString(totalBytes / PANEL.length));
+			baseline.setProperty("peakHeap", Long.toString(maxPeakHeap));
+
+			try {
+				FileOutputStream out = new FileOutputStream(baselineFile);
+				baseline.store(out, "ThroughputBenchmark baseline");
+				out.close();
+			} catch (IOException e) {
+				throw new RuntimeException("ThroughputBenchmark: unable to write the baseline file " + baselineName + ".", e);
+			}
+
+			System.out.println("Baseline recorded in " + baselineName + ".");
+			return;
+		}
+
+		if (baselineFile.exists() == false)
+		{
+			System.out.println("No baseline in " + baselineName + ", run with -record to create one.");
+			return;
+		}
+
+		try {
+			FileInputStream in = new FileInputStream(baselineFile);
+			baseline.load(in);
+			in.close();
+		} catch (IOException e) {
+			throw new RuntimeException("ThroughputBenchmark: unable to read the baseline file " + baselineName + ".", e);
+		}
+
+		long baselineSteps = Long.parseLong(baseline.getProperty("steps"));
+		double baselineStepsPerSecond = Double.parseDouble(baseline.getProperty("stepsPerSecond"));
+		double change = (stepsPerSecond - baselineStepsPerSecond) / baselineStepsPerSecond * 100;
+
+		System.out.println("Baseline: " + format(baselineStepsPerSecond) + " steps/s, change " + format(change) + "% (threshold -" + format(threshold) + "%).");
+
+		if (baselineSteps != totalSteps) {
+			System.out.println("WARNING: the panel executed " + totalSteps + " steps, compared to " + baselineSteps +
+					" in the baseline; the behaviour of the simulation has changed, so the baseline should be re-recorded.");
+		}
+
+		if (change < -threshold) {
+			throw new RuntimeException("ThroughputBenchmark: throughput has fallen by " + format(-change) +
+					"%, more than the threshold of " + format(threshold) + "%.");
+		}
+	}
+
+	/**
+	 * Execute one run of the panel until it terminates.
+	 * @param run (long[] - external seed, internal seed and fault for the run, see PANEL)
+	 * @return RunResult (steps executed, time taken, bytes allocated and peak heap usage)
+	 */
+	private static RunResult runOne(long[] run)
+	{
+		COModelWithoutUI mod;
+		if (run[2] < 0) {
+			mod = new COModelWithoutUI(0, 99, true); // 99 'cos we don't need the unique filenames for each run
+		} else {
+			mod = new COModelWithoutUI(run[2], 99, false);
+		}
+
+		System.gc();
+		List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+		for (int p = 0; p < pools.size(); p++) {
+			pools.get(p).resetPeakUsage();
+		}
+
+		RunResult retVal = new RunResult();
+		long bytesBefore = threadBean.getThreadAllocatedBytes(threadId);
+		long start = System.nanoTime();
+
+		retVal.steps = mod.start(run[0], run[1]);
+
+		retVal.nanos = System.nanoTime() - start;
+		retVal.bytes = threadBean.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+		for (int p = 0; p < pools.size(); p++)
+		{
+			if (pools.get(p).getType() == MemoryType.HEAP) {
+				retVal.peakHeap += pools.get(p).getPeakUsage().getUsed();
+			}
+		}
+
+		return retVal;
+	}
+
+	private static double stepsPerSecond(long steps, long nanos) { return steps / (nanos / 1e9); }
+	private static double runsPerHour(int runs, long nanos) { return runs / (nanos / 3.6e12); }
+	private static String format(double value) { return String.format("%.1f", value); }
+
+	/**
+	 * The results of one run of the panel.
+	 */
+	private static class RunResult
+	{
+		public long steps = 0;
+		public long nanos = 0;
+		public long bytes = 0;
+		public long peakHeap = 0; // Sum of the peaks of the heap memory pools (an upper bound on the peak heap)
+	}
+}
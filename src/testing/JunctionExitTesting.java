@@ -0,0 +1,206 @@
+package testing;
+
+import ec.util.MersenneTwisterFast;
+import sim.util.Double2D;
+import modeling.COModel;
+import modeling.COModel.jctExitDirInfo;
+import modeling.Constants.UGV_Direction;
+import modeling.Junction;
+import modeling.UGV;
+import modeling.Utility;
+
+/**
+ * @author hh940
+ *
+ * Check that the single-draw choice of the UGV's junction exit (Junction.chooseUGVExit) selects each exit with the
+ * same probability as the original retry loop (Junction.chooseUGVExitByPasses, used in compatible mode).  For each
+ * case, a junction with the required arms is built, and a UGV with the required junction history asks for an exit
+ * many times in each mode (the history is put back, and the junction released, after each request).  The frequency
+ * of each exit, and of no exit being found (the loop timing out), must agree between the two modes to within the
+ * sampling error.
+ *
+ * The cases are a set of fixed cases (all exits visited, a single arm i.e. a dead end, and visit counts which are high
+ * enough for the loop to time out) followed by random junctions, histories and targets.  A RuntimeException is thrown
+ * if any case does not agree.
+ *
+ * Usage: JunctionExitTesting [noRandomCases] [noRequests]
+ */
+public class JunctionExitTesting {
+
+	private static final int DEFAULT_NO_RANDOM_CASES = 200;
+	private static final int DEFAULT_NO_REQUESTS = 20000; // Requests for an exit per case, in each mode
+	private static final double MAX_SIGMAS = 5; // Number of standard errors by which the frequencies may differ
+
+	private static final UGV_Direction[] DIRECTIONS = UGV_Direction.values();
+	private static final int NO_EXIT = DIRECTIONS.length; // Index used to count the requests for which no exit was found
+
+	public static void main(String[] args) {
+
+		int noRandomCases = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_NO_RANDOM_CASES;
+		int noRequests = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_NO_REQUESTS;
+
+		COModel testModel = new COModel(0, 100, 100, false, 0, 1, true, false);
+		MersenneTwisterFast caseRandom = new MersenneTwisterFast(7919);
+		int noFailures = 0;
+
+		// Fixed cases, the arm lengths and the history are both given in UGV_Direction order (N, E, S, W)
+		double len = Junction.jctApproachLen;
+		Double2D target = new Double2D(90, 20);
+		noFailures += checkCase("All visited once", testModel, new double[] {len, len, len, len}, new int[] {1, 1, 1, 1}, target, noRequests);
+		noFailures += checkCase("All visited, different counts", testModel, new double[] {len, len, len, len}, new int[] {1, 4, 2, 7}, target, noRequests);
+		noFailures += checkCase("All visited, three arms", testModel, new double[] {len, 0, len, len}, new int[] {3, 3, 1, 2}, target, noRequests);
+		noFailures += checkCase("Some not visited", testModel, new double[] {len, len, len, len}, new int[] {0, 2, 0, 5}, target, noRequests);
+		noFailures += checkCase("Single arm, visited once", testModel, new double[] {0, len, 0, 0}, new int[] {0, 1, 0, 0}, target, noRequests);
+		noFailures += checkCase("Single arm, some timeouts", testModel, new double[] {0, len, 0, 0}, new int[] {0, 35, 0, 0}, target, noRequests);
+		noFailures += checkCase("Single arm, mostly timeouts", testModel, new double[] {0, 0, len, 0}, new int[] {0, 0, 45, 0}, target, noRequests);
+		noFailures += checkCase("All visited many times", testModel, new double[] {len, len, len, len}, new int[] {25, 28, 30, 26}, target, noRequests);
+
+		// Random cases
+		for (int c = 0; c < noRandomCases; c++)
+		{
+			double[] arms = new double[DIRECTIONS.length];
+			int[] history = new int[DIRECTIONS.length];
+			int noArms = 0;
+
+			while (noArms == 0)
+			{
+				noArms = 0;
+				for (int a = 0; a < arms.length; a++)
+				{
+					arms[a] = (caseRandom.nextDouble() < 0.75) ? len : 0;
+					if (arms[a] > 0) {
+						noArms++;
+					}
+				}
+			}
+
+			// Mostly histories where every exit has been visited, as otherwise no random numbers are used
+			boolean allVisited = (caseRandom.nextDouble() < 0.8);
+			for (int h = 0; h < history.length; h++) {
+				history[h] = (allVisited == true) ? 1 + caseRandom.nextInt(8) : caseRandom.nextInt(4);
+			}
+
+			Double2D randomTarget = new Double2D(caseRandom.nextDouble() * 100, caseRandom.nextDouble() * 100);
+			noFailures += checkCase("Random case " + c, testModel, arms, history, randomTarget, noRequests);
+		}
+
+		System.out.println("JunctionExitTesting: " + noFailures + " of " + (noRandomCases + 8) + " cases did not agree.");
+
+		if (noFailures > 0) {
+			throw new RuntimeException("JunctionExitTesting: the single-draw exit choice does not match the retry loop in " + noFailures + " cases.");
+		}
+	}
+
+	/**
+	 * Build a junction with the supplied arms, and compare the frequency of each exit chosen for a UGV with the supplied
+	 * history and target, with and without compatible mode.  The cases which do not agree are reported.
+	 * @param name (String - description of the case, for the report)
+	 * @param testModel (COModel - the model to build the junction and UGV in)
+	 * @param arms (double[] - lengths of the N, E, S and W arms of the junction, 0 if there is no arm)
+	 * @param history (int[] - number of times the UGV has taken each exit, indexed by UGV_Direction)
+	 * @param target (Double2D - the UGV's target)
+	 * @param noRequests (int - number of exits to request in each mode)
+	 * @return int (1 if the frequencies do not agree, 0 if they do)
+	 */
+	private static int checkCase(String name, COModel testModel, double[] arms, int[] history, Double2D target, int noRequests)
+	{
+		testModel.junctions.clear();
+		Junction junction = new Junction(testModel.getNewID(), 50, 50, arms[0], arms[1], arms[2], arms[3]);
+		testModel.junctions.add(junction);
+		UGV u = new UGV(testModel.getNewID(), -1, testModel.carStats, 0, 1, testModel);
+
+		double[] loopFreq = getExitFrequencies(testModel, junction, u, history, target, noRequests, true);
+		double[] drawFreq = getExitFrequencies(testModel, junction, u, history, target, noRequests, false);
+
+		boolean agree = true;
+		for (int e = 0; e < loopFreq.length; e++)
+		{
+			double stdError = Math.sqrt((loopFreq[e] * (1 - loopFreq[e]) + drawFreq[e] * (1 - drawFreq[e])) / noRequests);
+			if (Math.abs(loopFreq[e] - drawFreq[e]) > MAX_SIGMAS * stdError + 0.5 / noRequests) {
+				agree = false;
+			}
+		}
+
+		if (agree == false || name.startsWith("Random") == false)
+		{
+			System.out.println("Test of " + name + " (arms = " + toString(arms) + ", history = " + toString(history) + ", target = " +
+					target + ") finished with : retry loop = " + toString(loopFreq) + ", single draw = " + toString(drawFreq) +
+					(agree == true ? "." : " - DOES NOT AGREE."));
+		}
+
+		return (agree == true) ? 0 : 1;
+	}
+
+	/**
+	 * Request an exit from the junction for the UGV the supplied number of times, restoring the history of the UGV and
+	 * releasing the junction after each request, and return the fraction of the requests which chose each exit.
+	 * @param testModel (COModel - the model containing the junction)
+	 * @param junction (Junction - the junction to request the exits from, at index 0 in the junctions Bag)
+	 * @param u (UGV - the UGV requesting the exits)
+	 * @param history (int[] - number of times the UGV has taken each exit, indexed by UGV_Direction)
+	 * @param target (Double2D - the UGV's target)
+	 * @param noRequests (int - number of exits to request)
+	 * @param compatible (boolean - true to choose the exits with the retry loop, false for the single draw)
+	 * @return double[] (fraction of requests choosing each exit, indexed by UGV_Direction, then the fraction with no exit)
+	 */
+	private static double[] getExitFrequencies(COModel testModel, Junction junction, UGV u, int[] history, Double2D target,
+			int noRequests, boolean compatible)
+	{
+		double[] freq = new double[DIRECTIONS.length + 1];
+		testModel.setCompatibleMode(compatible);
+
+		for (int r = 0; r < noRequests; r++)
+		{
+			System.arraycopy(history, 0, u.getJunctionHistory()[0], 0, history.length);
+			jctExitDirInfo exitInfo = junction.getJunctionExit(target, u, 0, testModel);
+			junction.unOccupy(u.getID());
+
+			int exit = NO_EXIT;
+			if (exitInfo.exitWP.x != -1)
+			{
+				for (int d = 0; d < DIRECTIONS.length; d++)
+				{
+					if (Utility.getDirectionDeg(DIRECTIONS[d]) == exitInfo.direction) {
+						exit = d;
+					}
+				}
+			}
+
+			freq[exit]++;
+		}
+
+		for (int e = 0; e < freq.length; e++) {
+			freq[e] /= noRequests;
+		}
+
+		return freq;
+	}
+
+	/**
+	 * Return the supplied frequencies as a String, rounded to 4 decimal places.
+	 * @param values (double[] - the frequencies)
+	 * @return String (the frequencies, in square brackets)
+	 */
+	private static String toString(double[] values)
+	{
+		String retVal = "[";
+		for (int i = 0; i < values.length; i++) {
+			retVal += (i > 0 ? ", " : "") + Math.round(values[i] * 10000) / 10000.0;
+		}
+		return retVal + "]";
+	}
+
+	/**
+	 * Return the supplied values as a String.
+	 * @param values (int[] - the values)
+	 * @return String (the values, in square brackets)
+	 */
+	private static String toString(int[] values)
+	{
+		String retVal = "[";
+		for (int i = 0; i < values.length; i++) {
+			retVal += (i > 0 ? ", " : "") + values[i];
+		}
+		return retVal + "]";
+	}
+}